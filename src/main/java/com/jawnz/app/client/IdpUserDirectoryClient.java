@@ -0,0 +1,106 @@
+package com.jawnz.app.client;
+
+import com.jawnz.app.config.ApplicationProperties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.RequestEntity;
+import org.springframework.security.oauth2.client.endpoint.DefaultClientCredentialsTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Client for the user listing API of the identity provider admin REST API
+ * (for Keycloak, {@code /auth/admin/realms/{realm}/users}).
+ * <p>
+ * Requests are authenticated with a client credentials token of the configured client registration, so the
+ * client must be granted the permission to view users in the identity provider.
+ */
+@Component
+public class IdpUserDirectoryClient {
+
+    private static final Duration TOKEN_EXPIRY_MARGIN = Duration.ofSeconds(30);
+
+    private static final ParameterizedTypeReference<List<Map<String, Object>>> USER_LIST_TYPE =
+        new ParameterizedTypeReference<List<Map<String, Object>>>() { };
+
+    private final Logger log = LoggerFactory.getLogger(IdpUserDirectoryClient.class);
+
+    private final ApplicationProperties.IdpReconciliation properties;
+
+    private final ClientRegistrationRepository clientRegistrationRepository;
+
+    private final DefaultClientCredentialsTokenResponseClient tokenResponseClient =
+        new DefaultClientCredentialsTokenResponseClient();
+
+    private final RestTemplate restTemplate;
+
+    private OAuth2AccessToken accessToken;
+
+    public IdpUserDirectoryClient(ApplicationProperties applicationProperties,
+                                  ClientRegistrationRepository clientRegistrationRepository,
+                                  RestTemplateBuilder restTemplateBuilder) {
+        this.properties = applicationProperties.getIdpReconciliation();
+        this.clientRegistrationRepository = clientRegistrationRepository;
+        this.restTemplate = restTemplateBuilder.build();
+    }
+
+    /**
+     * Fetches a page of users.
+     *
+     * @param first the index of the first user of the page.
+     * @param max the maximum number of users in the page.
+     * @return the users of the page, as returned by the identity provider; empty after the last page.
+     */
+    public List<Map<String, Object>> getUsers(int first, int max) {
+        URI uri = UriComponentsBuilder.fromUriString(properties.getUsersUri())
+            .queryParam("first", first)
+            .queryParam("max", max)
+            .queryParam("briefRepresentation", false)
+            .build()
+            .toUri();
+        RequestEntity<Void> request = RequestEntity.get(uri)
+            .header(HttpHeaders.AUTHORIZATION, "Bearer " + getAccessToken().getTokenValue())
+            .build();
+        List<Map<String, Object>> users = restTemplate.exchange(request, USER_LIST_TYPE).getBody();
+        log.debug("Fetched {} users from the identity provider, starting at {}", users == null ? 0 : users.size(), first);
+        return users == null ? Collections.emptyList() : users;
+    }
+
+    private synchronized OAuth2AccessToken getAccessToken() {
+        if (accessToken == null || accessToken.getExpiresAt() == null ||
+            accessToken.getExpiresAt().isBefore(Instant.now().plus(TOKEN_EXPIRY_MARGIN))) {
+            ClientRegistration registration = Objects.requireNonNull(
+                clientRegistrationRepository.findByRegistrationId(properties.getClientRegistrationId()),
+                "Unknown client registration " + properties.getClientRegistrationId());
+            ClientRegistration clientCredentials = ClientRegistration.withRegistrationId(registration.getRegistrationId())
+                .clientId(registration.getClientId())
+                .clientSecret(registration.getClientSecret())
+                .clientAuthenticationMethod(registration.getClientAuthenticationMethod())
+                .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+                .tokenUri(registration.getProviderDetails().getTokenUri())
+                .build();
+            accessToken = tokenResponseClient
+                .getTokenResponse(new OAuth2ClientCredentialsGrantRequest(clientCredentials))
+                .getAccessToken();
+        }
+        return accessToken;
+    }
+}
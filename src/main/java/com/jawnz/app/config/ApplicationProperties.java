@@ -10,4 +10,968 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final UserSync userSync = new UserSync();
+
+    private final AuthorityRegistry authorityRegistry = new AuthorityRegistry();
+
+    private final UserWriteBehind userWriteBehind = new UserWriteBehind();
+
+    private final IdpReconciliation idpReconciliation = new IdpReconciliation();
+
+    private final UserOutbox userOutbox = new UserOutbox();
+
+    private final UserReindex userReindex = new UserReindex();
+
+    private final UserSearch userSearch = new UserSearch();
+
+    private final UserTypeahead userTypeahead = new UserTypeahead();
+
+    private final UserLucene userLucene = new UserLucene();
+
+    private final NearCache nearCache = new NearCache();
+
+    private final CacheLoading cacheLoading = new CacheLoading();
+
+    private final CacheCodec cacheCodec = new CacheCodec();
+
+    private final CacheStatistics cacheStatistics = new CacheStatistics();
+
+    private final CacheRefresh cacheRefresh = new CacheRefresh();
+
+    private final UserBatch userBatch = new UserBatch();
+
+    private final UserLoginFilter userLoginFilter = new UserLoginFilter();
+
+    private final CacheWarmup cacheWarmup = new CacheWarmup();
+
+    private final UserListing userListing = new UserListing();
+
+    private final MongoMetrics mongoMetrics = new MongoMetrics();
+
+    private final AuditRetention auditRetention = new AuditRetention();
+
+    public UserSync getUserSync() {
+        return userSync;
+    }
+
+    public AuthorityRegistry getAuthorityRegistry() {
+        return authorityRegistry;
+    }
+
+    public UserWriteBehind getUserWriteBehind() {
+        return userWriteBehind;
+    }
+
+    public IdpReconciliation getIdpReconciliation() {
+        return idpReconciliation;
+    }
+
+    public UserOutbox getUserOutbox() {
+        return userOutbox;
+    }
+
+    public UserReindex getUserReindex() {
+        return userReindex;
+    }
+
+    public UserSearch getUserSearch() {
+        return userSearch;
+    }
+
+    public UserTypeahead getUserTypeahead() {
+        return userTypeahead;
+    }
+
+    public UserLucene getUserLucene() {
+        return userLucene;
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    public CacheLoading getCacheLoading() {
+        return cacheLoading;
+    }
+
+    public CacheCodec getCacheCodec() {
+        return cacheCodec;
+    }
+
+    public CacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
+    public CacheRefresh getCacheRefresh() {
+        return cacheRefresh;
+    }
+
+    public UserBatch getUserBatch() {
+        return userBatch;
+    }
+
+    public UserLoginFilter getUserLoginFilter() {
+        return userLoginFilter;
+    }
+
+    public CacheWarmup getCacheWarmup() {
+        return cacheWarmup;
+    }
+
+    public UserListing getUserListing() {
+        return userListing;
+    }
+
+    public MongoMetrics getMongoMetrics() {
+        return mongoMetrics;
+    }
+
+    public AuditRetention getAuditRetention() {
+        return auditRetention;
+    }
+
+    public static class UserSync {
+
+        private boolean enabled = true;
+
+        private long ttlSeconds = 300;
+
+        private int maxEntries = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public void setTtlSeconds(long ttlSeconds) {
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class AuthorityRegistry {
+
+        private long refreshIntervalMs = 300000;
+
+        public long getRefreshIntervalMs() {
+            return refreshIntervalMs;
+        }
+
+        public void setRefreshIntervalMs(long refreshIntervalMs) {
+            this.refreshIntervalMs = refreshIntervalMs;
+        }
+    }
+
+    public static class UserWriteBehind {
+
+        private boolean enabled = false;
+
+        private int capacity = 10000;
+
+        private int batchSize = 500;
+
+        private long flushIntervalMs = 500;
+
+        private int maxAttempts = 5;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getFlushIntervalMs() {
+            return flushIntervalMs;
+        }
+
+        public void setFlushIntervalMs(long flushIntervalMs) {
+            this.flushIntervalMs = flushIntervalMs;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+    }
+
+    public static class IdpReconciliation {
+
+        private String usersUri = "http://localhost:9080/auth/admin/realms/jhipster/users";
+
+        private String clientRegistrationId = "oidc";
+
+        private int pageSize = 500;
+
+        private String cron = "-";
+
+        private long lockLeaseMinutes = 10;
+
+        public String getUsersUri() {
+            return usersUri;
+        }
+
+        public void setUsersUri(String usersUri) {
+            this.usersUri = usersUri;
+        }
+
+        public String getClientRegistrationId() {
+            return clientRegistrationId;
+        }
+
+        public void setClientRegistrationId(String clientRegistrationId) {
+            this.clientRegistrationId = clientRegistrationId;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        public String getCron() {
+            return cron;
+        }
+
+        public void setCron(String cron) {
+            this.cron = cron;
+        }
+
+        public long getLockLeaseMinutes() {
+            return lockLeaseMinutes;
+        }
+
+        public void setLockLeaseMinutes(long lockLeaseMinutes) {
+            this.lockLeaseMinutes = lockLeaseMinutes;
+        }
+    }
+
+    public static class UserOutbox {
+
+        private boolean enabled = false;
+
+        private String topic = "jawnzapp-user-changes";
+
+        private String consumerGroupId = "jawnzapp-user-indexer";
+
+        private int batchSize = 500;
+
+        private long relayIntervalMs = 1000;
+
+        private long writeGraceMs = 30000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+
+        public String getConsumerGroupId() {
+            return consumerGroupId;
+        }
+
+        public void setConsumerGroupId(String consumerGroupId) {
+            this.consumerGroupId = consumerGroupId;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getRelayIntervalMs() {
+            return relayIntervalMs;
+        }
+
+        public void setRelayIntervalMs(long relayIntervalMs) {
+            this.relayIntervalMs = relayIntervalMs;
+        }
+
+        public long getWriteGraceMs() {
+            return writeGraceMs;
+        }
+
+        public void setWriteGraceMs(long writeGraceMs) {
+            this.writeGraceMs = writeGraceMs;
+        }
+    }
+
+    public static class UserReindex {
+
+        private int slices = 4;
+
+        private long bulkSizeBytes = 5 * 1024 * 1024;
+
+        private int maxDocsPerSecond = 0;
+
+        private long lockLeaseMinutes = 10;
+
+        public int getSlices() {
+            return slices;
+        }
+
+        public void setSlices(int slices) {
+            this.slices = slices;
+        }
+
+        public long getBulkSizeBytes() {
+            return bulkSizeBytes;
+        }
+
+        public void setBulkSizeBytes(long bulkSizeBytes) {
+            this.bulkSizeBytes = bulkSizeBytes;
+        }
+
+        public int getMaxDocsPerSecond() {
+            return maxDocsPerSecond;
+        }
+
+        public void setMaxDocsPerSecond(int maxDocsPerSecond) {
+            this.maxDocsPerSecond = maxDocsPerSecond;
+        }
+
+        public long getLockLeaseMinutes() {
+            return lockLeaseMinutes;
+        }
+
+        public void setLockLeaseMinutes(long lockLeaseMinutes) {
+            this.lockLeaseMinutes = lockLeaseMinutes;
+        }
+    }
+
+    public static class UserSearch {
+
+        private int maxPageSize = 100;
+
+        private long cacheTtlMs = 5000;
+
+        private int cacheMaxEntries = 1000;
+
+        private int maxQueryLength = 256;
+
+        private int maxClauses = 32;
+
+        private int maxWildcardTerms = 2;
+
+        private long timeoutMs = 2000;
+
+        private int terminateAfter = 100000;
+
+        private int maxConcurrentPerPrincipal = 4;
+
+        public int getMaxPageSize() {
+            return maxPageSize;
+        }
+
+        public void setMaxPageSize(int maxPageSize) {
+            this.maxPageSize = maxPageSize;
+        }
+
+        public long getCacheTtlMs() {
+            return cacheTtlMs;
+        }
+
+        public void setCacheTtlMs(long cacheTtlMs) {
+            this.cacheTtlMs = cacheTtlMs;
+        }
+
+        public int getCacheMaxEntries() {
+            return cacheMaxEntries;
+        }
+
+        public void setCacheMaxEntries(int cacheMaxEntries) {
+            this.cacheMaxEntries = cacheMaxEntries;
+        }
+
+        public int getMaxQueryLength() {
+            return maxQueryLength;
+        }
+
+        public void setMaxQueryLength(int maxQueryLength) {
+            this.maxQueryLength = maxQueryLength;
+        }
+
+        public int getMaxClauses() {
+            return maxClauses;
+        }
+
+        public void setMaxClauses(int maxClauses) {
+            this.maxClauses = maxClauses;
+        }
+
+        public int getMaxWildcardTerms() {
+            return maxWildcardTerms;
+        }
+
+        public void setMaxWildcardTerms(int maxWildcardTerms) {
+            this.maxWildcardTerms = maxWildcardTerms;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+
+        public int getTerminateAfter() {
+            return terminateAfter;
+        }
+
+        public void setTerminateAfter(int terminateAfter) {
+            this.terminateAfter = terminateAfter;
+        }
+
+        public int getMaxConcurrentPerPrincipal() {
+            return maxConcurrentPerPrincipal;
+        }
+
+        public void setMaxConcurrentPerPrincipal(int maxConcurrentPerPrincipal) {
+            this.maxConcurrentPerPrincipal = maxConcurrentPerPrincipal;
+        }
+    }
+
+    public static class UserTypeahead {
+
+        private int maxResults = 10;
+
+        private long budgetMs = 150;
+
+        private long refreshIntervalMs = 300000;
+
+        private int maxEntries = 200000;
+
+        public int getMaxResults() {
+            return maxResults;
+        }
+
+        public void setMaxResults(int maxResults) {
+            this.maxResults = maxResults;
+        }
+
+        public long getBudgetMs() {
+            return budgetMs;
+        }
+
+        public void setBudgetMs(long budgetMs) {
+            this.budgetMs = budgetMs;
+        }
+
+        public long getRefreshIntervalMs() {
+            return refreshIntervalMs;
+        }
+
+        public void setRefreshIntervalMs(long refreshIntervalMs) {
+            this.refreshIntervalMs = refreshIntervalMs;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class UserLucene {
+
+        private String directory = "data/lucene/user";
+
+        private long maxStaleMs = 1000;
+
+        private long minStaleMs = 100;
+
+        private long commitIntervalMs = 60000;
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public long getMaxStaleMs() {
+            return maxStaleMs;
+        }
+
+        public void setMaxStaleMs(long maxStaleMs) {
+            this.maxStaleMs = maxStaleMs;
+        }
+
+        public long getMinStaleMs() {
+            return minStaleMs;
+        }
+
+        public void setMinStaleMs(long minStaleMs) {
+            this.minStaleMs = minStaleMs;
+        }
+
+        public long getCommitIntervalMs() {
+            return commitIntervalMs;
+        }
+
+        public void setCommitIntervalMs(long commitIntervalMs) {
+            this.commitIntervalMs = commitIntervalMs;
+        }
+    }
+
+    public static class NearCache {
+
+        private boolean enabled = true;
+
+        private long maxWeightBytes = 16 * 1024 * 1024;
+
+        private long ttlMs = 10000;
+
+        private String invalidationTopic = "jawnzapp-cache-invalidation";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxWeightBytes() {
+            return maxWeightBytes;
+        }
+
+        public void setMaxWeightBytes(long maxWeightBytes) {
+            this.maxWeightBytes = maxWeightBytes;
+        }
+
+        public long getTtlMs() {
+            return ttlMs;
+        }
+
+        public void setTtlMs(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+
+        public String getInvalidationTopic() {
+            return invalidationTopic;
+        }
+
+        public void setInvalidationTopic(String invalidationTopic) {
+            this.invalidationTopic = invalidationTopic;
+        }
+    }
+
+    public static class CacheLoading {
+
+        private boolean leaseEnabled = false;
+
+        private int leaseSeconds = 5;
+
+        private long leaseWaitMs = 1000;
+
+        private long leasePollMs = 50;
+
+        public boolean isLeaseEnabled() {
+            return leaseEnabled;
+        }
+
+        public void setLeaseEnabled(boolean leaseEnabled) {
+            this.leaseEnabled = leaseEnabled;
+        }
+
+        public int getLeaseSeconds() {
+            return leaseSeconds;
+        }
+
+        public void setLeaseSeconds(int leaseSeconds) {
+            this.leaseSeconds = leaseSeconds;
+        }
+
+        public long getLeaseWaitMs() {
+            return leaseWaitMs;
+        }
+
+        public void setLeaseWaitMs(long leaseWaitMs) {
+            this.leaseWaitMs = leaseWaitMs;
+        }
+
+        public long getLeasePollMs() {
+            return leasePollMs;
+        }
+
+        public void setLeasePollMs(long leasePollMs) {
+            this.leasePollMs = leasePollMs;
+        }
+    }
+
+    public static class CacheCodec {
+
+        private boolean compact = false;
+
+        private int compressionThresholdBytes = 512;
+
+        public boolean isCompact() {
+            return compact;
+        }
+
+        public void setCompact(boolean compact) {
+            this.compact = compact;
+        }
+
+        public int getCompressionThresholdBytes() {
+            return compressionThresholdBytes;
+        }
+
+        public void setCompressionThresholdBytes(int compressionThresholdBytes) {
+            this.compressionThresholdBytes = compressionThresholdBytes;
+        }
+    }
+
+    public static class CacheStatistics {
+
+        private double hotKeySampleRate = 0.01;
+
+        private int hotKeyCapacity = 100;
+
+        public double getHotKeySampleRate() {
+            return hotKeySampleRate;
+        }
+
+        public void setHotKeySampleRate(double hotKeySampleRate) {
+            this.hotKeySampleRate = hotKeySampleRate;
+        }
+
+        public int getHotKeyCapacity() {
+            return hotKeyCapacity;
+        }
+
+        public void setHotKeyCapacity(int hotKeyCapacity) {
+            this.hotKeyCapacity = hotKeyCapacity;
+        }
+    }
+
+    public static class CacheRefresh {
+
+        private boolean enabled = true;
+
+        private long windowMs = 30000;
+
+        private int maxConcurrent = 4;
+
+        private int maxTrackedKeys = 100000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getWindowMs() {
+            return windowMs;
+        }
+
+        public void setWindowMs(long windowMs) {
+            this.windowMs = windowMs;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public int getMaxTrackedKeys() {
+            return maxTrackedKeys;
+        }
+
+        public void setMaxTrackedKeys(int maxTrackedKeys) {
+            this.maxTrackedKeys = maxTrackedKeys;
+        }
+    }
+
+    public static class UserBatch {
+
+        private int maxSize = 100;
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class UserLoginFilter {
+
+        private boolean enabled = true;
+
+        private double falsePositiveRate = 0.01;
+
+        private long refreshIntervalMs = 600000;
+
+        private boolean soleWriter = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getFalsePositiveRate() {
+            return falsePositiveRate;
+        }
+
+        public void setFalsePositiveRate(double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+        }
+
+        public long getRefreshIntervalMs() {
+            return refreshIntervalMs;
+        }
+
+        public void setRefreshIntervalMs(long refreshIntervalMs) {
+            this.refreshIntervalMs = refreshIntervalMs;
+        }
+
+        public boolean isSoleWriter() {
+            return soleWriter;
+        }
+
+        public void setSoleWriter(boolean soleWriter) {
+            this.soleWriter = soleWriter;
+        }
+    }
+
+    public static class CacheWarmup {
+
+        private boolean enabled = false;
+
+        private int topN = 5000;
+
+        private int lookbackHours = 24;
+
+        private int batchSize = 100;
+
+        private int parallelism = 4;
+
+        private long timeoutMs = 60000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTopN() {
+            return topN;
+        }
+
+        public void setTopN(int topN) {
+            this.topN = topN;
+        }
+
+        public int getLookbackHours() {
+            return lookbackHours;
+        }
+
+        public void setLookbackHours(int lookbackHours) {
+            this.lookbackHours = lookbackHours;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    public static class UserListing {
+
+        private int maxPageSize = 100;
+
+        public int getMaxPageSize() {
+            return maxPageSize;
+        }
+
+        public void setMaxPageSize(int maxPageSize) {
+            this.maxPageSize = maxPageSize;
+        }
+    }
+
+    public static class MongoMetrics {
+
+        private long slowThresholdMs = 100;
+
+        private double slowSampleRate = 0.1;
+
+        private int slowLogCapacity = 50;
+
+        private boolean explain = true;
+
+        public long getSlowThresholdMs() {
+            return slowThresholdMs;
+        }
+
+        public void setSlowThresholdMs(long slowThresholdMs) {
+            this.slowThresholdMs = slowThresholdMs;
+        }
+
+        public double getSlowSampleRate() {
+            return slowSampleRate;
+        }
+
+        public void setSlowSampleRate(double slowSampleRate) {
+            this.slowSampleRate = slowSampleRate;
+        }
+
+        public int getSlowLogCapacity() {
+            return slowLogCapacity;
+        }
+
+        public void setSlowLogCapacity(int slowLogCapacity) {
+            this.slowLogCapacity = slowLogCapacity;
+        }
+
+        public boolean isExplain() {
+            return explain;
+        }
+
+        public void setExplain(boolean explain) {
+            this.explain = explain;
+        }
+    }
+
+    public static class AuditRetention {
+
+        public enum Mode {
+            CHUNKED, TTL
+        }
+
+        private Mode mode = Mode.CHUNKED;
+
+        private String cron = "0 0 12 * * ?";
+
+        private int chunkSize = 10000;
+
+        private int maxDeletesPerSecond = 5000;
+
+        private long lockLeaseMinutes = 10;
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public String getCron() {
+            return cron;
+        }
+
+        public void setCron(String cron) {
+            this.cron = cron;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getMaxDeletesPerSecond() {
+            return maxDeletesPerSecond;
+        }
+
+        public void setMaxDeletesPerSecond(int maxDeletesPerSecond) {
+            this.maxDeletesPerSecond = maxDeletesPerSecond;
+        }
+
+        public long getLockLeaseMinutes() {
+            return lockLeaseMinutes;
+        }
+
+        public void setLockLeaseMinutes(long lockLeaseMinutes) {
+            this.lockLeaseMinutes = lockLeaseMinutes;
+        }
+    }
 }
@@ -1,31 +1,47 @@
 package com.jawnz.app.config;
 
+import com.jawnz.app.config.cache.CacheInstrumentation;
+import com.jawnz.app.config.cache.CoalescingCache;
+import com.jawnz.app.config.cache.CompactCacheTranscoder;
+import com.jawnz.app.config.cache.LoadLease;
+import com.jawnz.app.config.cache.MemcachedCache;
+import com.jawnz.app.config.cache.MemcachedLoadLease;
+import com.jawnz.app.config.cache.RefreshAheadCache;
+import com.jawnz.app.config.cache.TwoTierCacheManager;
+import com.jawnz.app.domain.Authority;
+import com.jawnz.app.domain.User;
 import com.jawnz.app.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.boot.info.GitProperties;
 import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import io.github.jhipster.config.cache.PrefixedKeyGenerator;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.*;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.net.InetSocketAddress;
 import net.rubyeye.xmemcached.auth.AuthInfo;
 import net.rubyeye.xmemcached.utils.AddrUtil;
 import com.google.code.ssm.providers.xmemcached.XMemcachedConfiguration;
 import com.google.code.ssm.CacheFactory;
+import com.google.code.ssm.api.format.SerializationType;
 import com.google.code.ssm.config.DefaultAddressProvider;
 import com.google.code.ssm.providers.xmemcached.MemcacheClientFactoryImpl;
-import com.google.code.ssm.spring.SSMCache;
-import com.google.code.ssm.spring.SSMCacheManager;
 
 import io.github.jhipster.config.JHipsterProperties;
 
@@ -38,7 +54,18 @@ public class CacheConfiguration {
     private final Logger log = LoggerFactory.getLogger(CacheConfiguration.class);
 
     @Bean
-    public CacheManager memcachedCacheManager(JHipsterProperties jHipsterProperties, List<CacheFactory> caches)
+    public CacheInstrumentation cacheInstrumentation(ApplicationProperties applicationProperties,
+                                                     MeterRegistry meterRegistry) {
+        ApplicationProperties.CacheStatistics cacheStatistics = applicationProperties.getCacheStatistics();
+        return new CacheInstrumentation(meterRegistry, cacheStatistics.getHotKeySampleRate(),
+            cacheStatistics.getHotKeyCapacity());
+    }
+
+    @Bean
+    public CacheManager memcachedCacheManager(JHipsterProperties jHipsterProperties, List<CacheFactory> caches,
+                                              ApplicationProperties applicationProperties, MeterRegistry meterRegistry,
+                                              CacheInstrumentation cacheInstrumentation,
+                                              @Qualifier("taskExecutor") Executor taskExecutor)
         throws Exception {
 
         if (!jHipsterProperties.getCache().getMemcached().isEnabled()) {
@@ -48,30 +75,107 @@ public class CacheConfiguration {
             return new NoOpCacheManager();
         }
         log.debug("Starting Memcached configuration");
-        SSMCacheManager cacheManager = new SSMCacheManager();
-        List<SSMCache> ssmCaches = new ArrayList<>();
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        ApplicationProperties.CacheLoading cacheLoading = applicationProperties.getCacheLoading();
+        ApplicationProperties.CacheRefresh cacheRefresh = applicationProperties.getCacheRefresh();
+        List<Cache> memcachedCaches = new ArrayList<>();
         for (CacheFactory cache : caches) {
-            SSMCache ssmCache =
-                new SSMCache(cache.getObject(), jHipsterProperties.getCache().getMemcached().getExpiration(),
-                    false);
+            MemcachedCache ssmCache =
+                new MemcachedCache(cache.getObject(), jHipsterProperties.getCache().getMemcached().getExpiration());
+
+            LoadLease lease = cacheLoading.isLeaseEnabled()
+                ? new MemcachedLoadLease(ssmCache.getCache(), cacheLoading.getLeaseSeconds(),
+                    cacheLoading.getLeaseWaitMs(), cacheLoading.getLeasePollMs())
+                : null;
+            Cache memcachedCache = new CoalescingCache(cacheInstrumentation.instrument(ssmCache),
+                CacheConfiguration::copy, lease, meterRegistry);
+            if (cacheRefresh.isEnabled()) {
+                memcachedCache = new RefreshAheadCache(memcachedCache,
+                    jHipsterProperties.getCache().getMemcached().getExpiration() * 1000L, cacheRefresh.getWindowMs(),
+                    cacheRefresh.getMaxConcurrent(), cacheRefresh.getMaxTrackedKeys(), taskExecutor,
+                    Clock.systemUTC(), meterRegistry);
+            }
+            memcachedCaches.add(memcachedCache);
+        }
+        cacheManager.setCaches(memcachedCaches);
+        cacheManager.afterPropertiesSet();
+
+        ApplicationProperties.NearCache nearCache = applicationProperties.getNearCache();
+        if (!nearCache.isEnabled()) {
+            return cacheManager;
+        }
+        return new TwoTierCacheManager(cacheManager, nearCache.getMaxWeightBytes(), nearCache.getTtlMs(),
+            CacheConfiguration::weigh, CacheConfiguration::copy, meterRegistry);
+    }
 
-            ssmCaches.add(ssmCache);
+    /**
+     * Estimates the heap size of a cached key or value, in bytes.
+     */
+    static long weigh(Object value) {
+        if (value == null) {
+            return 16;
         }
-        cacheManager.setCaches(ssmCaches);
-        return cacheManager;
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof User) {
+            User user = (User) value;
+            // the object, its set of authorities and its audit dates
+            long weight = 144
+                + weigh(user.getId()) + weigh(user.getLogin()) + weigh(user.getFirstName()) + weigh(user.getLastName())
+                + weigh(user.getEmail()) + weigh(user.getImageUrl()) + weigh(user.getLangKey())
+                + weigh(user.getCreatedBy()) + weigh(user.getLastModifiedBy());
+            for (Authority authority : user.getAuthorities()) {
+                weight += 48 + weigh(authority.getName());
+            }
+            return weight;
+        }
+        return 64;
+    }
+
+    /**
+     * Copies the mutable cached values, so that the in-process cache never shares them with its callers.
+     */
+    static Object copy(Object value) {
+        if (!(value instanceof User)) {
+            return value;
+        }
+        User user = (User) value;
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setLogin(user.getLogin());
+        copy.setFirstName(user.getFirstName());
+        copy.setLastName(user.getLastName());
+        copy.setEmail(user.getEmail());
+        copy.setActivated(user.getActivated());
+        copy.setLangKey(user.getLangKey());
+        copy.setImageUrl(user.getImageUrl());
+        copy.setAuthorities(new HashSet<>(user.getAuthorities()));
+        copy.setCreatedBy(user.getCreatedBy());
+        copy.setCreatedDate(user.getCreatedDate());
+        copy.setLastModifiedBy(user.getLastModifiedBy());
+        copy.setLastModifiedDate(user.getLastModifiedDate());
+        copy.setVersion(user.getVersion());
+        return copy;
     }
 
     @Bean
-    public CacheFactory usersByLoginCache(JHipsterProperties jHipsterProperties) {
-        return this.createCache(UserRepository.USERS_BY_LOGIN_CACHE, jHipsterProperties);
+    public CacheFactory usersByLoginCache(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties,
+                                          CacheInstrumentation cacheInstrumentation) {
+        return this.createCache(UserRepository.USERS_BY_LOGIN_CACHE, jHipsterProperties, applicationProperties,
+            cacheInstrumentation);
     }
 
     @Bean
-    public CacheFactory usersByEmailCache(JHipsterProperties jHipsterProperties) {
-        return this.createCache(UserRepository.USERS_BY_EMAIL_CACHE, jHipsterProperties);
+    public CacheFactory usersByEmailCache(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties,
+                                          CacheInstrumentation cacheInstrumentation) {
+        return this.createCache(UserRepository.USERS_BY_EMAIL_CACHE, jHipsterProperties, applicationProperties,
+            cacheInstrumentation);
     }
 
-    private CacheFactory createCache(String cacheName, JHipsterProperties jHipsterProperties) {
+    private CacheFactory createCache(String cacheName, JHipsterProperties jHipsterProperties,
+                                     ApplicationProperties applicationProperties,
+                                     CacheInstrumentation cacheInstrumentation) {
         if (!jHipsterProperties.getCache().getMemcached().isEnabled()) {
             // Note that Memcached cannot work with Spring Boot devtools
             // So it should be disabled in development mode
@@ -104,6 +208,13 @@ public class CacheConfiguration {
         cacheConfiguration.setUseBinaryProtocol(jHipsterProperties.getCache().getMemcached().isUseBinaryProtocol());
         defaultCache.setConfiguration(cacheConfiguration);
 
+        ApplicationProperties.CacheCodec cacheCodec = applicationProperties.getCacheCodec();
+        if (cacheCodec.isCompact()) {
+            defaultCache.setDefaultSerializationType(SerializationType.CUSTOM);
+            defaultCache.setCustomTranscoder(new CompactCacheTranscoder(cacheCodec.getCompressionThresholdBytes(),
+                cacheInstrumentation.payloadSizes(cacheName)));
+        }
+
         return defaultCache;
     }
 
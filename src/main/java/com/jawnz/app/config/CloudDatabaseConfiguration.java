@@ -4,6 +4,8 @@ package com.jawnz.app.config;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.jawnz.app.config.mongo.InstrumentedMongoRepositoryFactoryBean;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,7 +32,7 @@ import io.github.jhipster.domain.util.JSR310DateConverters.ZonedDateTimeToDateCo
 
 
 @Configuration
-@EnableMongoRepositories("com.jawnz.app.repository")
+@EnableMongoRepositories(basePackages = "com.jawnz.app.repository", repositoryFactoryBeanClass = InstrumentedMongoRepositoryFactoryBean.class)
 @Profile(JHipsterConstants.SPRING_PROFILE_CLOUD)
 public class CloudDatabaseConfiguration extends AbstractCloudConfig {
 
@@ -12,6 +12,9 @@ public final class Constants {
     public static final String DEFAULT_LANGUAGE = "en";
     public static final String ANONYMOUS_USER = "anonymoususer";
 
+    // Profile serving the user search from an embedded Lucene index instead of Elasticsearch
+    public static final String SPRING_PROFILE_LUCENE = "lucene";
+
     private Constants() {
     }
 }
@@ -3,6 +3,8 @@ package com.jawnz.app.config;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.jawnz.app.config.mongo.InstrumentedMongoRepositoryFactoryBean;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -33,8 +35,8 @@ import io.github.jhipster.domain.util.JSR310DateConverters.DateToZonedDateTimeCo
 import io.github.jhipster.domain.util.JSR310DateConverters.ZonedDateTimeToDateConverter;
 
 @Configuration
-@EnableElasticsearchRepositories("com.jawnz.app.repository.search")
-@EnableMongoRepositories(basePackages = "com.jawnz.app.repository", includeFilters = @Filter(type = FilterType.ASSIGNABLE_TYPE, value = MongoRepository.class))
+@EnableMongoRepositories(basePackages = "com.jawnz.app.repository", includeFilters = @Filter(type = FilterType.ASSIGNABLE_TYPE, value = MongoRepository.class),
+    repositoryFactoryBeanClass = InstrumentedMongoRepositoryFactoryBean.class)
 @Profile("!" + JHipsterConstants.SPRING_PROFILE_CLOUD)
 @Import(value = MongoAutoConfiguration.class)
 @EnableMongoAuditing(auditorAwareRef = "springSecurityAuditorAware")
@@ -73,5 +75,13 @@ public class DatabaseConfiguration {
             .setSpringContext(springContext)
             .buildInitializingBeanRunner();
     }
-    
+
+    /**
+     * The Elasticsearch repositories, replaced by the embedded index of the "lucene" profile.
+     */
+    @Configuration
+    @Profile("!" + Constants.SPRING_PROFILE_LUCENE)
+    @EnableElasticsearchRepositories("com.jawnz.app.repository.search")
+    static class ElasticsearchRepositoriesConfiguration {
+    }
 }
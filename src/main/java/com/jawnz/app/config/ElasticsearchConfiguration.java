@@ -1,5 +1,6 @@
 package com.jawnz.app.config;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -24,7 +25,6 @@ import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchPe
 import org.springframework.data.mapping.MappingException;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
@@ -59,9 +59,17 @@ public class ElasticsearchConfiguration {
             new DefaultJestResultsMapper(mappingContext, entityMapper));
     }
 
-    public class CustomEntityMapper implements EntityMapper {
+    /**
+     * Jackson based {@link EntityMapper}.
+     * <p>
+     * Conversions between entities and maps go through Jackson's token buffers, without serializing to an
+     * intermediate JSON string.
+     */
+    public static class CustomEntityMapper implements EntityMapper {
 
-        private ObjectMapper objectMapper;
+        private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {};
+
+        private final ObjectMapper objectMapper;
 
         public CustomEntityMapper(ObjectMapper objectMapper) {
             this.objectMapper = objectMapper;
@@ -85,8 +93,8 @@ public class ElasticsearchConfiguration {
         @Override
         public Map<String, Object> mapObject(Object source) {
             try {
-                return objectMapper.readValue(mapToString(source), HashMap.class);
-            } catch (IOException e) {
+                return objectMapper.convertValue(source, MAP_TYPE);
+            } catch (IllegalArgumentException e) {
                 throw new MappingException(e.getMessage(), e);
             }
         }
@@ -94,8 +102,8 @@ public class ElasticsearchConfiguration {
         @Override
         public <T> T readObject(Map<String, Object> source, Class<T> targetType) {
             try {
-                return mapToObject(mapToString(source), targetType);
-            } catch (IOException e) {
+                return objectMapper.convertValue(source, targetType);
+            } catch (IllegalArgumentException e) {
                 throw new MappingException(e.getMessage(), e);
             }
         }
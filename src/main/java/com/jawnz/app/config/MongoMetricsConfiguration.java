@@ -0,0 +1,57 @@
+package com.jawnz.app.config;
+
+import com.jawnz.app.config.mongo.MongoCommandMetrics;
+import com.jawnz.app.config.mongo.MongoConnectionPoolMetrics;
+import com.jawnz.app.config.mongo.SlowCommandLog;
+
+import com.mongodb.MongoClientOptions;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Metrics of the MongoDB commands and connection pools, registered with the options of the client.
+ * <p>
+ * The commands are tagged with the repository method which ran them by
+ * {@link com.jawnz.app.config.mongo.InstrumentedMongoRepositoryFactoryBean}.
+ */
+@Configuration
+public class MongoMetricsConfiguration {
+
+    private final ApplicationProperties.MongoMetrics properties;
+
+    public MongoMetricsConfiguration(ApplicationProperties applicationProperties) {
+        this.properties = applicationProperties.getMongoMetrics();
+    }
+
+    @Bean
+    public SlowCommandLog slowCommandLog(@Qualifier("taskExecutor") Executor taskExecutor,
+                                         ObjectProvider<MongoTemplate> mongoTemplate) {
+        return new SlowCommandLog(properties.getSlowLogCapacity(), properties.isExplain(), taskExecutor, mongoTemplate);
+    }
+
+    @Bean
+    public MongoCommandMetrics mongoCommandMetrics(MeterRegistry meterRegistry, SlowCommandLog slowCommandLog) {
+        return new MongoCommandMetrics(meterRegistry, slowCommandLog, properties.getSlowThresholdMs(),
+            properties.getSlowSampleRate());
+    }
+
+    @Bean
+    public MongoConnectionPoolMetrics mongoConnectionPoolMetrics(MeterRegistry meterRegistry) {
+        return new MongoConnectionPoolMetrics(meterRegistry);
+    }
+
+    @Bean
+    public MongoClientOptions mongoClientOptions(MongoCommandMetrics mongoCommandMetrics,
+                                                 MongoConnectionPoolMetrics mongoConnectionPoolMetrics) {
+        return MongoClientOptions.builder()
+            .addCommandListener(mongoCommandMetrics)
+            .addConnectionPoolListener(mongoConnectionPoolMetrics)
+            .build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.jawnz.app.config.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache reading several entries at once, and writing the entries loaded after a miss unless they were evicted
+ * during the loading.
+ */
+public interface BatchCache extends Cache {
+
+    /**
+     * @param keys the keys to read.
+     * @return the wrappers of the cached entries by key, without the missed keys.
+     */
+    Map<Object, ValueWrapper> getAll(Collection<?> keys);
+
+    /**
+     * @return the generation of the cache, which changes whenever an entry is evicted or the cache is cleared.
+     */
+    default long generation() {
+        return 0;
+    }
+
+    /**
+     * Writes an entry loaded after a miss, unless an entry was evicted since the generation was read, as
+     * {@link #get(Object, java.util.concurrent.Callable)} does for the value it loads.
+     *
+     * @param key the key.
+     * @param value the loaded value.
+     * @param readGeneration the {@link #generation()} read before the loading.
+     */
+    default void putIfNotEvicted(Object key, Object value, long readGeneration) {
+        put(key, value);
+    }
+
+    /**
+     * Reads several entries at once if the cache supports it, or one by one otherwise.
+     *
+     * @param cache the cache.
+     * @param keys the keys to read.
+     * @return the wrappers of the cached entries by key, without the missed keys.
+     */
+    static Map<Object, ValueWrapper> getAll(Cache cache, Collection<?> keys) {
+        if (cache instanceof BatchCache) {
+            return ((BatchCache) cache).getAll(keys);
+        }
+        Map<Object, ValueWrapper> values = new HashMap<>();
+        for (Object key : keys) {
+            ValueWrapper value = cache.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param cache the cache.
+     * @return the generation to pass to {@link #putIfNotEvicted(Cache, Object, Object, long)}.
+     */
+    static long generation(Cache cache) {
+        return cache instanceof BatchCache ? ((BatchCache) cache).generation() : 0;
+    }
+
+    /**
+     * Writes an entry loaded after a miss unless it may have been evicted in between, if the cache supports it.
+     *
+     * @param cache the cache.
+     * @param key the key.
+     * @param value the loaded value.
+     * @param readGeneration the generation read before the loading.
+     */
+    static void putIfNotEvicted(Cache cache, Object key, Object value, long readGeneration) {
+        if (cache instanceof BatchCache) {
+            ((BatchCache) cache).putIfNotEvicted(key, value, readGeneration);
+        } else {
+            cache.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Instruments the shared caches, and keeps track of them for reporting.
+ */
+public class CacheInstrumentation {
+
+    private final MeterRegistry meterRegistry;
+
+    private final double hotKeySampleRate;
+
+    private final int hotKeyCapacity;
+
+    private final Map<String, InstrumentedCache> caches = new ConcurrentHashMap<>();
+
+    public CacheInstrumentation(MeterRegistry meterRegistry, double hotKeySampleRate, int hotKeyCapacity) {
+        this.meterRegistry = meterRegistry;
+        this.hotKeySampleRate = hotKeySampleRate;
+        this.hotKeyCapacity = hotKeyCapacity;
+    }
+
+    /**
+     * Wraps a shared cache to record its operations.
+     */
+    public InstrumentedCache instrument(Cache cache) {
+        InstrumentedCache instrumented = new InstrumentedCache(cache, new HotKeySampler(hotKeySampleRate, hotKeyCapacity),
+            meterRegistry);
+        caches.put(cache.getName(), instrumented);
+        return instrumented;
+    }
+
+    /**
+     * @return the recorder of the sizes of the encoded values of a cache.
+     */
+    public IntConsumer payloadSizes(String cacheName) {
+        DistributionSummary summary = payloadSummary(cacheName);
+        return summary::record;
+    }
+
+    public DistributionSummary payloadSummary(String cacheName) {
+        return DistributionSummary.builder("cache.memcached.payload")
+            .tag("cache", cacheName)
+            .description("Size of the encoded values of a memcached cache, read or written")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    public List<InstrumentedCache> getCaches() {
+        return new ArrayList<>(caches.values());
+    }
+}
@@ -0,0 +1,179 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cache.Cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache running a single loader per key at a time, for the {@code sync} cacheable methods.
+ * <p>
+ * On a miss, the first caller loads the value while the concurrent callers of the same key wait for it, and get
+ * copies of it. With a {@link LoadLease}, the loading caller first takes a lease shared by all the instances: if
+ * another instance holds it, the value is awaited from the cache for a while before being loaded anyway.
+ */
+public class CoalescingCache implements BatchCache {
+
+    private final Cache delegate;
+
+    private final UnaryOperator<Object> copier;
+
+    private final LoadLease lease;
+
+    private final Map<Object, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+    private final Timer loadTimer;
+
+    private final Counter waiterCounter;
+
+    private final Counter leaseBusyCounter;
+
+    /**
+     * @param delegate the cache.
+     * @param copier copies the mutable values handed to the waiting callers.
+     * @param lease the lease shared with the other instances, or {@code null}.
+     * @param meterRegistry the registry of the loading metrics.
+     */
+    public CoalescingCache(Cache delegate, UnaryOperator<Object> copier, LoadLease lease, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.copier = copier;
+        this.lease = lease;
+        this.loadTimer = Timer.builder("cache.loads")
+            .tag("cache", getName())
+            .description("Values loaded on a cache miss")
+            .register(meterRegistry);
+        this.waiterCounter = Counter.builder("cache.load.coalesced")
+            .tag("cache", getName())
+            .description("Cache misses which waited for the value loaded by another caller")
+            .register(meterRegistry);
+        this.leaseBusyCounter = Counter.builder("cache.load.lease.busy")
+            .tag("cache", getName())
+            .description("Cache misses which waited for the value loaded by another instance")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = delegate.get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> running = loads.putIfAbsent(key, load);
+        if (running != null) {
+            waiterCounter.increment();
+            return (T) copier.apply(await(key, running, valueLoader));
+        }
+        try {
+            Object value = load(key, valueLoader);
+            load.complete(value);
+            return (T) value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    private Object load(Object key, Callable<?> valueLoader) {
+        // a previous load may have completed since the first lookup
+        ValueWrapper cached = delegate.get(key);
+        if (cached != null) {
+            return cached.get();
+        }
+        boolean leased = lease == null || lease.tryAcquire(getName(), key);
+        try {
+            if (!leased) {
+                leaseBusyCounter.increment();
+                cached = lease.await(() -> delegate.get(key));
+                if (cached != null) {
+                    return cached.get();
+                }
+            }
+            Timer.Sample sample = Timer.start();
+            Object value;
+            try {
+                value = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            } finally {
+                sample.stop(loadTimer);
+            }
+            delegate.put(key, value);
+            return value;
+        } finally {
+            if (leased && lease != null) {
+                lease.release(getName(), key);
+            }
+        }
+    }
+
+    private static Object await(Object key, CompletableFuture<Object> running, Callable<?> valueLoader) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    @Override
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        return BatchCache.getAll(delegate, keys);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+}
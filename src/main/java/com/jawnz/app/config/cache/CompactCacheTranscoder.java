@@ -0,0 +1,389 @@
+package com.jawnz.app.config.cache;
+
+import com.jawnz.app.domain.Authority;
+import com.jawnz.app.domain.User;
+
+import com.google.code.ssm.providers.CacheTranscoder;
+import com.google.code.ssm.providers.CachedObject;
+import com.google.code.ssm.providers.CachedObjectImpl;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Memcached transcoder storing users in a compact binary format.
+ * <p>
+ * A value starts with a format byte and a flags byte. Users are encoded as a list of tagged fields, as in
+ * protocol buffers: a field number and a wire type, followed by a varint or by a length-prefixed value. Decoders
+ * skip the fields they do not know and leave the absent ones to their defaults, so fields can be added and
+ * removed without changing the format; incompatible changes need a new format byte. Other values, such as the
+ * negative results of the cache, fall back to Java serialization.
+ * <p>
+ * Payloads above a threshold are compressed with LZ4 when it makes them smaller. Values which cannot be decoded,
+ * including the ones written with the default Java transcoder, are read as cache misses.
+ */
+public class CompactCacheTranscoder implements CacheTranscoder {
+
+    static final byte FORMAT_JAVA = 1;
+
+    static final byte FORMAT_USER = 2;
+
+    static final byte FLAG_LZ4 = 1;
+
+    private static final int VARINT = 0;
+
+    private static final int LENGTH_DELIMITED = 2;
+
+    private static final int ID = 1;
+
+    private static final int LOGIN = 2;
+
+    private static final int FIRST_NAME = 3;
+
+    private static final int LAST_NAME = 4;
+
+    private static final int EMAIL = 5;
+
+    private static final int ACTIVATED = 6;
+
+    private static final int LANG_KEY = 7;
+
+    private static final int IMAGE_URL = 8;
+
+    private static final int AUTHORITY = 9;
+
+    private static final int CREATED_BY = 10;
+
+    private static final int CREATED_DATE_SECONDS = 11;
+
+    private static final int CREATED_DATE_NANOS = 12;
+
+    private static final int LAST_MODIFIED_BY = 13;
+
+    private static final int LAST_MODIFIED_DATE_SECONDS = 14;
+
+    private static final int LAST_MODIFIED_DATE_NANOS = 15;
+
+    private static final int VERSION = 16;
+
+    private final Logger log = LoggerFactory.getLogger(CompactCacheTranscoder.class);
+
+    private final int compressionThreshold;
+
+    private final IntConsumer payloadSizes;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * @param compressionThreshold the size in bytes above which payloads are compressed.
+     */
+    public CompactCacheTranscoder(int compressionThreshold) {
+        this(compressionThreshold, size -> { });
+    }
+
+    /**
+     * @param compressionThreshold the size in bytes above which payloads are compressed.
+     * @param payloadSizes the recorder of the sizes of the encoded values, read or written.
+     */
+    public CompactCacheTranscoder(int compressionThreshold, IntConsumer payloadSizes) {
+        this.compressionThreshold = compressionThreshold;
+        this.payloadSizes = payloadSizes;
+    }
+
+    @Override
+    public CachedObject encode(Object value) {
+        byte[] data = encodeValue(value);
+        payloadSizes.accept(data.length);
+        return new CachedObjectImpl(0, data);
+    }
+
+    @Override
+    public Object decode(CachedObject data) {
+        if (data.getData() != null) {
+            payloadSizes.accept(data.getData().length);
+        }
+        return decodeValue(data.getData());
+    }
+
+    byte[] encodeValue(Object value) {
+        byte format;
+        byte[] payload;
+        if (value instanceof User) {
+            format = FORMAT_USER;
+            payload = encodeUser((User) value);
+        } else {
+            format = FORMAT_JAVA;
+            payload = serialize(value);
+        }
+        Output output = new Output(payload.length + 8);
+        output.write(format);
+        if (payload.length > compressionThreshold) {
+            byte[] compressed = compressor.compress(payload);
+            if (compressed.length + 5 < payload.length) {
+                output.write(FLAG_LZ4);
+                output.writeVarint(payload.length);
+                output.write(compressed, 0, compressed.length);
+                return output.toByteArray();
+            }
+        }
+        output.write(0);
+        output.write(payload, 0, payload.length);
+        return output.toByteArray();
+    }
+
+    Object decodeValue(byte[] data) {
+        if (data == null || data.length < 2 || (data[0] != FORMAT_USER && data[0] != FORMAT_JAVA)) {
+            log.debug("Ignoring a cached value of unknown format");
+            return null;
+        }
+        try {
+            Input input = new Input(data, 2);
+            byte[] payload;
+            if ((data[1] & FLAG_LZ4) != 0) {
+                int length = (int) input.readVarint();
+                payload = decompressor.decompress(data, input.position, length);
+            } else {
+                payload = Arrays.copyOfRange(data, 2, data.length);
+            }
+            return data[0] == FORMAT_USER ? decodeUser(payload) : deserialize(payload);
+        } catch (RuntimeException | IOException | ClassNotFoundException e) {
+            log.warn("Ignoring an unreadable cached value: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] encodeUser(User user) {
+        Output output = new Output(256);
+        output.writeString(ID, user.getId());
+        output.writeString(LOGIN, user.getLogin());
+        output.writeString(FIRST_NAME, user.getFirstName());
+        output.writeString(LAST_NAME, user.getLastName());
+        output.writeString(EMAIL, user.getEmail());
+        output.writeVarint(ACTIVATED, user.getActivated() ? 1 : 0);
+        output.writeString(LANG_KEY, user.getLangKey());
+        output.writeString(IMAGE_URL, user.getImageUrl());
+        for (Authority authority : user.getAuthorities()) {
+            output.writeString(AUTHORITY, authority.getName());
+        }
+        output.writeString(CREATED_BY, user.getCreatedBy());
+        output.writeInstant(CREATED_DATE_SECONDS, CREATED_DATE_NANOS, user.getCreatedDate());
+        output.writeString(LAST_MODIFIED_BY, user.getLastModifiedBy());
+        output.writeInstant(LAST_MODIFIED_DATE_SECONDS, LAST_MODIFIED_DATE_NANOS, user.getLastModifiedDate());
+        if (user.getVersion() != null) {
+            output.writeVarint(VERSION, user.getVersion());
+        }
+        return output.toByteArray();
+    }
+
+    private static User decodeUser(byte[] payload) {
+        User user = new User();
+        user.setAuthorities(new HashSet<>());
+        user.setCreatedDate(null);
+        user.setLastModifiedDate(null);
+        long createdSeconds = Long.MIN_VALUE;
+        long createdNanos = 0;
+        long lastModifiedSeconds = Long.MIN_VALUE;
+        long lastModifiedNanos = 0;
+        Input input = new Input(payload, 0);
+        while (input.hasMore()) {
+            long tag = input.readVarint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (wireType == VARINT) {
+                long value = input.readVarint();
+                switch (field) {
+                    case ACTIVATED:
+                        user.setActivated(value != 0);
+                        break;
+                    case CREATED_DATE_SECONDS:
+                        createdSeconds = unzigzag(value);
+                        break;
+                    case CREATED_DATE_NANOS:
+                        createdNanos = value;
+                        break;
+                    case LAST_MODIFIED_DATE_SECONDS:
+                        lastModifiedSeconds = unzigzag(value);
+                        break;
+                    case LAST_MODIFIED_DATE_NANOS:
+                        lastModifiedNanos = value;
+                        break;
+                    case VERSION:
+                        user.setVersion(value);
+                        break;
+                    default:
+                        // unknown field
+                }
+            } else if (wireType == LENGTH_DELIMITED) {
+                String value = input.readString();
+                switch (field) {
+                    case ID:
+                        user.setId(value);
+                        break;
+                    case LOGIN:
+                        user.setLogin(value);
+                        break;
+                    case FIRST_NAME:
+                        user.setFirstName(value);
+                        break;
+                    case LAST_NAME:
+                        user.setLastName(value);
+                        break;
+                    case EMAIL:
+                        user.setEmail(value);
+                        break;
+                    case LANG_KEY:
+                        user.setLangKey(value);
+                        break;
+                    case IMAGE_URL:
+                        user.setImageUrl(value);
+                        break;
+                    case AUTHORITY:
+                        Authority authority = new Authority();
+                        authority.setName(value);
+                        user.getAuthorities().add(authority);
+                        break;
+                    case CREATED_BY:
+                        user.setCreatedBy(value);
+                        break;
+                    case LAST_MODIFIED_BY:
+                        user.setLastModifiedBy(value);
+                        break;
+                    default:
+                        // unknown field
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported wire type " + wireType + " of field " + field);
+            }
+        }
+        if (createdSeconds != Long.MIN_VALUE) {
+            user.setCreatedDate(Instant.ofEpochSecond(createdSeconds, createdNanos));
+        }
+        if (lastModifiedSeconds != Long.MIN_VALUE) {
+            user.setLastModifiedDate(Instant.ofEpochSecond(lastModifiedSeconds, lastModifiedNanos));
+        }
+        return user;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not serialize " + value.getClass().getName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return input.readObject();
+        }
+    }
+
+    /**
+     * Growable output buffer, with the encodings of the tagged fields.
+     */
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeVarint(int field, long value) {
+            writeVarint((long) field << 3 | VARINT);
+            writeVarint(value);
+        }
+
+        void writeString(int field, String value) {
+            if (value == null) {
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint((long) field << 3 | LENGTH_DELIMITED);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeInstant(int secondsField, int nanosField, Instant value) {
+            if (value == null) {
+                return;
+            }
+            // zigzag encoding keeps the dates before the epoch short
+            writeVarint(secondsField, (value.getEpochSecond() << 1) ^ (value.getEpochSecond() >> 63));
+            if (value.getNano() != 0) {
+                writeVarint(nanosField, value.getNano());
+            }
+        }
+    }
+
+    /**
+     * Input buffer, with the decodings of the tagged fields.
+     */
+    private static final class Input {
+
+        private final byte[] data;
+
+        private int position;
+
+        Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        boolean hasMore() {
+            return position < data.length;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length) {
+                    throw new IllegalArgumentException("Truncated varint");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readString() {
+            long length = readVarint();
+            if (length < 0 || length > data.length - position) {
+                throw new IllegalArgumentException("Truncated field");
+            }
+            String value = new String(data, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.jawnz.app.config.cache;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Sampled estimate of the most read keys of a cache.
+ * <p>
+ * A fraction of the reads is counted with the space-saving algorithm: at most {@code capacity} keys are tracked,
+ * and a new key replaces the least counted one, inheriting its count. The counts are estimates of the sampled
+ * reads, which overestimate the keys which recently replaced others.
+ */
+public class HotKeySampler {
+
+    private final double sampleRate;
+
+    private final int capacity;
+
+    private final Map<String, Long> counts = new HashMap<>();
+
+    /**
+     * @param sampleRate the fraction of the reads which are counted, between 0 and 1.
+     * @param capacity the number of tracked keys.
+     */
+    public HotKeySampler(double sampleRate, int capacity) {
+        this.sampleRate = sampleRate;
+        this.capacity = capacity;
+    }
+
+    public void sample(Object key) {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        record(String.valueOf(key));
+    }
+
+    synchronized void record(String key) {
+        Long count = counts.get(key);
+        if (count != null) {
+            counts.put(key, count + 1);
+            return;
+        }
+        if (counts.size() < capacity) {
+            counts.put(key, 1L);
+            return;
+        }
+        Map.Entry<String, Long> least = counts.entrySet().stream().min(Map.Entry.comparingByValue()).get();
+        counts.remove(least.getKey());
+        counts.put(key, least.getValue() + 1);
+    }
+
+    /**
+     * @param limit the maximum number of keys.
+     * @return the most read keys with their sampled read counts, most read first.
+     */
+    public synchronized List<Map.Entry<String, Long>> top(int limit) {
+        return counts.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+            .limit(limit)
+            .<Map.Entry<String, Long>>map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()))
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,164 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cache.Cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache recording the reads, writes and evictions of a shared cache, and sampling its most read keys.
+ * <p>
+ * The sizes of the values are recorded by {@link CompactCacheTranscoder}, as they are only known once encoded.
+ */
+public class InstrumentedCache implements BatchCache {
+
+    private final Cache delegate;
+
+    private final HotKeySampler hotKeySampler;
+
+    private final Timer hits;
+
+    private final Timer misses;
+
+    private final Timer batchGets;
+
+    private final Timer puts;
+
+    private final Counter evictions;
+
+    public InstrumentedCache(Cache delegate, HotKeySampler hotKeySampler, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.hotKeySampler = hotKeySampler;
+        this.hits = Timer.builder("cache.memcached.gets")
+            .tags("cache", getName(), "result", "hit")
+            .description("Reads of a memcached cache")
+            .register(meterRegistry);
+        this.misses = Timer.builder("cache.memcached.gets")
+            .tags("cache", getName(), "result", "miss")
+            .description("Reads of a memcached cache")
+            .register(meterRegistry);
+        this.batchGets = Timer.builder("cache.memcached.batch.gets")
+            .tag("cache", getName())
+            .description("Reads of several entries of a memcached cache at once")
+            .register(meterRegistry);
+        this.puts = Timer.builder("cache.memcached.puts")
+            .tag("cache", getName())
+            .description("Writes of a memcached cache")
+            .register(meterRegistry);
+        this.evictions = Counter.builder("cache.memcached.evictions")
+            .tag("cache", getName())
+            .description("Entries evicted from a memcached cache by the application, see the memcached statistics for the evictions of the server")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        hotKeySampler.sample(key);
+        long start = System.nanoTime();
+        ValueWrapper value = delegate.get(key);
+        (value != null ? hits : misses).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return value;
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        hotKeySampler.sample(key);
+        long start = System.nanoTime();
+        T value = delegate.get(key, type);
+        // a cached null cannot be told apart from a miss here
+        (value != null ? hits : misses).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return value;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper value = get(key);
+        if (value != null) {
+            @SuppressWarnings("unchecked")
+            T cached = (T) value.get();
+            return cached;
+        }
+        T loaded;
+        try {
+            loaded = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, loaded);
+        return loaded;
+    }
+
+    @Override
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        keys.forEach(hotKeySampler::sample);
+        long start = System.nanoTime();
+        Map<Object, ValueWrapper> values = BatchCache.getAll(delegate, keys);
+        batchGets.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return values;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        long start = System.nanoTime();
+        delegate.put(key, value);
+        puts.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        long start = System.nanoTime();
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        puts.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        evictions.increment();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    public HotKeySampler getHotKeySampler() {
+        return hotKeySampler;
+    }
+
+    public Timer getHits() {
+        return hits;
+    }
+
+    public Timer getMisses() {
+        return misses;
+    }
+
+    public Timer getBatchGets() {
+        return batchGets;
+    }
+
+    public Timer getPuts() {
+        return puts;
+    }
+
+    public Counter getEvictions() {
+        return evictions;
+    }
+}
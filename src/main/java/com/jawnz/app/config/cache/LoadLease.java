@@ -0,0 +1,33 @@
+package com.jawnz.app.config.cache;
+
+import org.springframework.cache.Cache.ValueWrapper;
+
+import java.util.function.Supplier;
+
+/**
+ * Lease on the loading of a cache entry, shared by all the instances.
+ *
+ * @see CoalescingCache
+ */
+public interface LoadLease {
+
+    /**
+     * Takes the lease of a key.
+     *
+     * @return {@code true} if the lease was taken, {@code false} if another instance holds it.
+     */
+    boolean tryAcquire(String cacheName, Object key);
+
+    /**
+     * Releases a lease taken by {@link #tryAcquire(String, Object)}.
+     */
+    void release(String cacheName, Object key);
+
+    /**
+     * Waits for the value loaded by the instance holding the lease.
+     *
+     * @param lookup reads the value from the cache.
+     * @return the value, or {@code null} if it was not loaded in time.
+     */
+    ValueWrapper await(Supplier<ValueWrapper> lookup);
+}
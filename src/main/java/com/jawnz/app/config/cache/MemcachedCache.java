@@ -0,0 +1,56 @@
+package com.jawnz.app.config.cache;
+
+import com.google.code.ssm.api.format.SerializationType;
+import com.google.code.ssm.providers.CacheException;
+import com.google.code.ssm.spring.SSMCache;
+import com.google.code.ssm.util.PertinentNegativeNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Memcached cache reading several entries with a single multi-get.
+ */
+public class MemcachedCache extends SSMCache implements BatchCache {
+
+    private final Logger log = LoggerFactory.getLogger(MemcachedCache.class);
+
+    public MemcachedCache(com.google.code.ssm.Cache cache, int expiration) {
+        super(cache, expiration, false);
+    }
+
+    /**
+     * Reads the entries with a single request to each server. As for a single read, the entries are missed when
+     * memcached fails.
+     */
+    @Override
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        Map<String, Object> keysByName = new HashMap<>();
+        for (Object key : keys) {
+            keysByName.put(key.toString(), key);
+        }
+        Map<Object, ValueWrapper> values = new HashMap<>();
+        Map<String, Object> cached;
+        try {
+            cached = getCache().getBulk(keysByName.keySet(), (SerializationType) null);
+        } catch (TimeoutException | CacheException e) {
+            log.warn("Could not read {} entries of the cache {}: {}", keys.size(), getName(), e.getMessage());
+            return values;
+        }
+        if (cached == null) {
+            return values;
+        }
+        cached.forEach((name, value) -> {
+            Object key = keysByName.get(name);
+            if (key != null && value != null) {
+                values.put(key, new SimpleValueWrapper(value instanceof PertinentNegativeNull ? null : value));
+            }
+        });
+        return values;
+    }
+}
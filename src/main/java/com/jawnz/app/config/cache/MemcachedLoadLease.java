@@ -0,0 +1,78 @@
+package com.jawnz.app.config.cache;
+
+import com.google.code.ssm.Cache;
+import com.google.code.ssm.api.format.SerializationType;
+import com.google.code.ssm.providers.CacheException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache.ValueWrapper;
+
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * {@link LoadLease} stored in memcached: the lease is a key added with {@code add}, which only succeeds when the
+ * key does not exist, and expires after a few seconds if its holder never releases it.
+ * <p>
+ * When memcached cannot be reached, the lease is considered taken, so that the value is loaded without waiting.
+ */
+public class MemcachedLoadLease implements LoadLease {
+
+    private final Logger log = LoggerFactory.getLogger(MemcachedLoadLease.class);
+
+    private final Cache cache;
+
+    private final int leaseSeconds;
+
+    private final long waitMs;
+
+    private final long pollMs;
+
+    public MemcachedLoadLease(Cache cache, int leaseSeconds, long waitMs, long pollMs) {
+        this.cache = cache;
+        this.leaseSeconds = leaseSeconds;
+        this.waitMs = waitMs;
+        this.pollMs = pollMs;
+    }
+
+    @Override
+    public boolean tryAcquire(String cacheName, Object key) {
+        try {
+            return cache.add(leaseKey(cacheName, key), leaseSeconds, Boolean.TRUE, SerializationType.JAVA);
+        } catch (TimeoutException | CacheException e) {
+            log.debug("Could not take the load lease of {}: {}", key, e.getMessage());
+            return true;
+        }
+    }
+
+    @Override
+    public void release(String cacheName, Object key) {
+        try {
+            cache.delete(leaseKey(cacheName, key));
+        } catch (TimeoutException | CacheException e) {
+            log.debug("Could not release the load lease of {}, it will expire: {}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public ValueWrapper await(Supplier<ValueWrapper> lookup) {
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(pollMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            ValueWrapper value = lookup.get();
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String leaseKey(String cacheName, Object key) {
+        return "lease:" + cacheName + ":" + key;
+    }
+}
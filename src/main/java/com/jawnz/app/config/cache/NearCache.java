@@ -0,0 +1,121 @@
+package com.jawnz.app.config.cache;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * In-process cache bounded by the estimated size of its values, with a time to live.
+ * <p>
+ * Entries are kept in access order and the least recently used ones are evicted once the total weight exceeds
+ * the maximum. Values, including {@code null}, are stored as they are: callers must not modify them.
+ */
+public class NearCache {
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxWeight;
+
+    private final long ttlMs;
+
+    private final ToLongFunction<Object> weigher;
+
+    private final Clock clock;
+
+    private final LongAdder evictions = new LongAdder();
+
+    private long weight;
+
+    public NearCache(long maxWeight, long ttlMs, ToLongFunction<Object> weigher, Clock clock) {
+        this.maxWeight = maxWeight;
+        this.ttlMs = ttlMs;
+        this.weigher = weigher;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the cached value wrapped in an entry, or {@code null} if it is absent or expired.
+     */
+    public synchronized Entry get(Object key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= clock.millis()) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized void put(Object key, Object value) {
+        long entryWeight = weigher.applyAsLong(key) + weigher.applyAsLong(value);
+        remove(key);
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        entries.put(key, new Entry(value, entryWeight, clock.millis() + ttlMs));
+        weight += entryWeight;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    public synchronized void evict(Object key) {
+        remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * @return the number of entries evicted to stay under the maximum weight.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private void remove(Object key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    /**
+     * A cached value.
+     */
+    public static final class Entry {
+
+        private final Object value;
+
+        private final long weight;
+
+        private final long expiresAt;
+
+        private Entry(Object value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache reloading the entries read shortly before they expire, for the {@code sync} cacheable methods.
+ * <p>
+ * Memcached does not tell when an entry expires: the expiration of the entries written by this instance is
+ * tracked instead, for a bounded number of keys. When such an entry is read within the refresh window, its loader
+ * is run on the executor while the current value keeps being returned, and the reloaded value is written with a
+ * new expiration. At most one refresh runs per key, and a bounded number at a time; the refreshes over that limit
+ * are skipped, and the entry is loaded on a miss as usual. A value reloaded during an eviction is not written, as
+ * it may be stale.
+ */
+public class RefreshAheadCache implements BatchCache {
+
+    private final Logger log = LoggerFactory.getLogger(RefreshAheadCache.class);
+
+    private final Cache delegate;
+
+    private final long expirationMs;
+
+    private final long windowMs;
+
+    private final int maxTrackedKeys;
+
+    private final Executor executor;
+
+    private final Semaphore permits;
+
+    private final Clock clock;
+
+    private final Map<Object, Long> expirations = new ConcurrentHashMap<>();
+
+    private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter refreshed;
+
+    private final Counter failed;
+
+    private final Counter skipped;
+
+    /**
+     * @param delegate the cache.
+     * @param expirationMs the expiration of the entries of the cache.
+     * @param windowMs the time before the expiration during which a read refreshes the entry.
+     * @param maxConcurrentRefreshes the maximum number of refreshes running at a time.
+     * @param maxTrackedKeys the maximum number of keys whose expiration is tracked.
+     * @param executor the executor of the refreshes.
+     * @param clock the clock.
+     * @param meterRegistry the registry of the refresh metrics.
+     */
+    public RefreshAheadCache(Cache delegate, long expirationMs, long windowMs, int maxConcurrentRefreshes,
+                             int maxTrackedKeys, Executor executor, Clock clock, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.expirationMs = expirationMs;
+        this.windowMs = windowMs;
+        this.maxTrackedKeys = maxTrackedKeys;
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrentRefreshes);
+        this.clock = clock;
+        this.refreshed = counter(meterRegistry, "success");
+        this.failed = counter(meterRegistry, "failure");
+        this.skipped = counter(meterRegistry, "skipped");
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("cache.refreshes")
+            .tags("cache", getName(), "result", result)
+            .description("Entries reloaded before their expiration, or skipped as too many refreshes were running")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Long expiration = expirations.get(key);
+        T value = delegate.get(key, () -> {
+            T loaded = valueLoader.call();
+            written(key);
+            return loaded;
+        });
+        if (expiration != null) {
+            refreshIfExpiring(key, expiration, valueLoader);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        // without loaders, the entries read at once are not refreshed
+        return BatchCache.getAll(delegate, keys);
+    }
+
+    private void refreshIfExpiring(Object key, long expiration, Callable<?> valueLoader) {
+        long now = clock.millis();
+        if (now >= expiration) {
+            // the entry was loaded again, or is an entry written by another instance
+            expirations.remove(key, expiration);
+            return;
+        }
+        if (now < expiration - windowMs || !refreshing.add(key)) {
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            refreshing.remove(key);
+            skipped.increment();
+            return;
+        }
+        long currentGeneration = generation.get();
+        try {
+            executor.execute(() -> refresh(key, valueLoader, currentGeneration));
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            refreshing.remove(key);
+            skipped.increment();
+        }
+    }
+
+    private void refresh(Object key, Callable<?> valueLoader, long readGeneration) {
+        try {
+            Object value = valueLoader.call();
+            if (generation.get() == readGeneration) {
+                put(key, value);
+                refreshed.increment();
+            }
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("Could not refresh the entry {} of the cache {}: {}", key, getName(), e.getMessage());
+        } finally {
+            permits.release();
+            refreshing.remove(key);
+        }
+    }
+
+    private void written(Object key) {
+        long now = clock.millis();
+        if (expirations.size() >= maxTrackedKeys) {
+            expirations.values().removeIf(expiration -> expiration <= now);
+            if (expirations.size() >= maxTrackedKeys && !expirations.containsKey(key)) {
+                return;
+            }
+        }
+        expirations.put(key, now + expirationMs);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        written(key);
+    }
+
+    @Override
+    public long generation() {
+        return generation.get();
+    }
+
+    @Override
+    public void putIfNotEvicted(Object key, Object value, long readGeneration) {
+        if (generation.get() != readGeneration) {
+            return;
+        }
+        put(key, value);
+        if (generation.get() != readGeneration) {
+            delegate.evict(key);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        // the expiration is unknown if the entry was present
+        expirations.remove(key);
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        generation.incrementAndGet();
+        expirations.remove(key);
+        delegate.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        expirations.clear();
+        delegate.clear();
+    }
+}
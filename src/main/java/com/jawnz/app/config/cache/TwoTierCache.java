@@ -0,0 +1,267 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache reading through an in-process {@link NearCache} (L1) before the shared cache (L2).
+ * <p>
+ * Values read from the L2 are kept in the L1 for a short time. Writes go to both tiers, and evictions are also
+ * reported to the invalidation listener, which broadcasts them to the L1 of the other instances. A value read
+ * from the L2 during an eviction is not kept in the L1, as it may be stale.
+ * <p>
+ * Cached values are mutable entities: the L1 stores and returns copies of them, as the L2 does by deserializing.
+ */
+public class TwoTierCache implements BatchCache {
+
+    private final Cache l2;
+
+    private final NearCache l1;
+
+    private final UnaryOperator<Object> copier;
+
+    private final Consumer<Object> invalidationListener;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Timer l1Hits;
+
+    private final Timer l1Misses;
+
+    private final Timer l2Hits;
+
+    private final Timer l2Misses;
+
+    public TwoTierCache(Cache l2, NearCache l1, UnaryOperator<Object> copier, Consumer<Object> invalidationListener,
+                        MeterRegistry meterRegistry) {
+        this.l2 = l2;
+        this.l1 = l1;
+        this.copier = copier;
+        this.invalidationListener = invalidationListener;
+        this.l1Hits = timer(meterRegistry, "l1", "hit");
+        this.l1Misses = timer(meterRegistry, "l1", "miss");
+        this.l2Hits = timer(meterRegistry, "l2", "hit");
+        this.l2Misses = timer(meterRegistry, "l2", "miss");
+        Gauge.builder("cache.tier.hit.ratio", () -> ratio(l1Hits, l1Misses))
+            .tags("cache", getName(), "tier", "l1")
+            .description("Ratio of the reads answered by the tier, among the reads which reached it")
+            .register(meterRegistry);
+        Gauge.builder("cache.tier.hit.ratio", () -> ratio(l2Hits, l2Misses))
+            .tags("cache", getName(), "tier", "l2")
+            .description("Ratio of the reads answered by the tier, among the reads which reached it")
+            .register(meterRegistry);
+        Gauge.builder("cache.near.size", l1, NearCache::size)
+            .tag("cache", getName())
+            .register(meterRegistry);
+        Gauge.builder("cache.near.weight", l1, NearCache::weight)
+            .tag("cache", getName())
+            .description("Estimated size of the values of the in-process cache")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        FunctionCounter.builder("cache.near.evictions", l1, NearCache::evictions)
+            .tag("cache", getName())
+            .description("Entries evicted from the in-process cache to stay under its maximum size")
+            .register(meterRegistry);
+    }
+
+    private Timer timer(MeterRegistry meterRegistry, String tier, String result) {
+        return Timer.builder("cache.tier.gets")
+            .tags("cache", getName(), "tier", tier, "result", result)
+            .description("Reads of a cache tier")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return l2.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return l2.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper local = getLocal(key);
+        if (local != null) {
+            return local;
+        }
+        long currentGeneration = generation.get();
+        long start = System.nanoTime();
+        ValueWrapper wrapper = l2.get(key);
+        (wrapper != null ? l2Hits : l2Misses).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (wrapper != null) {
+            putLocal(key, wrapper.get(), currentGeneration);
+        }
+        return wrapper;
+    }
+
+    private ValueWrapper getLocal(Object key) {
+        long start = System.nanoTime();
+        NearCache.Entry entry = l1.get(key);
+        if (entry != null) {
+            l1Hits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new SimpleValueWrapper(copier.apply(entry.getValue()));
+        }
+        l1Misses.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return null;
+    }
+
+    private void putLocal(Object key, Object value, long readGeneration) {
+        if (generation.get() == readGeneration) {
+            l1.put(key, copier.apply(value));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    /**
+     * Reads through the L2 on a miss of the L1, so that the loading is coalesced there.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper local = getLocal(key);
+        if (local != null) {
+            return (T) local.get();
+        }
+        long currentGeneration = generation.get();
+        T value = l2.get(key, valueLoader);
+        putLocal(key, value, currentGeneration);
+        return value;
+    }
+
+    /**
+     * Reads the misses of the L1 at once from the L2.
+     */
+    @Override
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        Map<Object, ValueWrapper> values = new HashMap<>();
+        List<Object> misses = new ArrayList<>();
+        for (Object key : keys) {
+            ValueWrapper local = getLocal(key);
+            if (local != null) {
+                values.put(key, local);
+            } else {
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty()) {
+            return values;
+        }
+        long currentGeneration = generation.get();
+        long start = System.nanoTime();
+        Map<Object, ValueWrapper> shared = BatchCache.getAll(l2, misses);
+        long elapsed = (System.nanoTime() - start) / misses.size();
+        for (Object key : misses) {
+            ValueWrapper wrapper = shared.get(key);
+            (wrapper != null ? l2Hits : l2Misses).record(elapsed, TimeUnit.NANOSECONDS);
+            if (wrapper != null) {
+                putLocal(key, wrapper.get(), currentGeneration);
+                values.put(key, wrapper);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        l2.put(key, value);
+        l1.put(key, copier.apply(value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = l2.putIfAbsent(key, value);
+        l1.evict(key);
+        return existing;
+    }
+
+    @Override
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Writes both tiers if no entry was evicted since the generation was read. An eviction racing with the write
+     * of the L2 is detected afterwards, and the written entry evicted again.
+     */
+    @Override
+    public void putIfNotEvicted(Object key, Object value, long readGeneration) {
+        if (generation.get() != readGeneration) {
+            return;
+        }
+        l2.put(key, value);
+        if (generation.get() != readGeneration) {
+            l2.evict(key);
+            return;
+        }
+        putLocal(key, value, readGeneration);
+    }
+
+    /**
+     * Evicts the entry from both tiers. The L1 is evicted again after the L2, as a read of the L2 which started
+     * before its eviction may have put the stale value back in the L1 in between.
+     */
+    @Override
+    public void evict(Object key) {
+        evictLocal(key);
+        l2.evict(key);
+        evictLocal(key);
+        invalidationListener.accept(key);
+    }
+
+    @Override
+    public void clear() {
+        clearLocal();
+        l2.clear();
+        clearLocal();
+        invalidationListener.accept(null);
+    }
+
+    /**
+     * Evicts an entry from the L1 only, after it was evicted by another instance.
+     */
+    public void evictLocal(Object key) {
+        generation.incrementAndGet();
+        l1.evict(key);
+    }
+
+    /**
+     * Clears the L1 only, after the cache was cleared by another instance.
+     */
+    public void clearLocal() {
+        generation.incrementAndGet();
+        l1.clear();
+    }
+
+    private static double ratio(Timer hits, Timer misses) {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+}
@@ -0,0 +1,101 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache manager adding an in-process {@link NearCache} in front of each cache of another manager.
+ *
+ * @see TwoTierCache
+ */
+public class TwoTierCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+
+    private final long maxWeight;
+
+    private final long ttlMs;
+
+    private final ToLongFunction<Object> weigher;
+
+    private final UnaryOperator<Object> copier;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+
+    private volatile BiConsumer<String, Object> invalidationListener = (name, key) -> { };
+
+    /**
+     * @param delegate the manager of the shared caches.
+     * @param maxWeight the maximum estimated size of the values of each in-process cache.
+     * @param ttlMs the time to live of the entries of the in-process caches.
+     * @param weigher the estimator of the size of the keys and values.
+     * @param copier copies the mutable values.
+     * @param meterRegistry the registry of the cache metrics.
+     */
+    public TwoTierCacheManager(CacheManager delegate, long maxWeight, long ttlMs, ToLongFunction<Object> weigher,
+                               UnaryOperator<Object> copier, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxWeight = maxWeight;
+        this.ttlMs = ttlMs;
+        this.weigher = weigher;
+        this.copier = copier;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoTierCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache l2 = delegate.getCache(name);
+        if (l2 == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, key -> new TwoTierCache(l2,
+            new NearCache(maxWeight, ttlMs, weigher, Clock.systemUTC()), copier,
+            evictedKey -> invalidationListener.accept(name, evictedKey), meterRegistry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    /**
+     * Sets the listener of the evictions, called with the name of the cache and the evicted key, or {@code null}
+     * when the cache was cleared.
+     */
+    public void setInvalidationListener(BiConsumer<String, Object> invalidationListener) {
+        this.invalidationListener = invalidationListener;
+    }
+
+    /**
+     * Evicts an entry from the in-process cache only.
+     *
+     * @param name the name of the cache.
+     * @param key the key of the entry, or {@code null} to clear the cache.
+     */
+    public void evictLocal(String name, Object key) {
+        TwoTierCache cache = caches.get(name);
+        if (cache == null) {
+            return;
+        }
+        if (key == null) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(key);
+        }
+    }
+}
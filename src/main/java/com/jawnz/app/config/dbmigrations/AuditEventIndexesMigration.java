@@ -0,0 +1,51 @@
+package com.jawnz.app.config.dbmigrations;
+
+import com.github.cloudyrock.mongock.ChangeLog;
+import com.github.cloudyrock.mongock.ChangeSet;
+import com.github.cloudyrock.mongock.driver.mongodb.springdata.v2.decorator.impl.MongockTemplate;
+import com.jawnz.app.domain.PersistentAuditEvent;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Creates the indexes of the audit events, built in the background as the collection can be large.
+ */
+@ChangeLog(order = "003")
+public class AuditEventIndexesMigration {
+
+    /**
+     * Index of the events of a principal, optionally of a type after a date: the equalities come before the range.
+     */
+    @ChangeSet(order = "01", author = "jawnzapp", id = "01-addAuditEventPrincipalIndex")
+    public void addPrincipalIndex(MongockTemplate mongoTemplate) {
+        mongoTemplate.indexOps(PersistentAuditEvent.class).ensureIndex(new Index()
+            .on("principal", Sort.Direction.ASC)
+            .on("event_type", Sort.Direction.ASC)
+            .on("event_date", Sort.Direction.ASC)
+            .named("principal_event_type_event_date")
+            .background());
+    }
+
+    /**
+     * Index of the events by date, for the listing of the events and the removal of the old ones.
+     */
+    @ChangeSet(order = "02", author = "jawnzapp", id = "02-addAuditEventDateIndex")
+    public void addDateIndex(MongockTemplate mongoTemplate) {
+        mongoTemplate.indexOps(PersistentAuditEvent.class).ensureIndex(new Index()
+            .on("event_date", Sort.Direction.ASC)
+            .named("event_date")
+            .background());
+    }
+
+    /**
+     * Index of the events of a type by date, for the most active principals read by the cache warmup.
+     */
+    @ChangeSet(order = "03", author = "jawnzapp", id = "03-addAuditEventTypeDateIndex")
+    public void addTypeDateIndex(MongockTemplate mongoTemplate) {
+        mongoTemplate.indexOps(PersistentAuditEvent.class).ensureIndex(new Index()
+            .on("event_type", Sort.Direction.ASC)
+            .on("event_date", Sort.Direction.ASC)
+            .named("event_type_event_date")
+            .background());
+    }
+}
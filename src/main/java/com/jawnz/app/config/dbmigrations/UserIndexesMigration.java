@@ -0,0 +1,26 @@
+package com.jawnz.app.config.dbmigrations;
+
+import com.github.cloudyrock.mongock.ChangeLog;
+import com.github.cloudyrock.mongock.ChangeSet;
+import com.github.cloudyrock.mongock.driver.mongodb.springdata.v2.decorator.impl.MongockTemplate;
+import com.jawnz.app.domain.User;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Creates the indexes of the users which are not declared on {@link User}.
+ */
+@ChangeLog(order = "002")
+public class UserIndexesMigration {
+
+    /**
+     * Index of the keyset pagination of the users, sorted by login then id.
+     */
+    @ChangeSet(order = "01", author = "jawnzapp", id = "01-addUserLoginIdIndex")
+    public void addLoginIdIndex(MongockTemplate mongoTemplate) {
+        mongoTemplate.indexOps(User.class).ensureIndex(new Index()
+            .on("login", Sort.Direction.ASC)
+            .on("_id", Sort.Direction.ASC)
+            .named("login_id"));
+    }
+}
@@ -0,0 +1,29 @@
+package com.jawnz.app.config.mongo;
+
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactoryBean;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.core.support.RepositoryFactorySupport;
+
+import java.io.Serializable;
+
+/**
+ * Factory of the MongoDB repositories, tagging the commands they run with the repository method.
+ *
+ * @see RepositoryMethodInterceptor
+ */
+public class InstrumentedMongoRepositoryFactoryBean<T extends Repository<S, ID>, S, ID extends Serializable>
+    extends MongoRepositoryFactoryBean<T, S, ID> {
+
+    public InstrumentedMongoRepositoryFactoryBean(Class<? extends T> repositoryInterface) {
+        super(repositoryInterface);
+    }
+
+    @Override
+    protected RepositoryFactorySupport getFactoryInstance(MongoOperations operations) {
+        RepositoryFactorySupport factory = super.getFactoryInstance(operations);
+        factory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+            proxyFactory.addAdvice(new RepositoryMethodInterceptor(repositoryInformation.getRepositoryInterface())));
+        return factory;
+    }
+}
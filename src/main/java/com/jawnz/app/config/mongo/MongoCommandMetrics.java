@@ -0,0 +1,113 @@
+package com.jawnz.app.config.mongo;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener of the MongoDB commands, timing them by collection, command and repository method.
+ * <p>
+ * The commands are only available when they start: a sample of them is copied then, and logged to the
+ * {@link SlowCommandLog} if they turn out to be slow. Explanations are not sampled, as they are not what runs.
+ */
+public class MongoCommandMetrics implements CommandListener {
+
+    public static final String COMMANDS = "mongodb.commands";
+
+    static final String NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    private final SlowCommandLog slowCommandLog;
+
+    private final long slowThresholdNanos;
+
+    private final double sampleRate;
+
+    private final Map<Integer, StartedCommand> started = new ConcurrentHashMap<>();
+
+    /**
+     * @param meterRegistry the registry of the timers.
+     * @param slowCommandLog the log of the slow commands.
+     * @param slowThresholdMs the duration above which a command is slow.
+     * @param sampleRate the fraction of the commands which can be logged if slow, between 0 and 1.
+     */
+    public MongoCommandMetrics(MeterRegistry meterRegistry, SlowCommandLog slowCommandLog, long slowThresholdMs,
+                               double sampleRate) {
+        this.meterRegistry = meterRegistry;
+        this.slowCommandLog = slowCommandLog;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        BsonDocument command = null;
+        if (sampleRate > 0 && !"explain".equals(event.getCommandName())
+            && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            // the document of the event is only valid during the notification
+            command = event.getCommand().clone();
+        }
+        started.put(event.getRequestId(), new StartedCommand(event.getDatabaseName(),
+            collection(event.getCommandName(), event.getCommand()), RepositoryMethodInterceptor.current(), command));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        completed(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), "success");
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        completed(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), "failure");
+    }
+
+    private void completed(int requestId, String commandName, long elapsedNanos, String status) {
+        StartedCommand command = started.remove(requestId);
+        String collection = command != null && command.collection != null ? command.collection : NONE;
+        String repositoryMethod = command != null && command.repositoryMethod != null ? command.repositoryMethod : NONE;
+        Timer.builder(COMMANDS)
+            .tags("collection", collection, "command", commandName, "repository.method", repositoryMethod,
+                "status", status)
+            .description("MongoDB commands, by the repository method which ran them")
+            .register(meterRegistry)
+            .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (elapsedNanos >= slowThresholdNanos && command != null && command.command != null) {
+            slowCommandLog.add(command.database, command.collection, commandName, command.repositoryMethod,
+                command.command, elapsedNanos / 1e6);
+        }
+    }
+
+    private static String collection(String commandName, BsonDocument command) {
+        BsonValue value = command.get("getMore".equals(commandName) ? "collection" : commandName);
+        return value != null && value.isString() ? value.asString().getValue() : null;
+    }
+
+    private static final class StartedCommand {
+
+        private final String database;
+
+        private final String collection;
+
+        private final String repositoryMethod;
+
+        private final BsonDocument command;
+
+        StartedCommand(String database, String collection, String repositoryMethod, BsonDocument command) {
+            this.database = database;
+            this.collection = collection;
+            this.repositoryMethod = repositoryMethod;
+            this.command = command;
+        }
+    }
+}
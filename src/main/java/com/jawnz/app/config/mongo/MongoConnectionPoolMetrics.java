@@ -0,0 +1,70 @@
+package com.jawnz.app.config.mongo;
+
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListenerAdapter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener of the MongoDB connection pools, timing the wait for a connection.
+ * <p>
+ * The synchronous driver checks connections out on the thread running the command, so the start of the wait is
+ * kept in a thread local.
+ */
+public class MongoConnectionPoolMetrics extends ConnectionPoolListenerAdapter {
+
+    public static final String WAIT = "mongodb.connections.wait";
+
+    private final ThreadLocal<Long> checkOutStart = new ThreadLocal<>();
+
+    private final Timer checkedOut;
+
+    private final Timer failed;
+
+    public MongoConnectionPoolMetrics(MeterRegistry meterRegistry) {
+        this.checkedOut = timer(meterRegistry, "success");
+        this.failed = timer(meterRegistry, "failure");
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder(WAIT)
+            .tag("result", result)
+            .description("Wait for a connection from a MongoDB connection pool")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        checkOutStart.set(System.nanoTime());
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        record(checkedOut);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        record(failed);
+    }
+
+    private void record(Timer timer) {
+        Long start = checkOutStart.get();
+        if (start != null) {
+            checkOutStart.remove();
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public Timer getCheckedOut() {
+        return checkedOut;
+    }
+
+    public Timer getFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,42 @@
+package com.jawnz.app.config.mongo;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Interceptor of the repository methods, making the method being run known to the {@link MongoCommandMetrics}.
+ * <p>
+ * The MongoDB driver notifies the command listeners on the thread running the command, so the method is kept in a
+ * thread local. When a repository method calls another, the commands are attributed to the outermost one.
+ */
+public class RepositoryMethodInterceptor implements MethodInterceptor {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private final String repositoryName;
+
+    public RepositoryMethodInterceptor(Class<?> repositoryInterface) {
+        this.repositoryName = repositoryInterface.getSimpleName();
+    }
+
+    /**
+     * @return the repository method running on this thread, such as {@code UserRepository.findOneByLogin}, or
+     * {@code null} for the commands run with the templates.
+     */
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (CURRENT.get() != null) {
+            return invocation.proceed();
+        }
+        CURRENT.set(repositoryName + "." + invocation.getMethod().getName());
+        try {
+            return invocation.proceed();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+}
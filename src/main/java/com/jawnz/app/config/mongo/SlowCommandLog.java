@@ -0,0 +1,265 @@
+package com.jawnz.app.config.mongo;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Log of the most recent slow MongoDB commands.
+ * <p>
+ * The values of the commands are redacted, only their shape is kept. The commands which can be explained are
+ * explained in the background, and the winning plan is summarized, such as {@code FETCH > IXSCAN login_1}: this is
+ * the plan at the time of the explanation, which can differ from the one of the slow execution.
+ */
+public class SlowCommandLog {
+
+    private static final Set<String> EXPLAINABLE_COMMANDS = new HashSet<>(Arrays.asList(
+        "find", "aggregate", "count", "distinct", "findAndModify", "update", "delete"));
+
+    private static final Set<String> UNEXPLAINED_FIELDS = new HashSet<>(Arrays.asList(
+        "lsid", "txnNumber", "autocommit", "startTransaction", "writeConcern"));
+
+    private static final int MAX_REDACTED_ELEMENTS = 10;
+
+    private static final BsonString REDACTED = new BsonString("?");
+
+    private final Logger log = LoggerFactory.getLogger(SlowCommandLog.class);
+
+    private final int capacity;
+
+    private final boolean explain;
+
+    private final Executor executor;
+
+    private final ObjectProvider<MongoTemplate> mongoTemplate;
+
+    private final Deque<SlowCommand> commands = new ArrayDeque<>();
+
+    /**
+     * @param capacity the number of commands kept.
+     * @param explain whether to explain the commands.
+     * @param executor the executor of the explanations.
+     * @param mongoTemplate the template running the explanations, resolved lazily as it depends on the client
+     *                      reporting the commands.
+     */
+    public SlowCommandLog(int capacity, boolean explain, Executor executor, ObjectProvider<MongoTemplate> mongoTemplate) {
+        this.capacity = capacity;
+        this.explain = explain;
+        this.executor = executor;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Logs a slow command.
+     *
+     * @param database the database of the command.
+     * @param collection the collection of the command, or {@code null}.
+     * @param commandName the name of the command.
+     * @param repositoryMethod the repository method which ran the command, or {@code null}.
+     * @param command the command, which is not modified.
+     * @param durationMs the duration of the command.
+     */
+    public void add(String database, String collection, String commandName, String repositoryMethod,
+                    BsonDocument command, double durationMs) {
+        SlowCommand slowCommand = new SlowCommand(Instant.now(), database, collection, commandName, repositoryMethod,
+            durationMs, redact(command, commandName).toJson());
+        log.warn("Slow MongoDB command {} on {} from {} took {} ms: {}", commandName, collection,
+            repositoryMethod, Math.round(durationMs), slowCommand.getCommand());
+        synchronized (commands) {
+            if (commands.size() >= capacity) {
+                commands.removeLast();
+            }
+            commands.addFirst(slowCommand);
+        }
+        if (explain && EXPLAINABLE_COMMANDS.contains(commandName)) {
+            try {
+                executor.execute(() -> explain(slowCommand, database, command));
+            } catch (RejectedExecutionException e) {
+                log.debug("Not explaining the slow command {}: {}", commandName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the slow commands, most recent first.
+     */
+    public List<SlowCommand> getCommands() {
+        synchronized (commands) {
+            return new ArrayList<>(commands);
+        }
+    }
+
+    private void explain(SlowCommand slowCommand, String database, BsonDocument command) {
+        BsonDocument explained = new BsonDocument();
+        for (Map.Entry<String, BsonValue> field : command.entrySet()) {
+            if (!field.getKey().startsWith("$") && !UNEXPLAINED_FIELDS.contains(field.getKey())) {
+                explained.append(field.getKey(), field.getValue());
+            }
+        }
+        try {
+            Document result = mongoTemplate.getObject().getMongoDbFactory().getDb(database)
+                .runCommand(new BsonDocument("explain", explained).append("verbosity", new BsonString("queryPlanner")));
+            slowCommand.plan = summarize(winningPlan(result));
+        } catch (RuntimeException e) {
+            log.debug("Could not explain the slow command {}: {}", slowCommand.getCommandName(), e.getMessage());
+            slowCommand.plan = "unavailable";
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Document winningPlan(Document explanation) {
+        Document queryPlanner = explanation.get("queryPlanner", Document.class);
+        if (queryPlanner == null && explanation.get("stages") instanceof List) {
+            // aggregations report the plan of their first stage
+            List<Object> stages = (List<Object>) explanation.get("stages");
+            if (!stages.isEmpty() && stages.get(0) instanceof Document) {
+                Document cursor = ((Document) stages.get(0)).get("$cursor", Document.class);
+                queryPlanner = cursor != null ? cursor.get("queryPlanner", Document.class) : null;
+            }
+        }
+        return queryPlanner != null ? queryPlanner.get("winningPlan", Document.class) : null;
+    }
+
+    static String summarize(Document plan) {
+        if (plan == null) {
+            return "unavailable";
+        }
+        StringBuilder summary = new StringBuilder(plan.getString("stage"));
+        if (plan.get("indexName") != null) {
+            summary.append(' ').append(plan.get("indexName"));
+        }
+        if (plan.get("inputStage") instanceof Document) {
+            summary.append(" > ").append(summarize((Document) plan.get("inputStage")));
+        }
+        if (plan.get("inputStages") instanceof List) {
+            // the branches of an $or, or of an index intersection
+            summary.append(" > [").append(((List<?>) plan.get("inputStages")).stream()
+                .filter(Document.class::isInstance)
+                .map(stage -> summarize((Document) stage))
+                .collect(Collectors.joining(", "))).append(']');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Copies a command without its metadata, replacing its values with {@code ?}, but the name of its collection.
+     */
+    static BsonDocument redact(BsonDocument command, String commandName) {
+        BsonDocument redacted = new BsonDocument();
+        for (Map.Entry<String, BsonValue> field : command.entrySet()) {
+            if (field.getKey().startsWith("$") || UNEXPLAINED_FIELDS.contains(field.getKey())) {
+                continue;
+            }
+            boolean collection = field.getKey().equals(commandName) && field.getValue().isString();
+            redacted.append(field.getKey(), collection ? field.getValue() : redact(field.getValue()));
+        }
+        return redacted;
+    }
+
+    private static BsonValue redact(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument redacted = new BsonDocument();
+            value.asDocument().forEach((key, element) -> redacted.append(key, redact(element)));
+            return redacted;
+        }
+        if (value.isArray()) {
+            BsonArray redacted = new BsonArray();
+            for (BsonValue element : value.asArray()) {
+                if (redacted.size() == MAX_REDACTED_ELEMENTS) {
+                    redacted.add(new BsonString("..."));
+                    break;
+                }
+                redacted.add(redact(element));
+            }
+            return redacted;
+        }
+        return REDACTED;
+    }
+
+    public static class SlowCommand {
+
+        private final Instant time;
+
+        private final String database;
+
+        private final String collection;
+
+        private final String commandName;
+
+        private final String repositoryMethod;
+
+        private final double durationMs;
+
+        private final String command;
+
+        private volatile String plan;
+
+        SlowCommand(Instant time, String database, String collection, String commandName, String repositoryMethod,
+                    double durationMs, String command) {
+            this.time = time;
+            this.database = database;
+            this.collection = collection;
+            this.commandName = commandName;
+            this.repositoryMethod = repositoryMethod;
+            this.durationMs = durationMs;
+            this.command = command;
+        }
+
+        public Instant getTime() {
+            return time;
+        }
+
+        public String getDatabase() {
+            return database;
+        }
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public String getCommandName() {
+            return commandName;
+        }
+
+        public String getRepositoryMethod() {
+            return repositoryMethod;
+        }
+
+        public double getDurationMs() {
+            return durationMs;
+        }
+
+        /**
+         * @return the command, with its values redacted.
+         */
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * @return the summary of the winning plan, {@code null} until explained.
+         */
+        public String getPlan() {
+            return plan;
+        }
+    }
+}
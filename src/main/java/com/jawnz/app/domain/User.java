@@ -8,6 +8,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
 
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotNull;
@@ -23,6 +24,7 @@ import java.util.Set;
  */
 @org.springframework.data.mongodb.core.mapping.Document(collection = "jwn_user")
 @org.springframework.data.elasticsearch.annotations.Document(indexName = "user")
+@org.springframework.data.elasticsearch.annotations.Setting(settingPath = "config/elasticsearch/user-settings.json")
 public class User extends AbstractAuditingEntity implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -35,19 +37,43 @@ public class User extends AbstractAuditingEntity implements Serializable {
     @Pattern(regexp = Constants.LOGIN_REGEX)
     @Size(min = 1, max = 50)
     @Indexed
+    @org.springframework.data.elasticsearch.annotations.MultiField(
+        mainField = @org.springframework.data.elasticsearch.annotations.Field(type = FieldType.Text),
+        otherFields = {
+            @InnerField(suffix = "keyword", type = FieldType.Keyword),
+            @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete", searchAnalyzer = "autocomplete_search")
+        })
     private String login;
 
     @Size(max = 50)
     @Field("first_name")
+    @org.springframework.data.elasticsearch.annotations.MultiField(
+        mainField = @org.springframework.data.elasticsearch.annotations.Field(type = FieldType.Text),
+        otherFields = {
+            @InnerField(suffix = "keyword", type = FieldType.Keyword),
+            @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete", searchAnalyzer = "autocomplete_search")
+        })
     private String firstName;
 
     @Size(max = 50)
     @Field("last_name")
+    @org.springframework.data.elasticsearch.annotations.MultiField(
+        mainField = @org.springframework.data.elasticsearch.annotations.Field(type = FieldType.Text),
+        otherFields = {
+            @InnerField(suffix = "keyword", type = FieldType.Keyword),
+            @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete", searchAnalyzer = "autocomplete_search")
+        })
     private String lastName;
 
     @Email
     @Size(min = 5, max = 254)
     @Indexed
+    @org.springframework.data.elasticsearch.annotations.MultiField(
+        mainField = @org.springframework.data.elasticsearch.annotations.Field(type = FieldType.Text),
+        otherFields = {
+            @InnerField(suffix = "keyword", type = FieldType.Keyword),
+            @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete", searchAnalyzer = "autocomplete_search")
+        })
     private String email;
 
     private boolean activated = false;
@@ -63,6 +89,11 @@ public class User extends AbstractAuditingEntity implements Serializable {
     @JsonIgnore
     private Set<Authority> authorities = new HashSet<>();
 
+    /**
+     * Incremented by the partial updates, which are guarded by it.
+     */
+    @JsonIgnore
+    private Long version;
 
     public String getId() {
         return id;
@@ -129,6 +160,14 @@ public class User extends AbstractAuditingEntity implements Serializable {
         this.langKey = langKey;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public Set<Authority> getAuthorities() {
         return authorities;
     }
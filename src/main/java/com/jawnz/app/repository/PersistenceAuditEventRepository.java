@@ -18,6 +18,4 @@ public interface PersistenceAuditEventRepository extends MongoRepository<Persist
     List<PersistentAuditEvent> findByPrincipalAndAuditEventDateAfterAndAuditEventType(String principal, Instant after, String type);
 
     Page<PersistentAuditEvent> findAllByAuditEventDateBetween(Instant fromDate, Instant toDate, Pageable pageable);
-
-    List<PersistentAuditEvent> findByAuditEventDateBefore(Instant before);
 }
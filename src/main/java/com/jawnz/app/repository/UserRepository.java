@@ -8,6 +8,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,8 +22,10 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     String USERS_BY_EMAIL_CACHE = "usersByEmail";
 
-    @Cacheable(cacheNames = USERS_BY_LOGIN_CACHE)
+    @Cacheable(cacheNames = USERS_BY_LOGIN_CACHE, sync = true)
     Optional<User> findOneByLogin(String login);
 
+    List<User> findAllByLoginIn(Collection<String> logins);
+
     Page<User> findAllByLoginNot(Pageable pageable, String login);
 }
@@ -0,0 +1,17 @@
+package com.jawnz.app.repository.search;
+
+/**
+ * Thrown when a search query, or its sort, cannot be run by a {@link UserSearchRepository}.
+ */
+public class InvalidSearchQueryException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidSearchQueryException(String message) {
+        super(message);
+    }
+
+    public InvalidSearchQueryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
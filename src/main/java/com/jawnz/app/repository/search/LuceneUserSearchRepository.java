@@ -0,0 +1,588 @@
+package com.jawnz.app.repository.search;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.Constants;
+import com.jawnz.app.domain.User;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.mlt.MoreLikeThis;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.query.SearchQuery;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Embedded Lucene implementation of {@link UserSearchRepository}, for single-node deployments which do not run
+ * an Elasticsearch cluster.
+ * <p>
+ * The index is stored in a local directory, read through memory-mapped segments. Readers are refreshed in near
+ * real time from the index writer: writes are searchable after at most {@code max-stale-ms}, and a save waits
+ * for them like the Elasticsearch repository does. Commits only make the index durable, they happen
+ * periodically and on shutdown, and the index is rebuilt from MongoDB when it starts empty.
+ * <p>
+ * Only the queries built by the application are supported: query strings, with the syntax of the Elasticsearch
+ * {@code query_string} query and the user fields as default fields, and match all queries. Other queries and
+ * sorts are rejected with an {@link InvalidSearchQueryException}. Similar users are searched with the
+ * {@link MoreLikeThis} of Lucene, on the text fields.
+ */
+@Repository
+@Profile(Constants.SPRING_PROFILE_LUCENE)
+public class LuceneUserSearchRepository implements UserSearchRepository {
+
+    static final String[] DEFAULT_FIELDS = {
+        "id", "login", "firstName", "lastName", "email", "imageUrl", "activated", "langKey"
+    };
+
+    private static final String[] MULTI_FIELDS = { "login", "firstName", "lastName", "email" };
+
+    private static final String ID = "id";
+
+    private static final String SOURCE = "_source";
+
+    private static final Sort RELEVANCE = new Sort(SortField.FIELD_SCORE, new SortField(ID, SortField.Type.STRING));
+
+    private final Logger log = LoggerFactory.getLogger(LuceneUserSearchRepository.class);
+
+    private final ApplicationProperties.UserLucene properties;
+
+    private final EntityMapper entityMapper;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Analyzer analyzer = analyzer();
+
+    private Directory directory;
+
+    private IndexWriter writer;
+
+    private SearcherManager searcherManager;
+
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    public LuceneUserSearchRepository(ApplicationProperties applicationProperties, EntityMapper entityMapper,
+                                      MongoTemplate mongoTemplate) {
+        this.properties = applicationProperties.getUserLucene();
+        this.entityMapper = entityMapper;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Path path = Paths.get(properties.getDirectory());
+        Files.createDirectories(path);
+        log.info("Opening the user index in {}", path.toAbsolutePath());
+        directory = new MMapDirectory(path);
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+            .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        searcherManager = new SearcherManager(writer, null);
+        reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager,
+            properties.getMaxStaleMs() / 1000.0, properties.getMinStaleMs() / 1000.0);
+        reopenThread.setName("lucene-user-index-refresh");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        log.info("Closing the user index");
+        reopenThread.close();
+        searcherManager.close();
+        // commits the pending changes
+        writer.close();
+        directory.close();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (count() == 0) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the users stored in MongoDB.
+     */
+    public void rebuild() {
+        log.info("Rebuilding the user index from the database");
+        long indexed = 0;
+        try (CloseableIterator<User> iterator = mongoTemplate.stream(new org.springframework.data.mongodb.core.query.Query(), User.class)) {
+            writer.deleteAll();
+            while (iterator.hasNext()) {
+                write(iterator.next());
+                indexed++;
+            }
+            writer.commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+        refresh();
+        log.info("Rebuilt the user index with {} users", indexed);
+    }
+
+    @Scheduled(initialDelayString = "${application.user-lucene.commit-interval-ms:60000}",
+        fixedDelayString = "${application.user-lucene.commit-interval-ms:60000}")
+    public void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException e) {
+            log.warn("Could not commit the user index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Searches a page of users, sorted by score then by id, after the sort values of the last user of the
+     * previous page.
+     *
+     * @param query the query.
+     * @param size the size of the page.
+     * @param after the score and the id of the last user of the previous page, or {@code null} for the first page.
+     * @return the page of users.
+     */
+    public Hits searchAfter(QueryBuilder query, int size, Object[] after) {
+        FieldDoc afterDoc = after == null ? null
+            : new FieldDoc(Integer.MAX_VALUE, Float.NaN, new Object[] { after[0], new BytesRef((String) after[1]) });
+        return withSearcher(searcher -> {
+            TopFieldDocs topDocs = searcher.searchAfter(afterDoc, toQuery(query), size, RELEVANCE, false, false);
+            List<User> users = new ArrayList<>(topDocs.scoreDocs.length);
+            List<String> lastSortValues = null;
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                FieldDoc fieldDoc = (FieldDoc) scoreDoc;
+                users.add(read(searcher, scoreDoc.doc));
+                lastSortValues = Arrays.asList(fieldDoc.fields[0].toString(), ((BytesRef) fieldDoc.fields[1]).utf8ToString());
+            }
+            return new Hits(users, lastSortValues, topDocs.totalHits);
+        });
+    }
+
+    @Override
+    public <S extends User> S index(S entity) {
+        waitFor(write(entity));
+        return entity;
+    }
+
+    public <S extends User> S indexWithoutRefresh(S entity) {
+        write(entity);
+        return entity;
+    }
+
+    @Override
+    public Iterable<User> search(QueryBuilder query) {
+        return search(toQuery(query), RELEVANCE, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Page<User> search(QueryBuilder query, Pageable pageable) {
+        return search(toQuery(query), pageable);
+    }
+
+    @Override
+    public Page<User> search(SearchQuery searchQuery) {
+        Query query = toQuery(searchQuery.getQuery());
+        if (searchQuery.getFilter() != null) {
+            query = new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.MUST)
+                .add(toQuery(searchQuery.getFilter()), BooleanClause.Occur.FILTER)
+                .build();
+        }
+        return search(query, searchQuery.getPageable());
+    }
+
+    /**
+     * Searches the users similar to a user, with the terms of its text fields which are the most significant in
+     * the index. The user itself is excluded.
+     *
+     * @param entity the user.
+     * @param fields the text fields to compare, or none for all of them.
+     * @param pageable the page.
+     * @return the page of similar users.
+     * @throws InvalidSearchQueryException if a field is not a text field.
+     */
+    @Override
+    public Page<User> searchSimilar(User entity, String[] fields, Pageable pageable) {
+        Map<String, String> values = textFields(entity);
+        List<String> compared = fields == null || fields.length == 0
+            ? new ArrayList<>(values.keySet()) : Arrays.asList(fields);
+        for (String field : compared) {
+            if (!values.containsKey(field)) {
+                throw new InvalidSearchQueryException("The embedded user index cannot compare users by " + field);
+            }
+        }
+        Query query = withSearcher(searcher -> {
+            MoreLikeThis moreLikeThis = new MoreLikeThis(searcher.getIndexReader());
+            moreLikeThis.setAnalyzer(analyzer);
+            moreLikeThis.setFieldNames(compared.toArray(new String[0]));
+            // user fields are short, their terms are seldom repeated
+            moreLikeThis.setMinTermFreq(1);
+            moreLikeThis.setMinDocFreq(1);
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            for (String field : compared) {
+                if (values.get(field) != null) {
+                    builder.add(moreLikeThis.like(field, new StringReader(values.get(field))), BooleanClause.Occur.SHOULD);
+                }
+            }
+            if (entity.getId() != null) {
+                builder.add(new TermQuery(new Term(ID, entity.getId())), BooleanClause.Occur.MUST_NOT);
+            }
+            return builder.build();
+        });
+        return search(query, pageable);
+    }
+
+    @Override
+    public void refresh() {
+        try {
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    @Override
+    public Class<User> getEntityClass() {
+        return User.class;
+    }
+
+    @Override
+    public Iterable<User> findAll(org.springframework.data.domain.Sort sort) {
+        return search(new MatchAllDocsQuery(), toSort(sort), 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Page<User> findAll(Pageable pageable) {
+        return search(new MatchAllDocsQuery(), pageable);
+    }
+
+    @Override
+    public <S extends User> S save(S entity) {
+        return index(entity);
+    }
+
+    @Override
+    public <S extends User> Iterable<S> saveAll(Iterable<S> entities) {
+        long generation = -1;
+        for (S entity : entities) {
+            generation = write(entity);
+        }
+        if (generation >= 0) {
+            waitFor(generation);
+        }
+        return entities;
+    }
+
+    @Override
+    public Optional<User> findById(String id) {
+        List<User> users = search(new TermQuery(new Term(ID, id)), RELEVANCE, 0, 1);
+        return users.stream().findFirst();
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return withSearcher(searcher -> searcher.count(new TermQuery(new Term(ID, id))) > 0);
+    }
+
+    @Override
+    public Iterable<User> findAll() {
+        return search(new MatchAllDocsQuery(), RELEVANCE, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Iterable<User> findAllById(Iterable<String> ids) {
+        List<BytesRef> terms = new ArrayList<>();
+        ids.forEach(id -> terms.add(new BytesRef(id)));
+        return search(new TermInSetQuery(ID, terms), RELEVANCE, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long count() {
+        return withSearcher(searcher -> (long) searcher.getIndexReader().numDocs());
+    }
+
+    @Override
+    public void deleteById(String id) {
+        try {
+            waitFor(writer.deleteDocuments(new Term(ID, id)));
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    @Override
+    public void delete(User entity) {
+        deleteById(entity.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends User> entities) {
+        List<Term> terms = new ArrayList<>();
+        entities.forEach(entity -> terms.add(new Term(ID, entity.getId())));
+        try {
+            waitFor(writer.deleteDocuments(terms.toArray(new Term[0])));
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        try {
+            waitFor(writer.deleteAll());
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    private long write(User user) {
+        Document document = new Document();
+        document.add(new StringField(ID, user.getId(), Field.Store.NO));
+        document.add(new SortedDocValuesField(ID, new BytesRef(user.getId())));
+        textFields(user).forEach((field, value) -> addText(document, field, value));
+        document.add(new StringField("activated", String.valueOf(user.getActivated()), Field.Store.NO));
+        try {
+            document.add(new StoredField(SOURCE, entityMapper.mapToString(user)));
+            return writer.updateDocument(new Term(ID, user.getId()), document);
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Returns the values of the text fields of a user, which may be {@code null}, by field.
+     */
+    private static Map<String, String> textFields(User user) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("login", user.getLogin());
+        fields.put("firstName", user.getFirstName());
+        fields.put("lastName", user.getLastName());
+        fields.put("email", user.getEmail());
+        fields.put("imageUrl", user.getImageUrl());
+        fields.put("langKey", user.getLangKey());
+        return fields;
+    }
+
+    private static void addText(Document document, String field, String value) {
+        if (value == null) {
+            return;
+        }
+        document.add(new TextField(field, value, Field.Store.NO));
+        for (String multiField : MULTI_FIELDS) {
+            if (multiField.equals(field)) {
+                document.add(new StringField(field + ".keyword", value, Field.Store.NO));
+            }
+        }
+    }
+
+    private User read(IndexSearcher searcher, int doc) throws IOException {
+        return entityMapper.mapToObject(searcher.doc(doc).get(SOURCE), User.class);
+    }
+
+    private Page<User> search(Query query, Pageable pageable) {
+        Sort sort = toSort(pageable.getSort());
+        if (pageable.isUnpaged()) {
+            List<User> users = search(query, sort, 0, Integer.MAX_VALUE);
+            return new PageImpl<>(users, pageable, users.size());
+        }
+        long total = withSearcher(searcher -> (long) searcher.count(query));
+        List<User> users = search(query, sort, (int) pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(users, pageable, total);
+    }
+
+    private List<User> search(Query query, Sort sort, int offset, int size) {
+        return withSearcher(searcher -> {
+            int maxDoc = searcher.getIndexReader().maxDoc();
+            if (maxDoc == 0 || offset >= maxDoc) {
+                return Collections.<User>emptyList();
+            }
+            int end = (int) Math.min((long) offset + size, maxDoc);
+            ScoreDoc[] scoreDocs = searcher.search(query, end, sort, false, false).scoreDocs;
+            List<User> users = new ArrayList<>(Math.max(0, scoreDocs.length - offset));
+            for (int i = offset; i < scoreDocs.length; i++) {
+                users.add(read(searcher, scoreDocs[i].doc));
+            }
+            return users;
+        });
+    }
+
+    private <T> T withSearcher(SearcherFunction<T> function) {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                return function.apply(searcher);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    private void waitFor(long generation) {
+        try {
+            reopenThread.waitForGeneration(generation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Converts the queries built by the application to Lucene queries.
+     *
+     * @throws InvalidSearchQueryException if a query string is malformed, or for the other kinds of queries.
+     */
+    Query toQuery(QueryBuilder query) {
+        if (query == null || query instanceof MatchAllQueryBuilder) {
+            return new MatchAllDocsQuery();
+        }
+        if (query instanceof QueryStringQueryBuilder) {
+            QueryStringQueryBuilder queryString = (QueryStringQueryBuilder) query;
+            QueryParser parser = new MultiFieldQueryParser(DEFAULT_FIELDS, analyzer);
+            parser.setAllowLeadingWildcard(!Boolean.FALSE.equals(queryString.allowLeadingWildcard()));
+            parser.setDefaultOperator(queryString.defaultOperator() == Operator.AND ? QueryParser.AND_OPERATOR : QueryParser.OR_OPERATOR);
+            parser.setMaxDeterminizedStates(queryString.maxDeterminizedStates());
+            parser.setFuzzyPrefixLength(queryString.fuzzyPrefixLength());
+            parser.setPhraseSlop(queryString.phraseSlop());
+            try {
+                return parser.parse(queryString.queryString());
+            } catch (ParseException e) {
+                throw new InvalidSearchQueryException("Invalid query: " + queryString.queryString(), e);
+            }
+        }
+        throw new InvalidSearchQueryException("The embedded user index does not support " + query.getName() + " queries");
+    }
+
+    private static Sort toSort(org.springframework.data.domain.Sort sort) {
+        if (sort.isUnsorted()) {
+            return RELEVANCE;
+        }
+        List<SortField> fields = new ArrayList<>();
+        for (org.springframework.data.domain.Sort.Order order : sort) {
+            if (!ID.equals(order.getProperty())) {
+                throw new InvalidSearchQueryException("The embedded user index can only be sorted by id");
+            }
+            fields.add(new SortField(ID, SortField.Type.STRING, order.isDescending()));
+        }
+        return new Sort(fields.toArray(new SortField[0]));
+    }
+
+    /**
+     * The analyzers of the Elasticsearch index: the standard analyzer without stop words, and the keyword
+     * analyzer for the exact fields.
+     */
+    private static Analyzer analyzer() {
+        Map<String, Analyzer> analyzers = new HashMap<>();
+        analyzers.put(ID, new KeywordAnalyzer());
+        analyzers.put("activated", new KeywordAnalyzer());
+        for (String field : MULTI_FIELDS) {
+            analyzers.put(field + ".keyword", new KeywordAnalyzer());
+        }
+        return new PerFieldAnalyzerWrapper(new StandardAnalyzer(CharArraySet.EMPTY_SET), analyzers);
+    }
+
+    private static DataAccessResourceFailureException failure(IOException e) {
+        return new DataAccessResourceFailureException("Could not access the user index: " + e.getMessage(), e);
+    }
+
+    @FunctionalInterface
+    private interface SearcherFunction<T> {
+
+        T apply(IndexSearcher searcher) throws IOException;
+    }
+
+    /**
+     * A page of users, with the sort values of the last one.
+     */
+    public static class Hits {
+
+        private final List<User> content;
+
+        private final List<String> lastSortValues;
+
+        private final long total;
+
+        Hits(List<User> content, List<String> lastSortValues, long total) {
+            this.content = content;
+            this.lastSortValues = lastSortValues;
+            this.total = total;
+        }
+
+        public List<User> getContent() {
+            return content;
+        }
+
+        /**
+         * @return the score and the id of the last user, or {@code null} if the page is empty.
+         */
+        public List<String> getLastSortValues() {
+            return lastSortValues;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.jawnz.app.service;
 
-import io.github.jhipster.config.JHipsterProperties;
 import com.jawnz.app.config.audit.AuditEventConverter;
 import com.jawnz.app.repository.PersistenceAuditEventRepository;
 import org.slf4j.Logger;
@@ -8,51 +7,32 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.Optional;
 
 /**
  * Service for managing audit events.
  * <p>
- * This is the default implementation to support SpringBoot Actuator {@code AuditEventRepository}.
+ * This is the default implementation to support SpringBoot Actuator {@code AuditEventRepository}. The expired
+ * events are removed by {@link AuditRetentionService}.
  */
 @Service
 public class AuditEventService {
 
     private final Logger log = LoggerFactory.getLogger(AuditEventService.class);
 
-    private final JHipsterProperties jHipsterProperties;
-
     private final PersistenceAuditEventRepository persistenceAuditEventRepository;
 
     private final AuditEventConverter auditEventConverter;
 
     public AuditEventService(
         PersistenceAuditEventRepository persistenceAuditEventRepository,
-        AuditEventConverter auditEventConverter, JHipsterProperties jhipsterProperties) {
+        AuditEventConverter auditEventConverter) {
 
         this.persistenceAuditEventRepository = persistenceAuditEventRepository;
         this.auditEventConverter = auditEventConverter;
-        this.jHipsterProperties = jhipsterProperties;
-    }
-
-    /**
-     * Old audit events should be automatically deleted after 30 days.
-     *
-     * This is scheduled to get fired at 12:00 (am).
-     */
-    @Scheduled(cron = "0 0 12 * * ?")
-    public void removeOldAuditEvents() {
-        persistenceAuditEventRepository
-            .findByAuditEventDateBefore(Instant.now().minus(jHipsterProperties.getAuditEvents().getRetentionPeriod(), ChronoUnit.DAYS))
-            .forEach(auditEvent -> {
-                log.debug("Deleting audit data {}", auditEvent);
-                persistenceAuditEventRepository.delete(auditEvent);
-            });
     }
 
     public Page<AuditEvent> findAll(Pageable pageable) {
@@ -0,0 +1,267 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.domain.PersistentAuditEvent;
+
+import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Removes the audit events older than the retention period of {@code jhipster.audit-events}.
+ * <p>
+ * In the {@code chunked} mode, the expired events are deleted on schedule, oldest first, with one
+ * {@code deleteMany} per range of dates. The ranges are sized from the density of the previous one to delete about
+ * {@code chunk-size} events at a time, and the deletions are paced to a maximum rate. In the {@code ttl} mode, the
+ * date index of the events is replaced with a TTL index, and MongoDB removes the expired events itself.
+ * <p>
+ * The indexes are converged to the mode at startup. All the instances must use the same mode, and only one of them
+ * runs the job at a time.
+ */
+@Service
+public class AuditRetentionService {
+
+    static final String JOB_NAME = "audit-retention";
+
+    static final String DATE_INDEX = "event_date";
+
+    static final String TTL_INDEX = "event_date_ttl";
+
+    private static final String EVENT_DATE = "event_date";
+
+    private static final String AUDIT_EVENT_DATE = "auditEventDate";
+
+    private static final Duration INITIAL_CHUNK = Duration.ofHours(1);
+
+    private static final Duration MIN_CHUNK = Duration.ofSeconds(1);
+
+    private static final Duration MAX_CHUNK = Duration.ofDays(1);
+
+    private final Logger log = LoggerFactory.getLogger(AuditRetentionService.class);
+
+    private final ApplicationProperties.AuditRetention properties;
+
+    private final JHipsterProperties jHipsterProperties;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final JobLockService jobLockService;
+
+    private final Executor taskExecutor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Counter deletedCounter;
+
+    private final Timer chunkTimer;
+
+    private volatile double progress = 1;
+
+    public AuditRetentionService(ApplicationProperties applicationProperties, JHipsterProperties jHipsterProperties,
+                                 MongoTemplate mongoTemplate, JobLockService jobLockService,
+                                 @Qualifier("taskExecutor") Executor taskExecutor, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getAuditRetention();
+        this.jHipsterProperties = jHipsterProperties;
+        this.mongoTemplate = mongoTemplate;
+        this.jobLockService = jobLockService;
+        this.taskExecutor = taskExecutor;
+        this.deletedCounter = Counter.builder("audit.retention.deleted")
+            .description("Expired audit events deleted in the chunked mode")
+            .register(meterRegistry);
+        this.chunkTimer = Timer.builder("audit.retention.chunk")
+            .description("Time taken to delete the expired audit events of a range of dates")
+            .register(meterRegistry);
+        Gauge.builder("audit.retention.progress", this, service -> service.progress)
+            .description("Ratio of the expired audit events deleted by the running removal, 1 when none is running")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        taskExecutor.execute(() -> runLocked(this::ensureIndexes));
+    }
+
+    /**
+     * Removes the expired audit events on schedule, in the chunked mode.
+     */
+    @Scheduled(cron = "${application.audit-retention.cron:0 0 12 * * ?}")
+    public void scheduledRun() {
+        if (properties.getMode() == ApplicationProperties.AuditRetention.Mode.CHUNKED) {
+            runLocked(this::removeExpired);
+        }
+    }
+
+    void runLocked(Runnable job) {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Audit retention is already running");
+            return;
+        }
+        try {
+            if (!jobLockService.tryLock(JOB_NAME, lockLease())) {
+                log.debug("Audit retention is running on another instance");
+                return;
+            }
+            try {
+                job.run();
+            } finally {
+                jobLockService.unlock(JOB_NAME);
+            }
+        } catch (RuntimeException e) {
+            log.error("Audit retention failed: {}", e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Keeps either the TTL index or the plain date index of the events, which have the same keys.
+     */
+    void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(PersistentAuditEvent.class);
+        Map<String, Document> indexes = new HashMap<>();
+        for (Document index : mongoTemplate.getCollection(mongoTemplate.getCollectionName(PersistentAuditEvent.class))
+            .listIndexes()) {
+            indexes.put(index.getString("name"), index);
+        }
+        long expireAfterSeconds = retentionPeriod().getSeconds();
+        if (properties.getMode() == ApplicationProperties.AuditRetention.Mode.TTL) {
+            Document ttlIndex = indexes.get(TTL_INDEX);
+            if (ttlIndex == null) {
+                // MongoDB rejects two indexes with the same keys: the events are not indexed by date until the
+                // TTL index is built
+                if (indexes.containsKey(DATE_INDEX)) {
+                    indexOps.dropIndex(DATE_INDEX);
+                }
+                indexOps.ensureIndex(dateIndex(TTL_INDEX).expire(expireAfterSeconds));
+                log.info("Audit events now expire with a TTL index, after {} s", expireAfterSeconds);
+            } else if (((Number) ttlIndex.get("expireAfterSeconds")).longValue() != expireAfterSeconds) {
+                mongoTemplate.executeCommand(new Document("collMod", mongoTemplate.getCollectionName(PersistentAuditEvent.class))
+                    .append("index", new Document("name", TTL_INDEX).append("expireAfterSeconds", expireAfterSeconds)));
+                log.info("Audit events now expire after {} s", expireAfterSeconds);
+            }
+        } else if (indexes.containsKey(TTL_INDEX)) {
+            indexOps.dropIndex(TTL_INDEX);
+            indexOps.ensureIndex(dateIndex(DATE_INDEX));
+            log.info("Audit events no longer expire with a TTL index");
+        }
+    }
+
+    private static Index dateIndex(String name) {
+        return new Index().on(EVENT_DATE, Sort.Direction.ASC).named(name).background();
+    }
+
+    /**
+     * Deletes the expired events, oldest first, by ranges of dates.
+     */
+    void removeExpired() {
+        Instant cutoff = Instant.now().minus(retentionPeriod());
+        Instant oldest = oldestBefore(cutoff);
+        if (oldest == null) {
+            log.debug("No expired audit events");
+            return;
+        }
+        long totalMs = Math.max(1, Duration.between(oldest, cutoff).toMillis());
+        Instant rangeStart = oldest;
+        Duration chunk = INITIAL_CHUNK;
+        long deleted = 0;
+        long start = System.nanoTime();
+        log.info("Removing the audit events from {} to {}", oldest, cutoff);
+        try {
+            while (rangeStart != null && rangeStart.isBefore(cutoff)) {
+                // another instance may run the removal once the lease has expired
+                if (!jobLockService.extend(JOB_NAME, lockLease())) {
+                    log.warn("Lost the lock of the audit retention, stopping after {} events deleted", deleted);
+                    break;
+                }
+                Instant rangeEnd = min(rangeStart.plus(chunk), cutoff);
+                Query range = Query.query(where(AUDIT_EVENT_DATE).gte(rangeStart).lt(rangeEnd));
+                long chunkStart = System.nanoTime();
+                long chunkDeleted = chunkTimer.record(() ->
+                    mongoTemplate.remove(range, PersistentAuditEvent.class).getDeletedCount());
+                deleted += chunkDeleted;
+                deletedCounter.increment(chunkDeleted);
+                progress = Math.min(1, (double) Duration.between(oldest, rangeEnd).toMillis() / totalMs);
+                chunk = nextChunk(chunk, Duration.between(rangeStart, rangeEnd), chunkDeleted);
+                // after an empty range, skip to the next event
+                rangeStart = chunkDeleted > 0 ? rangeEnd : oldestBefore(cutoff);
+                pace(chunkDeleted, System.nanoTime() - chunkStart);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Audit retention interrupted, {} events deleted", deleted);
+        } finally {
+            progress = 1;
+        }
+        log.info("Removed {} expired audit events in {} ms", deleted,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Sizes the next range to hold about {@code chunk-size} events, at the density of the previous one.
+     */
+    private Duration nextChunk(Duration chunk, Duration range, long deleted) {
+        if (deleted == 0 || range.compareTo(chunk) < 0) {
+            // an empty range, or the last one, tells nothing of the density
+            return chunk;
+        }
+        long millis = (long) (range.toMillis() * ((double) properties.getChunkSize() / deleted));
+        return Duration.ofMillis(Math.max(MIN_CHUNK.toMillis(), Math.min(MAX_CHUNK.toMillis(), millis)));
+    }
+
+    private void pace(long deleted, long elapsedNanos) throws InterruptedException {
+        if (properties.getMaxDeletesPerSecond() <= 0) {
+            return;
+        }
+        long minNanos = TimeUnit.SECONDS.toNanos(deleted) / properties.getMaxDeletesPerSecond();
+        if (minNanos > elapsedNanos) {
+            TimeUnit.NANOSECONDS.sleep(minNanos - elapsedNanos);
+        }
+    }
+
+    private Instant oldestBefore(Instant cutoff) {
+        Query query = Query.query(where(AUDIT_EVENT_DATE).lt(cutoff))
+            .with(Sort.by(Sort.Direction.ASC, AUDIT_EVENT_DATE))
+            .limit(1);
+        query.fields().include(AUDIT_EVENT_DATE);
+        PersistentAuditEvent oldest = mongoTemplate.findOne(query, PersistentAuditEvent.class);
+        return oldest != null ? oldest.getAuditEventDate() : null;
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private Duration retentionPeriod() {
+        return Duration.of(jHipsterProperties.getAuditEvents().getRetentionPeriod(), ChronoUnit.DAYS);
+    }
+
+    private Duration lockLease() {
+        return Duration.ofMinutes(properties.getLockLeaseMinutes());
+    }
+}
@@ -0,0 +1,105 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.domain.Authority;
+import com.jawnz.app.repository.AuthorityRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory registry of the {@link Authority} names known to the local database.
+ * <p>
+ * The registry holds an immutable set which is replaced atomically whenever it changes, so lookups never
+ * touch MongoDB. It is loaded once the application is ready (after the database migrations ran), updated
+ * when authorities are inserted through {@link #ensureExists(String)}, and periodically reloaded to pick up
+ * authorities created by other instances.
+ */
+@Service
+public class AuthorityRegistryService {
+
+    private final Logger log = LoggerFactory.getLogger(AuthorityRegistryService.class);
+
+    private final AuthorityRepository authorityRepository;
+
+    private final AtomicReference<Set<String>> authorities = new AtomicReference<>();
+
+    public AuthorityRegistryService(AuthorityRepository authorityRepository) {
+        this.authorityRepository = authorityRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refresh();
+    }
+
+    /**
+     * Reloads the registry from the database.
+     * <p>
+     * This is scheduled as a safety net, to pick up authorities inserted by other instances.
+     */
+    @Scheduled(initialDelayString = "${application.authority-registry.refresh-interval-ms:300000}",
+        fixedDelayString = "${application.authority-registry.refresh-interval-ms:300000}")
+    public void refresh() {
+        Set<String> names = authorityRepository.findAll().stream()
+            .map(Authority::getName)
+            .collect(Collectors.toSet());
+        authorities.set(Collections.unmodifiableSet(names));
+        log.debug("Loaded {} authorities", names.size());
+    }
+
+    /**
+     * Gets the names of all the known authorities.
+     *
+     * @return an immutable snapshot of the authority names.
+     */
+    public Set<String> getAuthorities() {
+        Set<String> current = authorities.get();
+        if (current == null) {
+            refresh();
+            current = authorities.get();
+        }
+        return current;
+    }
+
+    public boolean contains(String name) {
+        return getAuthorities().contains(name);
+    }
+
+    /**
+     * Inserts the authority in the database if it is not known yet.
+     * <p>
+     * The insert relies on the unique {@code _id} of the authority: if another thread or instance created it
+     * concurrently, the resulting duplicate key error means it already exists.
+     *
+     * @param name the name of the authority.
+     */
+    public void ensureExists(String name) {
+        if (contains(name)) {
+            return;
+        }
+        Authority authority = new Authority();
+        authority.setName(name);
+        try {
+            log.debug("Saving authority '{}' in local database", name);
+            authorityRepository.insert(authority);
+        } catch (DuplicateKeyException e) {
+            log.debug("Authority '{}' was created concurrently", name);
+        }
+        authorities.updateAndGet(current -> {
+            Set<String> updated = current == null ? new HashSet<>() : new HashSet<>(current);
+            updated.add(name);
+            return Collections.unmodifiableSet(updated);
+        });
+    }
+}
@@ -0,0 +1,247 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.KafkaProperties;
+import com.jawnz.app.config.cache.TwoTierCacheManager;
+import com.jawnz.app.repository.UserRepository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Broadcasts the evictions of the in-process caches of {@link TwoTierCacheManager} to the other instances.
+ * <p>
+ * Evictions, such as the ones of {@link UserCacheService}, are published to a Kafka topic. Every instance reads
+ * all the partitions of the topic from their end, without a consumer group, and evicts the entries evicted by the
+ * other instances from its in-process caches only: the shared caches were already evicted by the publisher.
+ * The evicted logins are also added to the login filter, as they may belong to new users.
+ * <p>
+ * The consumer survives the failures of Kafka: it retries, and clears the in-process caches once it receives
+ * again, as evictions may have been missed. Partitions added to the topic are assigned periodically.
+ */
+@Service
+public class CacheInvalidationService {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private static final Duration ASSIGNMENT_REFRESH = Duration.ofMinutes(1);
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final Logger log = LoggerFactory.getLogger(CacheInvalidationService.class);
+
+    private final String origin = UUID.randomUUID().toString();
+
+    private final ApplicationProperties.NearCache properties;
+
+    private final KafkaProperties kafkaProperties;
+
+    private final CacheManager cacheManager;
+
+    private final ObjectMapper objectMapper;
+
+    private final UserLoginFilterService userLoginFilterService;
+
+    private final Counter sentCounter;
+
+    private final Counter receivedCounter;
+
+    private KafkaProducer<String, String> producer;
+
+    private volatile KafkaConsumer<String, String> consumer;
+
+    private volatile boolean closed;
+
+    private volatile boolean listening;
+
+    public CacheInvalidationService(ApplicationProperties applicationProperties, KafkaProperties kafkaProperties,
+                                    CacheManager cacheManager, ObjectMapper objectMapper,
+                                    UserLoginFilterService userLoginFilterService, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getNearCache();
+        this.kafkaProperties = kafkaProperties;
+        this.cacheManager = cacheManager;
+        this.objectMapper = objectMapper;
+        this.userLoginFilterService = userLoginFilterService;
+        this.sentCounter = meterRegistry.counter("cache.invalidation.sent");
+        this.receivedCounter = meterRegistry.counter("cache.invalidation.received");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!(cacheManager instanceof TwoTierCacheManager)) {
+            return;
+        }
+        producer = new KafkaProducer<>(kafkaProperties.getProducerProps());
+        Map<String, Object> consumerProps = kafkaProperties.getConsumerProps();
+        consumerProps.remove("group.id");
+        consumerProps.put("enable.auto.commit", "false");
+        consumer = new KafkaConsumer<>(consumerProps);
+        ((TwoTierCacheManager) cacheManager).setInvalidationListener(this::publish);
+        Thread thread = new Thread(this::consume, "cache-invalidation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        closed = true;
+        if (consumer != null) {
+            consumer.wakeup();
+        }
+        if (producer != null) {
+            producer.close();
+        }
+    }
+
+    /**
+     * Whether the evictions of the other instances are currently received.
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    private void publish(String cacheName, Object key) {
+        Map<String, String> message = new HashMap<>();
+        message.put("origin", origin);
+        message.put("cache", cacheName);
+        message.put("key", key != null ? key.toString() : null);
+        try {
+            producer.send(new ProducerRecord<>(properties.getInvalidationTopic(), cacheName, objectMapper.writeValueAsString(message)),
+                (metadata, e) -> {
+                    if (e != null) {
+                        log.warn("Could not broadcast the eviction of {} from {}: {}", key, cacheName, e.getMessage());
+                    }
+                });
+            sentCounter.increment();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void consume() {
+        try {
+            long nextRefresh = System.nanoTime();
+            boolean failed = false;
+            while (!closed) {
+                try {
+                    if (System.nanoTime() - nextRefresh >= 0) {
+                        refreshAssignment();
+                        nextRefresh = System.nanoTime() + ASSIGNMENT_REFRESH.toNanos();
+                    }
+                    for (ConsumerRecord<String, String> record : consumer.poll(POLL_TIMEOUT)) {
+                        evict(record);
+                    }
+                    if (failed) {
+                        // evictions may have been missed in the meantime
+                        clearLocal();
+                        failed = false;
+                    }
+                    setListening(true);
+                } catch (WakeupException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    setListening(false);
+                    failed = true;
+                    nextRefresh = System.nanoTime();
+                    log.warn("Cache invalidation consumer failed, retrying in {} s: {}", RETRY_DELAY.getSeconds(),
+                        e.getMessage());
+                    Thread.sleep(RETRY_DELAY.toMillis());
+                }
+            }
+        } catch (WakeupException e) {
+            if (!closed) {
+                log.error("Cache invalidation consumer woken up unexpectedly, stopping", e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            setListening(false);
+            consumer.close();
+        }
+    }
+
+    /**
+     * Assigns the partitions of the topic which are not assigned yet: from their end on the first assignment, and
+     * from their beginning when they were added to the topic since.
+     */
+    private void refreshAssignment() {
+        String topic = properties.getInvalidationTopic();
+        List<PartitionInfo> partitionInfos = consumer.partitionsFor(topic);
+        if (partitionInfos == null || partitionInfos.isEmpty()) {
+            throw new IllegalStateException("No partition found for the topic " + topic);
+        }
+        Set<TopicPartition> partitions = partitionInfos.stream()
+            .map(partition -> new TopicPartition(partition.topic(), partition.partition()))
+            .collect(Collectors.toSet());
+        Set<TopicPartition> assigned = consumer.assignment();
+        Set<TopicPartition> added = new HashSet<>(partitions);
+        added.removeAll(assigned);
+        if (added.isEmpty()) {
+            return;
+        }
+        consumer.assign(partitions);
+        if (assigned.isEmpty()) {
+            consumer.seekToEnd(added);
+        } else {
+            consumer.seekToBeginning(added);
+        }
+        log.debug("Listening to the cache invalidations of {}", added);
+    }
+
+    private void setListening(boolean listening) {
+        if (this.listening != listening) {
+            this.listening = listening;
+            userLoginFilterService.setBroadcastListening(listening);
+        }
+    }
+
+    private void clearLocal() {
+        TwoTierCacheManager twoTierCacheManager = (TwoTierCacheManager) cacheManager;
+        twoTierCacheManager.getCacheNames().forEach(name -> twoTierCacheManager.evictLocal(name, null));
+    }
+
+    private void evict(ConsumerRecord<String, String> record) {
+        Map<String, String> message;
+        try {
+            message = objectMapper.readValue(record.value(), objectMapper.getTypeFactory()
+                .constructMapType(HashMap.class, String.class, String.class));
+        } catch (IOException e) {
+            log.error("Skipping unreadable cache invalidation at offset {}: {}", record.offset(), e.getMessage());
+            return;
+        }
+        if (origin.equals(message.get("origin"))) {
+            return;
+        }
+        receivedCounter.increment();
+        ((TwoTierCacheManager) cacheManager).evictLocal(message.get("cache"), message.get("key"));
+        if (UserRepository.USERS_BY_LOGIN_CACHE.equals(message.get("cache"))) {
+            userLoginFilterService.add(message.get("key"));
+        }
+    }
+}
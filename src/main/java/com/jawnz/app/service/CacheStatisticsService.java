@@ -0,0 +1,206 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.cache.CacheInstrumentation;
+import com.jawnz.app.config.cache.InstrumentedCache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import net.rubyeye.xmemcached.MemcachedClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the statistics of the memcached caches: the ones recorded by the application for each cache, and the
+ * ones of the memcached servers.
+ */
+@Service
+public class CacheStatisticsService {
+
+    private static final int HOT_KEYS = 20;
+
+    private static final long SERVER_STATS_TIMEOUT_MS = 2000;
+
+    private final Logger log = LoggerFactory.getLogger(CacheStatisticsService.class);
+
+    private final CacheInstrumentation cacheInstrumentation;
+
+    public CacheStatisticsService(CacheInstrumentation cacheInstrumentation) {
+        this.cacheInstrumentation = cacheInstrumentation;
+    }
+
+    public Report getReport() {
+        List<InstrumentedCache> caches = cacheInstrumentation.getCaches();
+        caches.sort(Comparator.comparing(InstrumentedCache::getName));
+        Report report = new Report();
+        for (InstrumentedCache cache : caches) {
+            report.caches.add(statistics(cache));
+        }
+        if (!caches.isEmpty()) {
+            // the caches have their own clients, to the same servers
+            report.servers = serverStatistics(caches.get(0));
+        }
+        return report;
+    }
+
+    private CacheStatistics statistics(InstrumentedCache cache) {
+        CacheStatistics statistics = new CacheStatistics();
+        statistics.name = cache.getName();
+        statistics.hits = cache.getHits().count();
+        statistics.misses = cache.getMisses().count();
+        long gets = statistics.hits + statistics.misses;
+        statistics.hitRatio = gets == 0 ? 0 : (double) statistics.hits / gets;
+        statistics.getMeanMs = mean(cache.getHits(), cache.getMisses());
+        statistics.getMaxMs = Math.max(cache.getHits().max(TimeUnit.MILLISECONDS),
+            cache.getMisses().max(TimeUnit.MILLISECONDS));
+        statistics.puts = cache.getPuts().count();
+        statistics.putMeanMs = cache.getPuts().mean(TimeUnit.MILLISECONDS);
+        statistics.putMaxMs = cache.getPuts().max(TimeUnit.MILLISECONDS);
+        statistics.evictions = (long) cache.getEvictions().count();
+        DistributionSummary payload = cacheInstrumentation.payloadSummary(cache.getName());
+        statistics.payloadMeanBytes = payload.mean();
+        statistics.payloadMaxBytes = payload.max();
+        for (Map.Entry<String, Long> hotKey : cache.getHotKeySampler().top(HOT_KEYS)) {
+            statistics.hotKeys.put(hotKey.getKey(), hotKey.getValue());
+        }
+        return statistics;
+    }
+
+    private static double mean(Timer hits, Timer misses) {
+        long count = hits.count() + misses.count();
+        if (count == 0) {
+            return 0;
+        }
+        return (hits.totalTime(TimeUnit.MILLISECONDS) + misses.totalTime(TimeUnit.MILLISECONDS)) / count;
+    }
+
+    private Map<String, Map<String, String>> serverStatistics(InstrumentedCache cache) {
+        Map<String, Map<String, String>> servers = new TreeMap<>();
+        Object client = ((com.google.code.ssm.Cache) cache.getNativeCache()).getNativeClient();
+        if (!(client instanceof MemcachedClient)) {
+            return servers;
+        }
+        try {
+            Map<InetSocketAddress, Map<String, String>> stats =
+                ((MemcachedClient) client).getStats(SERVER_STATS_TIMEOUT_MS);
+            stats.forEach((address, serverStats) -> servers.put(address.getHostString() + ":" + address.getPort(),
+                new TreeMap<>(serverStats)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Could not get the statistics of the memcached servers: {}", e.getMessage());
+        }
+        return servers;
+    }
+
+    public static class Report {
+
+        private final List<CacheStatistics> caches = new ArrayList<>();
+
+        private Map<String, Map<String, String>> servers = new TreeMap<>();
+
+        public List<CacheStatistics> getCaches() {
+            return caches;
+        }
+
+        /**
+         * @return the statistics reported by each memcached server, by address.
+         */
+        public Map<String, Map<String, String>> getServers() {
+            return servers;
+        }
+    }
+
+    public static class CacheStatistics {
+
+        private String name;
+
+        private long hits;
+
+        private long misses;
+
+        private double hitRatio;
+
+        private double getMeanMs;
+
+        private double getMaxMs;
+
+        private long puts;
+
+        private double putMeanMs;
+
+        private double putMaxMs;
+
+        private long evictions;
+
+        private double payloadMeanBytes;
+
+        private double payloadMaxBytes;
+
+        private final Map<String, Long> hotKeys = new LinkedHashMap<>();
+
+        public String getName() {
+            return name;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRatio() {
+            return hitRatio;
+        }
+
+        public double getGetMeanMs() {
+            return getMeanMs;
+        }
+
+        public double getGetMaxMs() {
+            return getMaxMs;
+        }
+
+        public long getPuts() {
+            return puts;
+        }
+
+        public double getPutMeanMs() {
+            return putMeanMs;
+        }
+
+        public double getPutMaxMs() {
+            return putMaxMs;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public double getPayloadMeanBytes() {
+            return payloadMeanBytes;
+        }
+
+        public double getPayloadMaxBytes() {
+            return payloadMaxBytes;
+        }
+
+        /**
+         * @return the most read keys with their sampled read counts, most read first.
+         */
+        public Map<String, Long> getHotKeys() {
+            return hotKeys;
+        }
+    }
+}
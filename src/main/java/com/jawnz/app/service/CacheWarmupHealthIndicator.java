@@ -0,0 +1,37 @@
+package com.jawnz.app.service;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the instance out of service while {@link CacheWarmupService} warms the user caches up.
+ * <p>
+ * The Eureka health check reports this status to the registry, so that no traffic is routed to the instance until
+ * the warm-up is over, whatever its outcome.
+ */
+@Component
+public class CacheWarmupHealthIndicator extends AbstractHealthIndicator {
+
+    private final CacheWarmupService cacheWarmupService;
+
+    public CacheWarmupHealthIndicator(CacheWarmupService cacheWarmupService) {
+        super("Cache warm-up health check failed");
+        this.cacheWarmupService = cacheWarmupService;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        CacheWarmupService.Status status = cacheWarmupService.getStatus();
+        if (status.isWarmingUp()) {
+            builder.outOfService();
+        } else {
+            builder.up();
+        }
+        builder.withDetail("state", status.getState())
+            .withDetail("principals", status.getPrincipals())
+            .withDetail("loaded", status.getLoaded())
+            .withDetail("coverage", status.getCoverage())
+            .withDetail("durationMs", status.getDurationMs());
+    }
+}
@@ -0,0 +1,197 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.limit;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Warms the user caches up when the instance starts, so that a rolling deploy does not send every request of the
+ * most active users to MongoDB at once.
+ * <p>
+ * The principals with the most successful authentications in the recent audit events are loaded in parallel
+ * batches with {@link UserService#getUsersWithAuthoritiesByLogins(List)}, which fills the in-process and shared
+ * caches. Until the warm-up is over, {@link CacheWarmupHealthIndicator} reports the instance out of service, so
+ * that it is not registered as up in Eureka.
+ */
+@Service
+public class CacheWarmupService {
+
+    static final String AUTHENTICATION_SUCCESS = "AUTHENTICATION_SUCCESS";
+
+    private static final String AUDIT_EVENT_COLLECTION = "jwn_persistent_audit_event";
+
+    private final Logger log = LoggerFactory.getLogger(CacheWarmupService.class);
+
+    private final ApplicationProperties.CacheWarmup properties;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final UserService userService;
+
+    private volatile Status status = new Status();
+
+    public CacheWarmupService(ApplicationProperties applicationProperties, MongoTemplate mongoTemplate,
+                              UserService userService, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getCacheWarmup();
+        this.mongoTemplate = mongoTemplate;
+        this.userService = userService;
+        Gauge.builder("cache.warmup.duration", this, service -> service.status.durationMs)
+            .description("Duration of the warm-up of the user caches")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+        Gauge.builder("cache.warmup.coverage", this, service -> service.status.getCoverage())
+            .description("Ratio of the most active principals whose user was loaded by the warm-up")
+            .register(meterRegistry);
+        if (properties.isEnabled()) {
+            status.state = State.PENDING;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "cache-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void warmUp() {
+        Status current = new Status();
+        current.state = State.RUNNING;
+        current.startedAt = Instant.now();
+        status = current;
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, properties.getParallelism()));
+        try {
+            List<String> principals = mostActivePrincipals();
+            current.principals = principals.size();
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < principals.size(); from += properties.getBatchSize()) {
+                List<String> batch = principals.subList(from, Math.min(from + properties.getBatchSize(), principals.size()));
+                batches.add(CompletableFuture.runAsync(
+                    () -> current.loaded.addAndGet(userService.getUsersWithAuthoritiesByLogins(batch).size()), executor));
+            }
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                .get(properties.getTimeoutMs(), TimeUnit.MILLISECONDS);
+            current.state = State.DONE;
+        } catch (TimeoutException e) {
+            log.warn("Cache warm-up not over after {} ms, giving up", properties.getTimeoutMs());
+            current.state = State.TIMED_OUT;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current.state = State.FAILED;
+        } catch (ExecutionException | RuntimeException e) {
+            log.warn("Cache warm-up failed: {}", e.getMessage());
+            current.state = State.FAILED;
+        } finally {
+            executor.shutdownNow();
+            current.durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        log.info("Cache warm-up {} in {} ms: {} users loaded for the {} most active principals",
+            current.state.name().toLowerCase(), current.durationMs, current.loaded.get(), current.principals);
+    }
+
+    private List<String> mostActivePrincipals() {
+        Instant since = Instant.now().minus(Duration.ofHours(properties.getLookbackHours()));
+        Aggregation aggregation = newAggregation(
+            match(where("event_type").is(AUTHENTICATION_SUCCESS).and("event_date").gte(Date.from(since))),
+            group("principal").count().as("count"),
+            sort(Sort.Direction.DESC, "count"),
+            limit(properties.getTopN()));
+        List<String> principals = new ArrayList<>();
+        for (Document result : mongoTemplate.aggregate(aggregation, AUDIT_EVENT_COLLECTION, Document.class)) {
+            Object principal = result.get("_id");
+            if (principal != null) {
+                principals.add(principal.toString());
+            }
+        }
+        return principals;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public enum State {
+        DISABLED, PENDING, RUNNING, DONE, TIMED_OUT, FAILED
+    }
+
+    public static class Status {
+
+        private volatile State state = State.DISABLED;
+
+        private volatile Instant startedAt;
+
+        private volatile long durationMs;
+
+        private volatile int principals;
+
+        private final AtomicLong loaded = new AtomicLong();
+
+        /**
+         * @return whether the instance is still warming up.
+         */
+        public boolean isWarmingUp() {
+            return state == State.PENDING || state == State.RUNNING;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        public int getPrincipals() {
+            return principals;
+        }
+
+        public long getLoaded() {
+            return loaded.get();
+        }
+
+        /**
+         * @return the ratio of the principals whose user was loaded.
+         */
+        public double getCoverage() {
+            return principals == 0 ? 0 : (double) loaded.get() / principals;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.client.IdpUserDirectoryClient;
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.Constants;
+import com.jawnz.app.domain.Authority;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.UserRepository;
+import com.jawnz.app.security.AuthoritiesConstants;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Reconciles the local users with the users of the identity provider.
+ * <p>
+ * Users are streamed page by page from the identity provider, mapped with the same rules as the ones used at
+ * login by {@link UserService}, and compared with the local users: only new and changed users are written,
+ * with {@link UserBulkWriter}. The position of the last reconciled page is checkpointed in MongoDB, so an
+ * interrupted run can be resumed. Only one instance of the cluster runs the job at a time.
+ */
+@Service
+public class IdpReconciliationService {
+
+    static final String JOB_NAME = "idp-reconciliation";
+
+    static final String CHECKPOINT_COLLECTION = "jwn_idp_reconciliation";
+
+    private static final String CHECKPOINT_ID = "users";
+
+    private final Logger log = LoggerFactory.getLogger(IdpReconciliationService.class);
+
+    private final ApplicationProperties.IdpReconciliation properties;
+
+    private final IdpUserDirectoryClient idpUserDirectoryClient;
+
+    private final UserRepository userRepository;
+
+    private final UserBulkWriter userBulkWriter;
+
+    private final UserCacheService userCacheService;
+
+    private final JobLockService jobLockService;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Executor taskExecutor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Counter unchangedCounter;
+
+    private final Counter createdCounter;
+
+    private final Counter updatedCounter;
+
+    private final Timer pageTimer;
+
+    private volatile Status status = new Status();
+
+    public IdpReconciliationService(ApplicationProperties applicationProperties, IdpUserDirectoryClient idpUserDirectoryClient,
+                                    UserRepository userRepository, UserBulkWriter userBulkWriter,
+                                    UserCacheService userCacheService, JobLockService jobLockService,
+                                    MongoTemplate mongoTemplate, @Qualifier("taskExecutor") Executor taskExecutor,
+                                    MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getIdpReconciliation();
+        this.idpUserDirectoryClient = idpUserDirectoryClient;
+        this.userRepository = userRepository;
+        this.userBulkWriter = userBulkWriter;
+        this.userCacheService = userCacheService;
+        this.jobLockService = jobLockService;
+        this.mongoTemplate = mongoTemplate;
+        this.taskExecutor = taskExecutor;
+        this.unchangedCounter = meterRegistry.counter("idp.reconciliation.users", "result", "unchanged");
+        this.createdCounter = meterRegistry.counter("idp.reconciliation.users", "result", "created");
+        this.updatedCounter = meterRegistry.counter("idp.reconciliation.users", "result", "updated");
+        this.pageTimer = Timer.builder("idp.reconciliation.page")
+            .description("Time taken to fetch, compare and write a page of users")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Starts a reconciliation in the background.
+     *
+     * @param resume whether to resume from the last checkpoint, or to start from the first user.
+     * @return {@code false} if a reconciliation is already running on this instance.
+     */
+    public boolean start(boolean resume) {
+        if (running.get()) {
+            return false;
+        }
+        taskExecutor.execute(() -> run(resume));
+        return true;
+    }
+
+    /**
+     * Runs the reconciliation on schedule, if a cron expression is configured.
+     */
+    @Scheduled(cron = "${application.idp-reconciliation.cron:-}")
+    public void scheduledRun() {
+        run(true);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    void run(boolean resume) {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("IdP reconciliation is already running");
+            return;
+        }
+        try {
+            if (!jobLockService.tryLock(JOB_NAME, lockLease())) {
+                log.info("IdP reconciliation is running on another instance");
+                return;
+            }
+            try {
+                reconcile(resume);
+            } finally {
+                jobLockService.unlock(JOB_NAME);
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void reconcile(boolean resume) {
+        int first = resume ? loadCheckpoint() : 0;
+        Status current = new Status();
+        current.running = true;
+        current.startedAt = Instant.now();
+        current.first = first;
+        status = current;
+        log.info("Starting IdP reconciliation at user {}", first);
+        try {
+            int pageSize = properties.getPageSize();
+            List<Map<String, Object>> page;
+            do {
+                long start = System.nanoTime();
+                page = idpUserDirectoryClient.getUsers(first, pageSize);
+                // another instance may hold the lock once the lease has expired: stop before writing
+                if (!jobLockService.extend(JOB_NAME, lockLease())) {
+                    throw new IllegalStateException("Lost the lock of the job, its lease expired");
+                }
+                current.changed += reconcilePage(page);
+                current.processed += page.size();
+                first += page.size();
+                current.first = first;
+                saveCheckpoint(first, false);
+                pageTimer.record(Duration.ofNanos(System.nanoTime() - start));
+            } while (page.size() == pageSize);
+            saveCheckpoint(0, true);
+            log.info("IdP reconciliation done: {} users processed, {} changed", current.processed, current.changed);
+        } catch (RuntimeException e) {
+            current.error = e.getMessage();
+            log.error("IdP reconciliation failed at user {}, it can be resumed: {}", first, e.getMessage());
+        } finally {
+            current.running = false;
+            current.finishedAt = Instant.now();
+        }
+    }
+
+    private int reconcilePage(List<Map<String, Object>> page) {
+        Map<String, User> incoming = new LinkedHashMap<>();
+        for (Map<String, Object> representation : page) {
+            User user = UserService.getUser(toClaims(representation));
+            if (user.getId() != null) {
+                incoming.put(user.getId(), user);
+            }
+        }
+        Map<String, User> existing = new HashMap<>();
+        userRepository.findAllById(incoming.keySet()).forEach(user -> existing.put(user.getId(), user));
+
+        Instant now = Instant.now();
+        List<User> changed = new ArrayList<>();
+        for (User user : incoming.values()) {
+            User current = existing.get(user.getId());
+            if (current == null) {
+                Authority authority = new Authority();
+                authority.setName(AuthoritiesConstants.USER);
+                user.setAuthorities(Collections.singleton(authority));
+                user.setCreatedBy(Constants.SYSTEM_ACCOUNT);
+                user.setCreatedDate(now);
+                user.setLastModifiedBy(Constants.SYSTEM_ACCOUNT);
+                user.setLastModifiedDate(now);
+                changed.add(user);
+                createdCounter.increment();
+            } else if (hasChanged(current, user)) {
+                current.setLogin(user.getLogin());
+                current.setFirstName(user.getFirstName());
+                current.setLastName(user.getLastName());
+                current.setEmail(user.getEmail());
+                current.setLangKey(user.getLangKey());
+                current.setImageUrl(user.getImageUrl());
+                current.setActivated(user.getActivated());
+                current.setLastModifiedBy(Constants.SYSTEM_ACCOUNT);
+                current.setLastModifiedDate(now);
+                changed.add(current);
+                updatedCounter.increment();
+            } else {
+                unchangedCounter.increment();
+            }
+        }
+        if (!changed.isEmpty()) {
+            userBulkWriter.write(changed);
+            changed.forEach(userCacheService::evict);
+        }
+        return changed.size();
+    }
+
+    /**
+     * Converts a user representation of the identity provider to the claims of an ID token.
+     */
+    static Map<String, Object> toClaims(Map<String, Object> representation) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", representation.get("id"));
+        claims.put("preferred_username", representation.get("username"));
+        claims.put("given_name", representation.get("firstName"));
+        claims.put("family_name", representation.get("lastName"));
+        claims.put("email", representation.get("email"));
+        claims.put("email_verified", representation.get("emailVerified"));
+        Object attributes = representation.get("attributes");
+        if (attributes instanceof Map) {
+            Object locale = ((Map<?, ?>) attributes).get("locale");
+            if (locale instanceof Collection && !((Collection<?>) locale).isEmpty()) {
+                claims.put("locale", ((Collection<?>) locale).iterator().next());
+            }
+        }
+        return claims;
+    }
+
+    static boolean hasChanged(User current, User user) {
+        return !Objects.equals(current.getLogin(), user.getLogin()) ||
+            !Objects.equals(current.getFirstName(), user.getFirstName()) ||
+            !Objects.equals(current.getLastName(), user.getLastName()) ||
+            !Objects.equals(current.getEmail(), user.getEmail()) ||
+            !Objects.equals(current.getLangKey(), user.getLangKey()) ||
+            !Objects.equals(current.getImageUrl(), user.getImageUrl()) ||
+            current.getActivated() != user.getActivated();
+    }
+
+    private int loadCheckpoint() {
+        Document checkpoint = mongoTemplate.findById(CHECKPOINT_ID, Document.class, CHECKPOINT_COLLECTION);
+        if (checkpoint == null || checkpoint.getBoolean("completed", false)) {
+            return 0;
+        }
+        return checkpoint.getInteger("next_first", 0);
+    }
+
+    private void saveCheckpoint(int nextFirst, boolean completed) {
+        Update update = new Update()
+            .set("next_first", nextFirst)
+            .set("completed", completed)
+            .set("updated_at", Instant.now());
+        mongoTemplate.upsert(Query.query(where("_id").is(CHECKPOINT_ID)), update, CHECKPOINT_COLLECTION);
+    }
+
+    private Duration lockLease() {
+        return Duration.ofMinutes(properties.getLockLeaseMinutes());
+    }
+
+    /**
+     * Progress of the current, or last, reconciliation on this instance.
+     */
+    public static class Status {
+
+        private volatile boolean running;
+
+        private volatile Instant startedAt;
+
+        private volatile Instant finishedAt;
+
+        private volatile int first;
+
+        private volatile long processed;
+
+        private volatile long changed;
+
+        private volatile String error;
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public Instant getFinishedAt() {
+            return finishedAt;
+        }
+
+        public int getFirst() {
+            return first;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getChanged() {
+            return changed;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public double getUsersPerSecond() {
+            if (startedAt == null) {
+                return 0;
+            }
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+            return processed * 1000.0 / millis;
+        }
+    }
+}
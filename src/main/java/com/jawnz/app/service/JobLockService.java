@@ -0,0 +1,87 @@
+package com.jawnz.app.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Cluster-wide locks for background jobs, stored in MongoDB.
+ * <p>
+ * A lock is a document of the {@code jwn_job_lock} collection, identified by the job name. It is acquired by
+ * an upsert which only matches an expired lock: if the lock is held, the upsert attempts an insert with the
+ * same {@code _id} and fails with a duplicate key error. Locks are leased, so a crashed instance only blocks
+ * the job until the lease expires.
+ */
+@Service
+public class JobLockService {
+
+    static final String COLLECTION = "jwn_job_lock";
+
+    private final Logger log = LoggerFactory.getLogger(JobLockService.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final String owner = UUID.randomUUID().toString();
+
+    public JobLockService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Tries to acquire the lock of a job.
+     *
+     * @param name the name of the job.
+     * @param lease how long the lock is held if it is not released.
+     * @return {@code true} if the lock was acquired.
+     */
+    public boolean tryLock(String name, Duration lease) {
+        Instant now = Instant.now();
+        Query query = Query.query(where("_id").is(name).and("locked_until").lte(now));
+        Update update = new Update()
+            .set("locked_until", now.plus(lease))
+            .set("locked_at", now)
+            .set("locked_by", owner);
+        try {
+            mongoTemplate.upsert(query, update, COLLECTION);
+            log.debug("Acquired lock '{}' until {}", name, now.plus(lease));
+            return true;
+        } catch (DuplicateKeyException e) {
+            log.debug("Lock '{}' is held by another instance", name);
+            return false;
+        }
+    }
+
+    /**
+     * Extends the lease of a lock held by this instance.
+     *
+     * @param name the name of the job.
+     * @param lease how long the lock is held from now.
+     * @return {@code true} if the lock is still held by this instance.
+     */
+    public boolean extend(String name, Duration lease) {
+        Query query = Query.query(where("_id").is(name).and("locked_by").is(owner));
+        return mongoTemplate.updateFirst(query, Update.update("locked_until", Instant.now().plus(lease)), COLLECTION)
+            .getMatchedCount() > 0;
+    }
+
+    /**
+     * Releases a lock held by this instance.
+     *
+     * @param name the name of the job.
+     */
+    public void unlock(String name) {
+        Query query = Query.query(where("_id").is(name).and("locked_by").is(owner));
+        mongoTemplate.updateFirst(query, Update.update("locked_until", Instant.now()), COLLECTION);
+        log.debug("Released lock '{}'", name);
+    }
+}
@@ -0,0 +1,111 @@
+package com.jawnz.app.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of user logins: a login which was not added is reported as absent, except for a small rate of
+ * false positives, and a login which was added is never reported as absent.
+ * <p>
+ * The bits are set with {@code k} hash functions combining two 64-bit hashes of the login, and can be added
+ * concurrently with the lookups.
+ */
+public final class LoginBloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    private LoginBloomFilter(long bitCount, int hashCount) {
+        this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        this.bitCount = (long) bits.length() * 64;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Creates an empty filter sized for the expected number of logins.
+     *
+     * @param expectedLogins the expected number of logins.
+     * @param falsePositiveRate the rate of false positives once the expected number of logins is added.
+     * @return the filter.
+     */
+    public static LoginBloomFilter create(long expectedLogins, double falsePositiveRate) {
+        long n = Math.max(expectedLogins, 1);
+        long bitCount = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bitCount = Math.max(64, Math.min(bitCount, (long) Integer.MAX_VALUE * 64));
+        int hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+        return new LoginBloomFilter(bitCount, hashCount);
+    }
+
+    public void add(String login) {
+        long h1 = hash(login);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long value = bits.get(word);
+            while ((value & mask) == 0 && !bits.compareAndSet(word, value, value | mask)) {
+                value = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * @param login the login.
+     * @return {@code false} if the login was definitely not added.
+     */
+    public boolean mightContain(String login) {
+        long h1 = hash(login);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the current rate of false positives, estimated from the ratio of set bits.
+     */
+    public double expectedFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            set += Long.bitCount(bits.get(i));
+        }
+        return Math.pow((double) set / bitCount, hashCount);
+    }
+
+    public long bitCount() {
+        return bitCount;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, mixed so that all its bits are well distributed.
+     */
+    private static long hash(String login) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : login.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
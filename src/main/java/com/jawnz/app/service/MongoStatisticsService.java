@@ -0,0 +1,168 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.mongo.MongoCommandMetrics;
+import com.jawnz.app.config.mongo.MongoConnectionPoolMetrics;
+import com.jawnz.app.config.mongo.SlowCommandLog;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the statistics of the MongoDB commands, by repository method, of the connection pools, and the most
+ * recent slow commands.
+ */
+@Service
+public class MongoStatisticsService {
+
+    private final MeterRegistry meterRegistry;
+
+    private final MongoConnectionPoolMetrics connectionPoolMetrics;
+
+    private final SlowCommandLog slowCommandLog;
+
+    public MongoStatisticsService(MeterRegistry meterRegistry, MongoConnectionPoolMetrics connectionPoolMetrics,
+                                  SlowCommandLog slowCommandLog) {
+        this.meterRegistry = meterRegistry;
+        this.connectionPoolMetrics = connectionPoolMetrics;
+        this.slowCommandLog = slowCommandLog;
+    }
+
+    public Report getReport() {
+        Report report = new Report();
+        for (Timer timer : meterRegistry.find(MongoCommandMetrics.COMMANDS).timers()) {
+            CommandStatistics statistics = new CommandStatistics();
+            statistics.collection = timer.getId().getTag("collection");
+            statistics.command = timer.getId().getTag("command");
+            statistics.repositoryMethod = timer.getId().getTag("repository.method");
+            statistics.status = timer.getId().getTag("status");
+            statistics.count = timer.count();
+            statistics.totalMs = timer.totalTime(TimeUnit.MILLISECONDS);
+            statistics.meanMs = timer.mean(TimeUnit.MILLISECONDS);
+            statistics.maxMs = timer.max(TimeUnit.MILLISECONDS);
+            report.commands.add(statistics);
+        }
+        // the commands taking the most time overall first
+        report.commands.sort(Comparator.comparingDouble(CommandStatistics::getTotalMs).reversed());
+        Timer checkedOut = connectionPoolMetrics.getCheckedOut();
+        report.connectionPool.checkOuts = checkedOut.count();
+        report.connectionPool.waitMeanMs = checkedOut.mean(TimeUnit.MILLISECONDS);
+        report.connectionPool.waitMaxMs = checkedOut.max(TimeUnit.MILLISECONDS);
+        report.connectionPool.failures = connectionPoolMetrics.getFailed().count();
+        report.slowCommands.addAll(slowCommandLog.getCommands());
+        return report;
+    }
+
+    public static class Report {
+
+        private final List<CommandStatistics> commands = new ArrayList<>();
+
+        private final ConnectionPoolStatistics connectionPool = new ConnectionPoolStatistics();
+
+        private final List<SlowCommandLog.SlowCommand> slowCommands = new ArrayList<>();
+
+        public List<CommandStatistics> getCommands() {
+            return commands;
+        }
+
+        public ConnectionPoolStatistics getConnectionPool() {
+            return connectionPool;
+        }
+
+        /**
+         * @return the most recent slow commands, most recent first.
+         */
+        public List<SlowCommandLog.SlowCommand> getSlowCommands() {
+            return slowCommands;
+        }
+    }
+
+    public static class CommandStatistics {
+
+        private String collection;
+
+        private String command;
+
+        private String repositoryMethod;
+
+        private String status;
+
+        private long count;
+
+        private double totalMs;
+
+        private double meanMs;
+
+        private double maxMs;
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * @return the repository method which ran the commands, or {@code none} for the templates.
+         */
+        public String getRepositoryMethod() {
+            return repositoryMethod;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getTotalMs() {
+            return totalMs;
+        }
+
+        public double getMeanMs() {
+            return meanMs;
+        }
+
+        /**
+         * @return the maximum duration over the recent period of the timers.
+         */
+        public double getMaxMs() {
+            return maxMs;
+        }
+    }
+
+    public static class ConnectionPoolStatistics {
+
+        private long checkOuts;
+
+        private double waitMeanMs;
+
+        private double waitMaxMs;
+
+        private long failures;
+
+        public long getCheckOuts() {
+            return checkOuts;
+        }
+
+        public double getWaitMeanMs() {
+            return waitMeanMs;
+        }
+
+        public double getWaitMaxMs() {
+            return waitMaxMs;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+    }
+}
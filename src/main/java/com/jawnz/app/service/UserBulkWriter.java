@@ -0,0 +1,86 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.search.UserSearchRepository;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Writes batches of {@link User}s to MongoDB and Elasticsearch with one bulk request each.
+ * <p>
+ * When the {@link UserOutboxService outbox} is enabled, change events are recorded instead of indexing the
+ * users in Elasticsearch. Otherwise the cached search results are discarded once the users are indexed.
+ */
+@Service
+public class UserBulkWriter {
+
+    private final Logger log = LoggerFactory.getLogger(UserBulkWriter.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final UserSearchRepository userSearchRepository;
+
+    private final UserOutboxService userOutboxService;
+
+    private final UserSearchResultCache userSearchResultCache;
+
+    public UserBulkWriter(MongoTemplate mongoTemplate, UserSearchRepository userSearchRepository,
+                          UserOutboxService userOutboxService, UserSearchResultCache userSearchResultCache) {
+        this.mongoTemplate = mongoTemplate;
+        this.userSearchRepository = userSearchRepository;
+        this.userOutboxService = userOutboxService;
+        this.userSearchResultCache = userSearchResultCache;
+    }
+
+    /**
+     * Upserts the users by id in MongoDB, removing their null fields, then indexes them in Elasticsearch.
+     * <p>
+     * Bulk writes bypass the mapping lifecycle, so auditing fields must already be set on the users.
+     *
+     * @param users the users to write, which must all have an id.
+     */
+    public void write(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        if (userOutboxService.isEnabled()) {
+            userOutboxService.record(users);
+        }
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext()
+            .getRequiredPersistentEntity(User.class);
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        for (User user : users) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(user, document);
+            // the version is only ever incremented, so that the guarded partial updates see these writes
+            Update update = Update.fromDocument(document, "_id", "version").inc("version", 1);
+            // null fields are absent from the document, and must be removed as when the whole user is saved
+            entity.doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> {
+                String field = property.getFieldName();
+                if (!property.isIdProperty() && !"version".equals(field) && !document.containsKey(field)) {
+                    update.unset(field);
+                }
+            });
+            operations.upsert(Query.query(Criteria.where("_id").is(user.getId())), update);
+        }
+        operations.execute();
+        if (!userOutboxService.isEnabled()) {
+            userSearchRepository.saveAll(users);
+            userSearchResultCache.invalidate();
+        }
+        log.debug("Wrote {} users in bulk", users.size());
+    }
+}
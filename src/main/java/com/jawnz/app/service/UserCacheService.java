@@ -0,0 +1,45 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.UserRepository;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+
+/**
+ * Service evicting the cached state of a {@link User} after it has been written.
+ */
+@Service
+public class UserCacheService {
+
+    private final CacheManager cacheManager;
+
+    private final UserSyncStateService userSyncStateService;
+
+    private final UserLoginFilterService userLoginFilterService;
+
+    public UserCacheService(CacheManager cacheManager, UserSyncStateService userSyncStateService,
+                            UserLoginFilterService userLoginFilterService) {
+        this.cacheManager = cacheManager;
+        this.userSyncStateService = userSyncStateService;
+        this.userLoginFilterService = userLoginFilterService;
+    }
+
+    /**
+     * Evicts the user from the user caches and forgets its IdP synchronization state. The login of a new user is
+     * added to the login filter. Cached search results are discarded by {@link UserIndexerService} instead, once
+     * the change is indexed.
+     *
+     * @param user the user which has been written.
+     */
+    public void evict(User user) {
+        userLoginFilterService.add(user.getLogin());
+        userSyncStateService.invalidate(user.getLogin());
+        Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE)).evict(user.getLogin());
+        if (user.getEmail() != null) {
+            Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE)).evict(user.getEmail());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.KafkaProperties;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.UserRepository;
+import com.jawnz.app.repository.search.UserSearchRepository;
+import com.jawnz.app.service.dto.UserChangeEventDTO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.elasticsearch.ElasticsearchException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies the user changes published by {@link UserOutboxService} to the Elasticsearch index.
+ * <p>
+ * Each poll of the topic is indexed with one bulk request, using the version of the users, which every write
+ * increments, as external version so that a stale change never overwrites a newer document. Offsets are committed once the
+ * bulk request succeeded, so failed batches are consumed again, after a delay doubling with each consecutive
+ * failure up to {@code MAX_RETRY_DELAY}.
+ * <p>
+ * Events are recorded before their user is written, with the version the write produces, so they may be consumed
+ * before the write is visible: a user at a lower version than its event, or missing, is not indexed yet and the batch is consumed again without committing. After
+ * {@code write-grace-ms} the write is considered failed, and the current state is indexed, or removed.
+ */
+@Service
+public class UserIndexerService {
+
+    private static final String VERSION_CONFLICT = "version_conflict_engine_exception";
+
+    private static final Duration NOT_READY_DELAY = Duration.ofMillis(500);
+
+    private static final Duration MIN_RETRY_DELAY = Duration.ofMillis(500);
+
+    private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(30);
+
+    private final Logger log = LoggerFactory.getLogger(UserIndexerService.class);
+
+    private final ApplicationProperties.UserOutbox properties;
+
+    private final KafkaProperties kafkaProperties;
+
+    private final UserRepository userRepository;
+
+    private final UserSearchRepository userSearchRepository;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final ObjectMapper objectMapper;
+
+    private final UserSearchResultCache userSearchResultCache;
+
+    private final Counter indexedCounter;
+
+    private final Counter notReadyCounter;
+
+    private final AtomicLong lag = new AtomicLong();
+
+    private volatile KafkaConsumer<String, String> consumer;
+
+    private volatile boolean closed;
+
+    public UserIndexerService(ApplicationProperties applicationProperties, KafkaProperties kafkaProperties,
+                              UserRepository userRepository, UserSearchRepository userSearchRepository,
+                              ElasticsearchOperations elasticsearchOperations, ObjectMapper objectMapper,
+                              UserSearchResultCache userSearchResultCache, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getUserOutbox();
+        this.kafkaProperties = kafkaProperties;
+        this.userRepository = userRepository;
+        this.userSearchRepository = userSearchRepository;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.objectMapper = objectMapper;
+        this.userSearchResultCache = userSearchResultCache;
+        this.indexedCounter = meterRegistry.counter("user.indexer.indexed");
+        this.notReadyCounter = Counter.builder("user.indexer.not.ready")
+            .description("Batches consumed again as the write of a user was not visible yet")
+            .register(meterRegistry);
+        Gauge.builder("user.indexer.lag", lag, AtomicLong::get)
+            .description("Time between the recording of a user change and its indexing, in milliseconds, for the last batch")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Map<String, Object> consumerProps = kafkaProperties.getConsumerProps();
+        consumerProps.put("group.id", properties.getConsumerGroupId());
+        consumerProps.put("enable.auto.commit", "false");
+        consumerProps.put("max.poll.records", String.valueOf(properties.getBatchSize()));
+        consumer = new KafkaConsumer<>(consumerProps);
+        Thread thread = new Thread(this::consume, "user-indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        closed = true;
+        if (consumer != null) {
+            consumer.wakeup();
+        }
+    }
+
+    private void consume() {
+        int failures = 0;
+        try {
+            consumer.subscribe(Collections.singletonList(properties.getTopic()));
+            while (!closed) {
+                ConsumerRecords<String, String> records = consumer.poll(Duration.ofSeconds(1));
+                if (records.isEmpty()) {
+                    continue;
+                }
+                try {
+                    if (index(records)) {
+                        consumer.commitSync();
+                    } else {
+                        notReadyCounter.increment();
+                        rewind(records);
+                        Thread.sleep(NOT_READY_DELAY.toMillis());
+                    }
+                    failures = 0;
+                } catch (RuntimeException e) {
+                    Duration delay = retryDelay(++failures);
+                    log.warn("Could not index {} user changes, they will be retried in {} ms: {}", records.count(),
+                        delay.toMillis(), e.getMessage());
+                    rewind(records);
+                    Thread.sleep(delay.toMillis());
+                }
+            }
+        } catch (WakeupException e) {
+            if (!closed) {
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            consumer.close();
+        }
+    }
+
+    /**
+     * Returns the delay before retrying a batch, after a number of consecutive failures.
+     */
+    static Duration retryDelay(int failures) {
+        // bounds the shift, beyond which the maximum is reached anyway
+        Duration delay = MIN_RETRY_DELAY.multipliedBy(1L << Math.min(failures - 1, 16));
+        return delay.compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : delay;
+    }
+
+    private static long version(User user) {
+        // users written before versioning was introduced
+        return user.getVersion() == null ? 0 : user.getVersion();
+    }
+
+    private void rewind(ConsumerRecords<String, String> records) {
+        // to the last committed offsets
+        records.partitions().forEach(partition ->
+            consumer.seek(partition, records.records(partition).get(0).offset()));
+    }
+
+    /**
+     * Indexes the users of a batch of change events.
+     *
+     * @param records the change events.
+     * @return {@code false} if the write of a user is not visible yet, and the batch must be consumed again.
+     */
+    boolean index(ConsumerRecords<String, String> records) {
+        // the latest event of each user
+        Map<String, UserChangeEventDTO> events = new HashMap<>();
+        long oldestEvent = Long.MAX_VALUE;
+        for (ConsumerRecord<String, String> record : records) {
+            try {
+                UserChangeEventDTO event = objectMapper.readValue(record.value(), UserChangeEventDTO.class);
+                events.merge(event.getId(), event, (a, b) -> a.getVersion() >= b.getVersion() ? a : b);
+                oldestEvent = Math.min(oldestEvent, event.getCreatedAt().toEpochMilli());
+            } catch (IOException e) {
+                log.error("Skipping unreadable user change at offset {}: {}", record.offset(), e.getMessage());
+            }
+        }
+        Set<String> ids = events.keySet();
+        Map<String, User> users = new HashMap<>();
+        userRepository.findAllById(ids).forEach(user -> users.put(user.getId(), user));
+
+        long graceStart = Instant.now().toEpochMilli() - properties.getWriteGraceMs();
+        boolean ready = true;
+        List<User> indexed = new ArrayList<>(users.size());
+        Set<String> deleted = new HashSet<>();
+        for (UserChangeEventDTO event : events.values()) {
+            User user = users.get(event.getId());
+            boolean visible = user != null && version(user) >= event.getVersion();
+            if (!visible && event.getCreatedAt().toEpochMilli() > graceStart) {
+                log.debug("Write of user {} at version {} not visible yet", event.getId(), event.getVersion());
+                ready = false;
+            } else if (user != null) {
+                indexed.add(user);
+            } else {
+                deleted.add(event.getId());
+            }
+        }
+
+        List<IndexQuery> queries = new ArrayList<>(indexed.size());
+        for (User user : indexed) {
+            queries.add(new IndexQueryBuilder()
+                .withId(user.getId())
+                .withObject(user)
+                .withVersion(version(user))
+                .build());
+        }
+        if (!queries.isEmpty()) {
+            try {
+                elasticsearchOperations.bulkIndex(queries);
+            } catch (ElasticsearchException e) {
+                // a newer version of these users is already indexed
+                boolean onlyConflicts = e.getFailedDocuments() != null && !e.getFailedDocuments().isEmpty() &&
+                    e.getFailedDocuments().values().stream()
+                        .allMatch(failure -> failure != null && failure.contains(VERSION_CONFLICT));
+                if (!onlyConflicts) {
+                    throw e;
+                }
+            }
+        }
+        deleted.forEach(userSearchRepository::deleteById);
+        if (!indexed.isEmpty() || !deleted.isEmpty()) {
+            userSearchResultCache.invalidate();
+        }
+        indexedCounter.increment(indexed.size() + deleted.size());
+        if (ready && oldestEvent != Long.MAX_VALUE) {
+            lag.set(Instant.now().toEpochMilli() - oldestEvent);
+        }
+        log.debug("Indexed {} user changes", indexed.size() + deleted.size());
+        return ready;
+    }
+
+}
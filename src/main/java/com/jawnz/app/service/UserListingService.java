@@ -0,0 +1,100 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.Constants;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.service.dto.UserDTO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Service listing the managed users by pages chained with cursors, sorted by login then id.
+ * <p>
+ * A cursor holds the login and id of the last user of a page, and the next page is a range query from them over
+ * the {@code login_id} index, whose cost does not depend on how deep the page is, unlike a skip. The total is not
+ * counted unless asked for, and then estimated from the collection metadata.
+ */
+@Service
+public class UserListingService {
+
+    private static final String USER_COLLECTION = "jwn_user";
+
+    private final Logger log = LoggerFactory.getLogger(UserListingService.class);
+
+    private final ApplicationProperties.UserListing properties;
+
+    private final MongoTemplate mongoTemplate;
+
+    public UserListingService(ApplicationProperties applicationProperties, MongoTemplate mongoTemplate) {
+        this.properties = applicationProperties.getUserListing();
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Gets a page of the managed users.
+     *
+     * @param size the size of the page, capped by the configured maximum.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @param countTotal whether to estimate the total number of users.
+     * @return the page of users.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     */
+    public UserSearchService.Result list(int size, String cursor, boolean countTotal) {
+        log.debug("Request to list users, cursor {}", cursor);
+        int pageSize = Math.max(1, Math.min(size, properties.getMaxPageSize()));
+        Criteria criteria = where("login").ne(Constants.ANONYMOUS_USER);
+        if (cursor != null) {
+            String[] after = decodeCursor(cursor);
+            criteria = criteria.orOperator(
+                where("login").gt(after[0]),
+                where("login").is(after[0]).and("_id").gt(after[1]));
+        }
+        // one more user tells whether there is a next page
+        Query query = Query.query(criteria)
+            .with(Sort.by(Sort.Order.asc("login"), Sort.Order.asc("_id")))
+            .limit(pageSize + 1);
+        List<User> users = mongoTemplate.find(query, User.class);
+        String nextCursor = null;
+        if (users.size() > pageSize) {
+            users = users.subList(0, pageSize);
+            User last = users.get(pageSize - 1);
+            nextCursor = encodeCursor(last.getLogin(), last.getId());
+        }
+        Long total = countTotal ? mongoTemplate.getCollection(USER_COLLECTION).estimatedDocumentCount() : null;
+        return new UserSearchService.Result(users.stream().map(UserDTO::new).collect(Collectors.toList()), nextCursor,
+            total, false);
+    }
+
+    static String encodeCursor(String login, String id) {
+        // logins and ids have no spaces
+        String value = login + " " + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String[] decodeCursor(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(' ');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new String[] { value.substring(0, separator), value.substring(separator + 1) };
+        } catch (IllegalArgumentException e) {
+            // also covers malformed base64
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Service answering that a login definitely does not exist, without any I/O, with a {@link LoginBloomFilter} of
+ * the logins of the users.
+ * <p>
+ * The filter is periodically rebuilt from MongoDB, sized from the number of users, and the logins of the users
+ * written by this instance, or evicted from the caches by the other instances, are added to it in between. Until
+ * the first build, every login may exist.
+ * <p>
+ * The filter fails open: a login absent from it is still looked up in the database unless the filter is known to
+ * be complete, that is the application is the only writer of the users and the eviction broadcast has been received
+ * without interruption since the filter was built. Users inserted by migrations or other services, or by another
+ * instance while the broadcast was down, would otherwise be reported as absent until the next rebuild.
+ */
+@Service
+public class UserLoginFilterService {
+
+    private static final String USER_COLLECTION = "jwn_user";
+
+    private final Logger log = LoggerFactory.getLogger(UserLoginFilterService.class);
+
+    private final ApplicationProperties.UserLoginFilter properties;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Counter rejectedCounter;
+
+    private final Counter falsePositiveCounter;
+
+    private final Counter falseNegativeCounter;
+
+    private volatile LoginBloomFilter filter;
+
+    private Set<String> addedDuringRebuild;
+
+    private boolean broadcastListening;
+
+    private long broadcastInterruptions;
+
+    private volatile boolean complete;
+
+    public UserLoginFilterService(ApplicationProperties applicationProperties, MongoTemplate mongoTemplate,
+                                  MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getUserLoginFilter();
+        this.mongoTemplate = mongoTemplate;
+        this.rejectedCounter = Counter.builder("user.login.filter.rejected")
+            .description("Lookups of logins answered as absent by the filter, without I/O")
+            .register(meterRegistry);
+        this.falsePositiveCounter = Counter.builder("user.login.filter.false.positives")
+            .description("Lookups of logins passed by the filter which found no user")
+            .register(meterRegistry);
+        this.falseNegativeCounter = Counter.builder("user.login.filter.false.negatives")
+            .description("Users found in the database while absent from the filter, which was not complete")
+            .register(meterRegistry);
+        Gauge.builder("user.login.filter.complete", this, service -> service.isComplete() ? 1 : 0)
+            .description("1 when the logins absent from the filter are not looked up in the database")
+            .register(meterRegistry);
+        Gauge.builder("user.login.filter.expected.false.positive.rate", this,
+            service -> service.filter != null ? service.filter.expectedFalsePositiveRate() : 0)
+            .description("Rate of false positives of the filter, estimated from its ratio of set bits")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * Rebuilds the filter from the database.
+     */
+    @Scheduled(initialDelayString = "${application.user-login-filter.refresh-interval-ms:600000}",
+        fixedDelayString = "${application.user-login-filter.refresh-interval-ms:600000}")
+    public void rebuild() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        boolean listeningAtStart;
+        long interruptionsAtStart;
+        synchronized (this) {
+            addedDuringRebuild = new HashSet<>();
+            listeningAtStart = broadcastListening;
+            interruptionsAtStart = broadcastInterruptions;
+        }
+        LoginBloomFilter rebuilt;
+        long count;
+        try {
+            count = mongoTemplate.getCollection(USER_COLLECTION).estimatedDocumentCount();
+            // room for the users created until the next build
+            rebuilt = LoginBloomFilter.create(count + count / 10 + 1000, properties.getFalsePositiveRate());
+            Query query = new Query();
+            query.fields().include("login");
+            try (CloseableIterator<Document> iterator = mongoTemplate.stream(query, Document.class, USER_COLLECTION)) {
+                while (iterator.hasNext()) {
+                    Object login = iterator.next().get("login");
+                    if (login != null) {
+                        rebuilt.add(login.toString());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                addedDuringRebuild = null;
+            }
+            log.warn("Could not rebuild the login filter, keeping the previous one: {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            addedDuringRebuild.forEach(rebuilt::add);
+            addedDuringRebuild = null;
+            filter = rebuilt;
+            complete = listeningAtStart && broadcastInterruptions == interruptionsAtStart;
+        }
+        log.debug("Built the login filter of about {} users, {} bits and {} hash functions", count, rebuilt.bitCount(),
+            rebuilt.hashCount());
+    }
+
+    /**
+     * Adds the login of a user which was created, or may have been.
+     *
+     * @param login the login.
+     */
+    public synchronized void add(String login) {
+        if (login == null) {
+            return;
+        }
+        if (filter != null) {
+            filter.add(login);
+        }
+        if (addedDuringRebuild != null) {
+            addedDuringRebuild.add(login);
+        }
+    }
+
+    /**
+     * Records whether the evictions broadcast by the other instances are received. Once interrupted, the filter is
+     * not complete until it is rebuilt.
+     *
+     * @param listening whether the broadcast is received.
+     */
+    public synchronized void setBroadcastListening(boolean listening) {
+        if (broadcastListening && !listening) {
+            broadcastInterruptions++;
+            complete = false;
+        }
+        broadcastListening = listening;
+    }
+
+    /**
+     * @return whether every login absent from the filter is known to belong to no user.
+     */
+    public boolean isComplete() {
+        return properties.isSoleWriter() && complete;
+    }
+
+    /**
+     * @param login the login.
+     * @return {@code false} if no user has this login.
+     */
+    public boolean mightExist(String login) {
+        LoginBloomFilter current = filter;
+        if (current == null || !properties.isEnabled() || !isComplete() || current.mightContain(login)) {
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Records that a user was found with a login, adding it to the filter if it was missing.
+     *
+     * @param login the login.
+     */
+    public void found(String login) {
+        LoginBloomFilter current = filter;
+        if (current != null && properties.isEnabled() && login != null && !current.mightContain(login)) {
+            falseNegativeCounter.increment();
+            add(login);
+        }
+    }
+
+    /**
+     * Records that no user has a login, a false positive if the filter contains it.
+     *
+     * @param login the login.
+     */
+    public void notFound(String login) {
+        LoginBloomFilter current = filter;
+        if (current != null && properties.isEnabled() && login != null && current.mightContain(login)) {
+            falsePositiveCounter.increment();
+        }
+    }
+}
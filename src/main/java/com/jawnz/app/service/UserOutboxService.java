@@ -0,0 +1,171 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.KafkaProperties;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.service.dto.UserChangeEventDTO;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Outbox of user changes, relayed to Kafka for indexing by {@link UserIndexerService}.
+ * <p>
+ * When the outbox is enabled, writers record an event in the {@code jwn_user_outbox} collection just before
+ * writing the users, instead of indexing them in Elasticsearch. Events only carry the id and version of the
+ * user and the indexer reads the current state from MongoDB, so an event whose user write failed only causes
+ * a harmless re-index. The relay publishes pending events in insertion order and deletes them once Kafka has
+ * acknowledged them; several instances may relay the same event, which is idempotent for the indexer.
+ */
+@Service
+public class UserOutboxService {
+
+    static final String COLLECTION = "jwn_user_outbox";
+
+    private final Logger log = LoggerFactory.getLogger(UserOutboxService.class);
+
+    private final ApplicationProperties.UserOutbox properties;
+
+    private final KafkaProperties kafkaProperties;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final Counter recordedCounter;
+
+    private final Counter publishedCounter;
+
+    private KafkaProducer<String, String> producer;
+
+    public UserOutboxService(ApplicationProperties applicationProperties, KafkaProperties kafkaProperties,
+                             MongoTemplate mongoTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getUserOutbox();
+        this.kafkaProperties = kafkaProperties;
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.recordedCounter = meterRegistry.counter("user.outbox.recorded");
+        this.publishedCounter = meterRegistry.counter("user.outbox.published");
+        Gauge.builder("user.outbox.backlog", this, UserOutboxService::backlog)
+            .description("Estimated number of user changes waiting to be published")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (properties.isEnabled()) {
+            producer = new KafkaProducer<>(kafkaProperties.getProducerProps());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (producer != null) {
+            producer.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Records a change event for each user, with the version its write produces: writes increment the version
+     * of the user, which may be higher if another write of the user happened since it was read.
+     *
+     * @param users the users about to be written, at the version they were read.
+     */
+    public void record(Collection<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        Date now = new Date();
+        List<Document> events = new ArrayList<>(users.size());
+        for (User user : users) {
+            events.add(new Document("user_id", user.getId())
+                .append("login", user.getLogin())
+                .append("version", user.getVersion() == null ? 1 : user.getVersion() + 1)
+                .append("created_at", now));
+        }
+        mongoTemplate.getCollection(COLLECTION).insertMany(events);
+        recordedCounter.increment(events.size());
+    }
+
+    /**
+     * Publishes the pending events to Kafka.
+     */
+    @Scheduled(fixedDelayString = "${application.user-outbox.relay-interval-ms:1000}")
+    public void relay() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        List<Document> events;
+        do {
+            Query query = new Query().with(Sort.by("_id")).limit(properties.getBatchSize());
+            events = mongoTemplate.find(query, Document.class, COLLECTION);
+            if (!events.isEmpty() && !publish(events)) {
+                return;
+            }
+        } while (events.size() == properties.getBatchSize());
+    }
+
+    private boolean publish(List<Document> events) {
+        List<Future<RecordMetadata>> acknowledgements = new ArrayList<>(events.size());
+        List<ObjectId> ids = new ArrayList<>(events.size());
+        try {
+            for (Document event : events) {
+                UserChangeEventDTO change = new UserChangeEventDTO(event.getString("user_id"), event.getString("login"),
+                    event.getLong("version"), event.getDate("created_at").toInstant());
+                acknowledgements.add(producer.send(
+                    new ProducerRecord<>(properties.getTopic(), change.getId(), objectMapper.writeValueAsString(change))));
+                ids.add(event.getObjectId("_id"));
+            }
+            for (Future<RecordMetadata> acknowledgement : acknowledgements) {
+                acknowledgement.get();
+            }
+        } catch (JsonProcessingException | ExecutionException e) {
+            log.warn("Could not publish user changes, they will be retried: {}", e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        mongoTemplate.remove(Query.query(where("_id").in(ids)), COLLECTION);
+        publishedCounter.increment(ids.size());
+        log.debug("Published {} user changes", ids.size());
+        return true;
+    }
+
+    private double backlog() {
+        if (!properties.isEnabled()) {
+            return 0;
+        }
+        return mongoTemplate.getCollection(COLLECTION).estimatedDocumentCount();
+    }
+}
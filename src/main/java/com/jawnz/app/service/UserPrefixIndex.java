@@ -0,0 +1,150 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.service.dto.UserSuggestionDTO;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable in-memory prefix index of users, used for typeahead suggestions when Elasticsearch is unavailable.
+ * <p>
+ * This is a flattened trie: the normalized login, email, first name, last name and full name of each user are
+ * stored in one sorted array, so the keys sharing a prefix are contiguous and are found with a binary search.
+ * Compared to a node-per-character trie, it takes a few bytes per key on top of the strings themselves.
+ */
+public final class UserPrefixIndex {
+
+    static final UserPrefixIndex EMPTY = build(new ArrayList<>());
+
+    private static final byte LOGIN = 0;
+
+    private static final byte OTHER = 1;
+
+    /**
+     * Maximum number of keys looked at for one search, to bound the cost of very short prefixes.
+     */
+    private static final int MAX_SCAN = 2000;
+
+    private final String[] keys;
+
+    private final byte[] fields;
+
+    private final int[] refs;
+
+    private final UserSuggestionDTO[] users;
+
+    private UserPrefixIndex(String[] keys, byte[] fields, int[] refs, UserSuggestionDTO[] users) {
+        this.keys = keys;
+        this.fields = fields;
+        this.refs = refs;
+        this.users = users;
+    }
+
+    /**
+     * Builds the index of the given users.
+     *
+     * @param users the users to index.
+     * @return the index.
+     */
+    public static UserPrefixIndex build(Collection<UserSuggestionDTO> users) {
+        UserSuggestionDTO[] userArray = users.toArray(new UserSuggestionDTO[0]);
+        List<Entry> entries = new ArrayList<>(userArray.length * 4);
+        for (int i = 0; i < userArray.length; i++) {
+            UserSuggestionDTO user = userArray[i];
+            addEntry(entries, user.getLogin(), LOGIN, i);
+            addEntry(entries, user.getEmail(), OTHER, i);
+            addEntry(entries, user.getFirstName(), OTHER, i);
+            addEntry(entries, user.getLastName(), OTHER, i);
+            if (user.getFirstName() != null && user.getLastName() != null) {
+                addEntry(entries, user.getFirstName() + " " + user.getLastName(), OTHER, i);
+            }
+        }
+        entries.sort(Comparator.comparing(entry -> entry.key));
+        String[] keys = new String[entries.size()];
+        byte[] fields = new byte[entries.size()];
+        int[] refs = new int[entries.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Entry entry = entries.get(i);
+            keys[i] = entry.key;
+            fields[i] = entry.field;
+            refs[i] = entry.ref;
+        }
+        return new UserPrefixIndex(keys, fields, refs, userArray);
+    }
+
+    private static void addEntry(List<Entry> entries, String value, byte field, int ref) {
+        String key = normalize(value);
+        if (!key.isEmpty()) {
+            entries.add(new Entry(key, field, ref));
+        }
+    }
+
+    /**
+     * Normalizes a value for prefix matching: trimmed, lowercased and without accents.
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return StringUtils.stripAccents(value.trim()).toLowerCase(Locale.ENGLISH);
+    }
+
+    public int size() {
+        return users.length;
+    }
+
+    /**
+     * Finds the users with a login, email or name starting with the prefix.
+     * <p>
+     * Exact matches come first, then matches on the login, then the others, each group sorted by login.
+     *
+     * @param prefix the prefix to look for.
+     * @param limit the maximum number of users to return.
+     * @return the matching users.
+     */
+    public List<UserSuggestionDTO> search(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int position = Arrays.binarySearch(keys, normalized);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        Map<Integer, Integer> ranks = new HashMap<>();
+        for (int i = position, end = Math.min(keys.length, position + MAX_SCAN); i < end && keys[i].startsWith(normalized); i++) {
+            int rank = (keys[i].length() == normalized.length() ? 0 : 2) + fields[i];
+            ranks.merge(refs[i], rank, Math::min);
+        }
+        return ranks.entrySet().stream()
+            .sorted(Map.Entry.<Integer, Integer>comparingByValue()
+                .thenComparing(entry -> StringUtils.defaultString(users[entry.getKey()].getLogin())))
+            .limit(limit)
+            .map(entry -> users[entry.getKey()])
+            .collect(Collectors.toList());
+    }
+
+    private static final class Entry {
+
+        private final String key;
+
+        private final byte field;
+
+        private final int ref;
+
+        private Entry(String key, byte field, int ref) {
+            this.key = key;
+            this.field = field;
+            this.ref = ref;
+        }
+    }
+}
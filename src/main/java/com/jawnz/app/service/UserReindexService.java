@@ -0,0 +1,598 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.domain.User;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.searchbox.action.GenericResultAbstractAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.config.ElasticsearchVersion;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.Index;
+import io.searchbox.params.Parameters;
+import io.searchbox.indices.settings.UpdateSettings;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.annotations.Setting;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.MappingBuilder;
+import org.springframework.data.elasticsearch.core.ResourceUtil;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Rebuilds the Elasticsearch index of the users from MongoDB.
+ * <p>
+ * The {@code jwn_user} collection is split into id ranges of roughly the same size, which are streamed in
+ * parallel with a MongoDB cursor each. Every slice converts its users to JSON on its own thread and sends bulk
+ * requests of a bounded size in bytes to a new versioned index, {@code user_v<timestamp>}, created with the
+ * settings and mapping declared on {@link User} and without refresh nor replicas. Once all the slices are done, the users modified
+ * since the start are indexed again, the index settings are restored and the {@code user} alias is atomically
+ * moved to the new index. The users modified during this catch-up, which were indexed into the previous index, are
+ * indexed again once the alias was moved. Users are indexed with their version, which every write increments, as
+ * external version, so that the catch-ups never overwrite a newer change indexed in the meantime.
+ * <p>
+ * The reindex is aborted, and the new index deleted, as soon as a user cannot be indexed. Only one instance of
+ * the cluster runs a reindex at a time.
+ */
+@Service
+public class UserReindexService {
+
+    static final String JOB_NAME = "user-reindex";
+
+    private static final String USER_COLLECTION = "jwn_user";
+
+    /**
+     * Each slice has its own thread and MongoDB cursor.
+     */
+    static final int MAX_SLICES = 16;
+
+    /**
+     * Margin for the clocks of the instances writing the users, when looking for the users modified since a time.
+     */
+    private static final Duration CATCH_UP_MARGIN = Duration.ofMinutes(1);
+
+    private static final int VERSION_CONFLICT = 409;
+
+    private final Logger log = LoggerFactory.getLogger(UserReindexService.class);
+
+    private final ApplicationProperties.UserReindex properties;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final JestClient jestClient;
+
+    private final EntityMapper entityMapper;
+
+    private final ElasticsearchConverter elasticsearchConverter;
+
+    private final ObjectMapper objectMapper;
+
+    private final JobLockService jobLockService;
+
+    private final UserSearchResultCache userSearchResultCache;
+
+    private final Timer bulkTimer;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Status status = new Status();
+
+    public UserReindexService(ApplicationProperties applicationProperties, MongoTemplate mongoTemplate,
+                              ElasticsearchOperations elasticsearchOperations, JestClient jestClient,
+                              EntityMapper entityMapper, ElasticsearchConverter elasticsearchConverter,
+                              ObjectMapper objectMapper, JobLockService jobLockService,
+                              UserSearchResultCache userSearchResultCache, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getUserReindex();
+        this.mongoTemplate = mongoTemplate;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.jestClient = jestClient;
+        this.entityMapper = entityMapper;
+        this.elasticsearchConverter = elasticsearchConverter;
+        this.objectMapper = objectMapper;
+        this.jobLockService = jobLockService;
+        this.userSearchResultCache = userSearchResultCache;
+        this.bulkTimer = Timer.builder("user.reindex.bulk")
+            .description("Time taken to send a bulk request of the user reindex")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Starts a reindex in the background.
+     *
+     * @param slices the number of slices to process in parallel, or {@code null} for the configured one.
+     * @param maxDocsPerSecond the maximum indexing rate, or {@code null} for the configured one, {@code 0} for no limit.
+     * @return {@code false} if a reindex is already running on this instance.
+     */
+    public boolean start(Integer slices, Integer maxDocsPerSecond) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Status current = new Status();
+        current.running = true;
+        current.startedAt = Instant.now();
+        current.slices = slices(slices, properties.getSlices());
+        current.maxDocsPerSecond = maxDocsPerSecond != null ? maxDocsPerSecond : properties.getMaxDocsPerSecond();
+        status = current;
+        Thread thread = new Thread(() -> run(current), "user-reindex");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * @param requested the requested number of slices, or {@code null}.
+     * @param configured the configured number of slices.
+     * @return the number of slices to process, between 1 and {@link #MAX_SLICES}.
+     */
+    static int slices(Integer requested, int configured) {
+        return Math.min(MAX_SLICES, Math.max(1, requested != null ? requested : configured));
+    }
+
+    /**
+     * Changes the maximum indexing rate of the running reindex.
+     *
+     * @param maxDocsPerSecond the maximum number of users indexed per second, {@code 0} for no limit.
+     */
+    public void throttle(int maxDocsPerSecond) {
+        status.maxDocsPerSecond = Math.max(0, maxDocsPerSecond);
+    }
+
+    /**
+     * Cancels the running reindex, the new index is deleted and the alias is left untouched.
+     *
+     * @return {@code false} if no reindex is running on this instance.
+     */
+    public boolean cancel() {
+        Status current = status;
+        if (!current.running) {
+            return false;
+        }
+        current.cancelled = true;
+        return true;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    private void run(Status current) {
+        try {
+            if (!jobLockService.tryLock(JOB_NAME, lockLease())) {
+                current.error = "A reindex is running on another instance";
+                return;
+            }
+            try {
+                reindex(current);
+            } finally {
+                jobLockService.unlock(JOB_NAME);
+            }
+        } catch (RuntimeException | IOException e) {
+            current.error = e.getMessage();
+            log.error("User reindex failed: {}", e.getMessage());
+            deleteQuietly(current.index);
+        } finally {
+            current.running = false;
+            current.finishedAt = Instant.now();
+            running.set(false);
+        }
+    }
+
+    private void reindex(Status current) throws IOException {
+        ElasticsearchPersistentEntity<?> entity = elasticsearchOperations.getPersistentEntityFor(User.class);
+        String alias = entity.getIndexName();
+        String type = entity.getIndexType();
+        String index = alias + "_v" + current.startedAt.toEpochMilli();
+        current.index = index;
+        current.total = mongoTemplate.getCollection(USER_COLLECTION).estimatedDocumentCount();
+        log.info("Reindexing about {} users into {} with {} slices", current.total, index, current.slices);
+
+        Map<String, Object> liveSettings = elasticsearchOperations.indexExists(alias) ?
+            elasticsearchOperations.getSetting(alias) : Collections.emptyMap();
+        createIndex(index, type, liveSettings);
+
+        List<Object> boundaries = sliceBoundaries(current.slices);
+        ExecutorService executor = Executors.newFixedThreadPool(boundaries.size() + 1);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i <= boundaries.size(); i++) {
+                Criteria range = where("_id");
+                if (i > 0) {
+                    range = range.gte(boundaries.get(i - 1));
+                }
+                if (i < boundaries.size()) {
+                    range = range.lt(boundaries.get(i));
+                }
+                Query query = i == 0 && boundaries.isEmpty() ? new Query() : Query.query(range);
+                futures.add(CompletableFuture.runAsync(() -> indexSlice(query, index, type, current), executor));
+            }
+            awaitSlices(CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])));
+        } finally {
+            executor.shutdownNow();
+        }
+        // users written during the reindex may have been missed by their slice
+        Instant catchUpStart = Instant.now();
+        indexModifiedSince(current.startedAt, index, type, current);
+        if (current.cancelled) {
+            log.info("User reindex cancelled, deleting {}", index);
+            deleteQuietly(index);
+            return;
+        }
+
+        restoreSettings(index, liveSettings);
+        elasticsearchOperations.refresh(index);
+        String previous = swapAlias(alias, index, liveSettings);
+        // users written during the first catch-up were indexed into the previous index
+        try {
+            indexModifiedSince(catchUpStart, index, type, current);
+        } catch (RuntimeException e) {
+            // the new index is live and must be kept
+            current.error = "Users modified during the reindex may be stale: " + e.getMessage();
+            log.error("Could not index the users modified during the reindex into {}: {}", index, e.getMessage());
+        }
+        userSearchResultCache.invalidate();
+        if (previous != null && !previous.equals(alias)) {
+            deleteQuietly(previous);
+        }
+        log.info("User reindex done: {} users indexed into {} at {} users/s", current.getIndexed(), index,
+            Math.round(current.getDocsPerSecond()));
+    }
+
+    /**
+     * Creates the index with the settings and mapping declared on {@link User}, so that a reindex also applies
+     * mapping changes. The number of shards of the live index is kept.
+     */
+    @SuppressWarnings("unchecked")
+    private void createIndex(String index, String type, Map<String, Object> liveSettings) throws IOException {
+        Setting setting = User.class.getAnnotation(Setting.class);
+        Map<String, Object> settings = setting == null ? new HashMap<>() :
+            objectMapper.readValue(ResourceUtil.readFileFromClasspath(setting.settingPath()), HashMap.class);
+        if (liveSettings.containsKey("index.number_of_shards")) {
+            settings.put("number_of_shards", liveSettings.get("index.number_of_shards"));
+        }
+        settings.put("refresh_interval", "-1");
+        settings.put("number_of_replicas", "0");
+        elasticsearchOperations.createIndex(index, settings);
+        elasticsearchOperations.putMapping(index, type, new MappingBuilder(elasticsearchConverter).buildPropertyMapping(User.class));
+    }
+
+    private void restoreSettings(String index, Map<String, Object> liveSettings) throws IOException {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("refresh_interval", liveSettings.getOrDefault("index.refresh_interval", "1s"));
+        settings.put("number_of_replicas", liveSettings.getOrDefault("index.number_of_replicas", "1"));
+        JestResult result = jestClient.execute(new UpdateSettings.Builder(
+            Collections.singletonMap("index", settings)).addIndex(index).build());
+        if (!result.isSucceeded()) {
+            throw new IllegalStateException("Could not restore the settings of " + index + ": " + result.getErrorMessage());
+        }
+    }
+
+    /**
+     * Points the alias to the new index, removing it from the previous one in the same request.
+     *
+     * @return the name of the index previously behind the alias, if any.
+     */
+    private String swapAlias(String alias, String index, Map<String, Object> liveSettings) throws IOException {
+        List<Map<String, Object>> actions = new ArrayList<>();
+        String previous = (String) liveSettings.get("index.provided_name");
+        if (alias.equals(previous)) {
+            // the live index was created by Spring Data before the first reindex: it is replaced by the alias
+            actions.add(Collections.singletonMap("remove_index", Collections.singletonMap("index", alias)));
+        } else if (previous != null) {
+            Map<String, Object> remove = new LinkedHashMap<>();
+            remove.put("index", previous);
+            remove.put("alias", alias);
+            actions.add(Collections.singletonMap("remove", remove));
+        }
+        Map<String, Object> add = new LinkedHashMap<>();
+        add.put("index", index);
+        add.put("alias", alias);
+        actions.add(Collections.singletonMap("add", add));
+        JestResult result = jestClient.execute(new UpdateAliases(Collections.singletonMap("actions", actions)));
+        if (!result.isSucceeded()) {
+            throw new IllegalStateException("Could not move alias " + alias + " to " + index + ": " + result.getErrorMessage());
+        }
+        return previous;
+    }
+
+    /**
+     * Computes the ids splitting the users in slices of roughly the same size.
+     */
+    /**
+     * Returns the ids splitting the collection into slices of roughly the same size, as they are stored.
+     * <p>
+     * Range queries only match the ids of the type of their bounds, so the collection is read as a single slice
+     * when its ids have several types, such as the string ids of the IdP and the object ids of other writers.
+     * Ids are sorted by type first, so the first and last ids have the same type only if all the ids do.
+     */
+    List<Object> sliceBoundaries(int slices) {
+        long count = mongoTemplate.getCollection(USER_COLLECTION).estimatedDocumentCount();
+        List<Object> boundaries = new ArrayList<>();
+        if (count <= slices) {
+            return boundaries;
+        }
+        Object first = idAt(Sort.Direction.ASC, 0);
+        Object last = idAt(Sort.Direction.DESC, 0);
+        if (first == null || last == null || first.getClass() != last.getClass()) {
+            log.warn("User ids are of several types, reindexing them with a single slice");
+            return boundaries;
+        }
+        for (int i = 1; i < slices; i++) {
+            Object boundary = idAt(Sort.Direction.ASC, count * i / slices);
+            if (boundary != null && (boundaries.isEmpty() || !boundaries.get(boundaries.size() - 1).equals(boundary))) {
+                boundaries.add(boundary);
+            }
+        }
+        return boundaries;
+    }
+
+    private Object idAt(Sort.Direction direction, long position) {
+        Query query = new Query().with(Sort.by(direction, "_id")).skip(position).limit(1);
+        query.fields().include("_id");
+        Document document = mongoTemplate.findOne(query, Document.class, USER_COLLECTION);
+        return document == null ? null : document.get("_id");
+    }
+
+    private void awaitSlices(CompletableFuture<Void> slices) {
+        while (true) {
+            try {
+                slices.get(1, TimeUnit.MINUTES);
+                return;
+            } catch (TimeoutException e) {
+                jobLockService.extend(JOB_NAME, lockLease());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the reindex slices", e);
+            }
+        }
+    }
+
+    private void indexModifiedSince(Instant since, String index, String type, Status current) {
+        indexSlice(Query.query(where("last_modified_date").gte(since.minus(CATCH_UP_MARGIN))), index, type, current);
+    }
+
+    private void indexSlice(Query query, String index, String type, Status current) {
+        query.with(Sort.by("_id"));
+        query.cursorBatchSize(1000);
+        List<Index> actions = new ArrayList<>();
+        long bytes = 0;
+        try (CloseableIterator<User> users = mongoTemplate.stream(query, User.class)) {
+            while (users.hasNext() && !current.cancelled) {
+                User user = users.next();
+                String source = entityMapper.mapToString(user);
+                Index.Builder action = new Index.Builder(source).id(user.getId());
+                if (user.getVersion() != null) {
+                    action.setParameter(Parameters.VERSION, user.getVersion())
+                        .setParameter(Parameters.VERSION_TYPE, "external_gte");
+                }
+                actions.add(action.build());
+                bytes += source.getBytes(StandardCharsets.UTF_8).length;
+                if (bytes >= properties.getBulkSizeBytes()) {
+                    sendBulk(actions, index, type, current);
+                    actions.clear();
+                    bytes = 0;
+                }
+            }
+            if (!actions.isEmpty() && !current.cancelled) {
+                sendBulk(actions, index, type, current);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not index users into " + index + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void sendBulk(List<Index> actions, String index, String type, Status current) throws IOException {
+        long start = System.nanoTime();
+        BulkResult result = jestClient.execute(new Bulk.Builder()
+            .defaultIndex(index)
+            .defaultType(type)
+            .addAction(actions)
+            .build());
+        bulkTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        if (!result.isSucceeded() && result.getFailedItems().isEmpty()) {
+            throw new IOException(result.getErrorMessage());
+        }
+        // a newer version of these users is already indexed
+        List<BulkResult.BulkResultItem> failures = result.getFailedItems().stream()
+            .filter(item -> item.status != VERSION_CONFLICT)
+            .collect(Collectors.toList());
+        current.indexedCount.addAndGet(actions.size() - failures.size());
+        current.failedCount.addAndGet(failures.size());
+        if (!failures.isEmpty()) {
+            throw new IOException(failures.size() + " users could not be indexed into " + index + ", first error: " +
+                failures.get(0).error);
+        }
+        throttle(current);
+    }
+
+    private void throttle(Status current) {
+        long delay = throttleDelayMillis(current.indexedCount.get(),
+            Duration.between(current.startedAt, Instant.now()).toMillis(), current.maxDocsPerSecond);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                current.cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * Computes how long to wait for the indexing rate to go back under the limit.
+     *
+     * @param indexed the number of users indexed so far.
+     * @param elapsedMillis the time elapsed since the start of the reindex.
+     * @param maxDocsPerSecond the maximum indexing rate, {@code 0} for no limit.
+     * @return the delay in milliseconds.
+     */
+    static long throttleDelayMillis(long indexed, long elapsedMillis, int maxDocsPerSecond) {
+        if (maxDocsPerSecond <= 0) {
+            return 0;
+        }
+        return Math.max(0, indexed * 1000 / maxDocsPerSecond - elapsedMillis);
+    }
+
+    private void deleteQuietly(String index) {
+        if (index == null) {
+            return;
+        }
+        try {
+            if (elasticsearchOperations.indexExists(index)) {
+                elasticsearchOperations.deleteIndex(index);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not delete index {}: {}", index, e.getMessage());
+        }
+    }
+
+    private Duration lockLease() {
+        return Duration.ofMinutes(properties.getLockLeaseMinutes());
+    }
+
+    /**
+     * Atomic update of the aliases, with support for the {@code remove_index} action.
+     */
+    private static class UpdateAliases extends GenericResultAbstractAction {
+
+        UpdateAliases(Map<String, Object> body) {
+            this.payload = body;
+        }
+
+        @Override
+        protected String buildURI(ElasticsearchVersion elasticsearchVersion) {
+            return "/_aliases";
+        }
+
+        @Override
+        public String getRestMethodName() {
+            return "POST";
+        }
+
+        @Override
+        public String getData(Gson gson) {
+            return gson.toJson(payload);
+        }
+    }
+
+    /**
+     * Progress of the current, or last, reindex on this instance.
+     */
+    public static class Status {
+
+        private volatile boolean running;
+
+        private volatile boolean cancelled;
+
+        private volatile String index;
+
+        private volatile Instant startedAt;
+
+        private volatile Instant finishedAt;
+
+        private volatile int slices;
+
+        private volatile int maxDocsPerSecond;
+
+        private volatile long total;
+
+        private final AtomicLong indexedCount = new AtomicLong();
+
+        private final AtomicInteger failedCount = new AtomicInteger();
+
+        private volatile String error;
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public String getIndex() {
+            return index;
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public Instant getFinishedAt() {
+            return finishedAt;
+        }
+
+        public int getSlices() {
+            return slices;
+        }
+
+        public int getMaxDocsPerSecond() {
+            return maxDocsPerSecond;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getIndexed() {
+            return indexedCount.get();
+        }
+
+        public int getFailed() {
+            return failedCount.get();
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public double getDocsPerSecond() {
+            if (startedAt == null) {
+                return 0;
+            }
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+            return indexedCount.get() * 1000.0 / millis;
+        }
+    }
+}
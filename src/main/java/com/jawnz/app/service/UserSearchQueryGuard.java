@@ -0,0 +1,292 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.security.SecurityUtils;
+import com.jawnz.app.service.UserSearchRejectedException.Reason;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+
+/**
+ * Admission control of the user searches.
+ * <p>
+ * Query strings are parsed to reject the constructs which are expensive to run whatever the size of the
+ * index: regular expressions, leading wildcards, and queries with too many clauses or wildcard terms. Admitted
+ * queries are built with bounded fuzzy and wildcard expansions. Each principal may only run a few searches at a
+ * time: the searches running are counted by principal, and a principal is forgotten once its searches are done.
+ */
+@Service
+public class UserSearchQueryGuard {
+
+    private static final Set<String> OPERATORS = new HashSet<>(Arrays.asList("AND", "OR", "NOT", "&&", "||", "!"));
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private final Logger log = LoggerFactory.getLogger(UserSearchQueryGuard.class);
+
+    private final ApplicationProperties.UserSearch properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Counter timedOutCounter;
+
+    private final Map<String, Integer> running = new ConcurrentHashMap<>();
+
+    public UserSearchQueryGuard(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getUserSearch();
+        this.meterRegistry = meterRegistry;
+        this.timedOutCounter = Counter.builder("user.search.timed.out")
+            .description("User searches which exceeded their time budget and returned partial results")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Checks the cost of a query string and builds the corresponding query.
+     *
+     * @param query the query string, or blank for all users.
+     * @return the query to run.
+     * @throws UserSearchRejectedException if the query is malformed or too expensive.
+     */
+    public QueryBuilder admit(String query) {
+        if (StringUtils.isBlank(query)) {
+            return matchAllQuery();
+        }
+        if (query.length() > properties.getMaxQueryLength()) {
+            throw reject(Reason.TOO_LONG, "The query is longer than " + properties.getMaxQueryLength() + " characters");
+        }
+        Analysis analysis;
+        try {
+            analysis = analyze(query);
+        } catch (UserSearchRejectedException e) {
+            throw reject(e.getReason(), e.getMessage());
+        }
+        if (analysis.regexes > 0) {
+            throw reject(Reason.REGEX, "Regular expressions are not allowed");
+        }
+        if (analysis.leadingWildcards > 0) {
+            throw reject(Reason.LEADING_WILDCARD, "Terms cannot start with a wildcard");
+        }
+        if (analysis.wildcardTerms > properties.getMaxWildcardTerms()) {
+            throw reject(Reason.TOO_MANY_WILDCARDS, "The query has more than " + properties.getMaxWildcardTerms() + " wildcard terms");
+        }
+        if (analysis.clauses > properties.getMaxClauses()) {
+            throw reject(Reason.TOO_MANY_CLAUSES, "The query has more than " + properties.getMaxClauses() + " clauses");
+        }
+        return queryStringQuery(query.trim().replaceAll("\\s+", " "))
+            .allowLeadingWildcard(false)
+            .analyzeWildcard(false)
+            .fuzzyMaxExpansions(10)
+            .maxDeterminizedStates(1000);
+    }
+
+    /**
+     * Runs a search within the concurrency limit of the current principal.
+     *
+     * @param search the search to run.
+     * @param <T> the type of the result.
+     * @return the result of the search.
+     * @throws UserSearchRejectedException if the principal is already running too many searches.
+     */
+    public <T> T run(Supplier<T> search) {
+        String principal = SecurityUtils.getCurrentUserLogin().orElse(ANONYMOUS);
+        boolean[] admitted = new boolean[1];
+        running.compute(principal, (key, count) -> {
+            int current = count == null ? 0 : count;
+            admitted[0] = current < properties.getMaxConcurrentPerPrincipal();
+            return admitted[0] ? current + 1 : count;
+        });
+        if (!admitted[0]) {
+            throw reject(Reason.TOO_MANY_CONCURRENT_SEARCHES, "Too many concurrent searches, please retry later");
+        }
+        try {
+            return search.get();
+        } finally {
+            running.computeIfPresent(principal, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Returns the number of principals running searches.
+     */
+    int principalsRunning() {
+        return running.size();
+    }
+
+    /**
+     * Records a search which exceeded its time budget.
+     */
+    public void recordTimeout() {
+        timedOutCounter.increment();
+    }
+
+    private UserSearchRejectedException reject(Reason reason, String message) {
+        log.debug("Rejected user search: {}", message);
+        meterRegistry.counter("user.search.rejected", "reason", reason.name().toLowerCase(Locale.ENGLISH)).increment();
+        return new UserSearchRejectedException(reason, message);
+    }
+
+    /**
+     * Parses a query string with the syntax of Lucene, counting its clauses by kind.
+     */
+    static Analysis analyze(String query) {
+        Analysis analysis = new Analysis();
+        int depth = 0;
+        int i = 0;
+        int length = query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                if (--depth < 0) {
+                    throw malformed("Unbalanced parenthesis");
+                }
+                i++;
+            } else if (c == '"') {
+                int end = closing(query, i + 1, '"');
+                if (end < 0) {
+                    throw malformed("Unbalanced quote");
+                }
+                analysis.clauses++;
+                i = end + 1;
+            } else {
+                i = readTerm(query, i, analysis);
+            }
+        }
+        if (depth != 0) {
+            throw malformed("Unbalanced parenthesis");
+        }
+        return analysis;
+    }
+
+    private static int readTerm(String query, int start, Analysis analysis) {
+        StringBuilder term = new StringBuilder();
+        boolean regex = false;
+        int i = start;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (c == '\\') {
+                term.append(query, i, Math.min(i + 2, query.length()));
+                i += 2;
+            } else if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '"') {
+                break;
+            } else if (c == '[' || c == '{') {
+                int end = StringUtils.indexOfAny(query.substring(i + 1), ']', '}');
+                if (end < 0) {
+                    throw malformed("Unbalanced range");
+                }
+                term.append(query, i, i + end + 2);
+                i += end + 2;
+            } else if (c == '/' && (term.length() == 0 || term.charAt(term.length() - 1) == ':')) {
+                int end = closing(query, i + 1, '/');
+                if (end < 0) {
+                    throw malformed("Unbalanced regular expression");
+                }
+                regex = true;
+                i = end + 1;
+            } else {
+                term.append(c);
+                i++;
+            }
+        }
+        classify(term.toString(), regex, analysis);
+        return i;
+    }
+
+    private static void classify(String term, boolean regex, Analysis analysis) {
+        if (regex) {
+            analysis.regexes++;
+            return;
+        }
+        if (OPERATORS.contains(term)) {
+            return;
+        }
+        String value = StringUtils.stripStart(term, "+-!");
+        int field = unescapedIndexOf(value, ':');
+        if (field >= 0) {
+            value = value.substring(field + 1);
+        }
+        if (value.isEmpty()) {
+            // a field name followed by a phrase or a group
+            return;
+        }
+        analysis.clauses++;
+        if (value.equals("*") || value.charAt(0) == '[' || value.charAt(0) == '{') {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '*' || c == '?') {
+                if (i == 0) {
+                    analysis.leadingWildcards++;
+                } else {
+                    analysis.wildcardTerms++;
+                }
+                return;
+            }
+        }
+    }
+
+    private static int closing(String query, int from, char delimiter) {
+        for (int i = from; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == delimiter) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int unescapedIndexOf(String value, char searched) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == searched) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static UserSearchRejectedException malformed(String message) {
+        return new UserSearchRejectedException(Reason.MALFORMED, message);
+    }
+
+    /**
+     * Counts of the clauses of a query string, by kind.
+     */
+    static final class Analysis {
+
+        int clauses;
+
+        int wildcardTerms;
+
+        int leadingWildcards;
+
+        int regexes;
+    }
+}
@@ -0,0 +1,33 @@
+package com.jawnz.app.service;
+
+/**
+ * Thrown when a user search is not admitted by {@link UserSearchQueryGuard}.
+ */
+public class UserSearchRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why a search was rejected.
+     */
+    public enum Reason {
+        MALFORMED,
+        TOO_LONG,
+        TOO_MANY_CLAUSES,
+        TOO_MANY_WILDCARDS,
+        LEADING_WILDCARD,
+        REGEX,
+        TOO_MANY_CONCURRENT_SEARCHES
+    }
+
+    private final Reason reason;
+
+    public UserSearchRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
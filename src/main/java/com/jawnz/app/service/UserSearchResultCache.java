@@ -0,0 +1,157 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of user search results.
+ * <p>
+ * Results are cached by normalized query and page for at most {@code cache-ttl-ms}. Writers indexing users
+ * synchronously call {@link #invalidate()} once the users are searchable, and so does {@link UserIndexerService}
+ * with the outbox, which discards the cached results of the instance at once, including the ones of searches
+ * running meanwhile. Other instances are not notified, and serve their cached results until they expire.
+ */
+@Service
+public class UserSearchResultCache {
+
+    private final Logger log = LoggerFactory.getLogger(UserSearchResultCache.class);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong savedNanos = new AtomicLong();
+
+    private final ApplicationProperties.UserSearch properties;
+
+    private final Clock clock;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    @Autowired
+    public UserSearchResultCache(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this(applicationProperties, meterRegistry, Clock.systemUTC());
+    }
+
+    UserSearchResultCache(ApplicationProperties applicationProperties, MeterRegistry meterRegistry, Clock clock) {
+        this.properties = applicationProperties.getUserSearch();
+        this.clock = clock;
+        this.hitCounter = meterRegistry.counter("user.search.cache.requests", "result", "hit");
+        this.missCounter = meterRegistry.counter("user.search.cache.requests", "result", "miss");
+        Gauge.builder("user.search.cache.hit.ratio", this, UserSearchResultCache::hitRatio)
+            .description("Ratio of user searches answered from the cache")
+            .register(meterRegistry);
+        FunctionCounter.builder("user.search.cache.saved", savedNanos, nanos -> nanos.get() / 1_000_000.0)
+            .description("Elasticsearch time saved by cache hits, based on the time taken by the original searches")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Gets a cached result, or computes and caches it.
+     *
+     * @param query the query of the search, normalized by this method.
+     * @param page the parameters of the page, such as its size and cursor.
+     * @param loader the search to run on a miss.
+     * @param <T> the type of the result.
+     * @return the result.
+     */
+    public <T> T get(String query, String page, Supplier<T> loader) {
+        return get(query, page, loader, value -> true);
+    }
+
+    /**
+     * Gets a cached result, or computes it and caches it if it is complete.
+     *
+     * @param query the query of the search, normalized by this method.
+     * @param page the parameters of the page, such as its size and cursor.
+     * @param loader the search to run on a miss.
+     * @param cacheable whether a computed result can be cached.
+     * @param <T> the type of the result.
+     * @return the result.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String query, String page, Supplier<T> loader, Predicate<T> cacheable) {
+        if (properties.getCacheTtlMs() <= 0) {
+            return loader.get();
+        }
+        String key = normalize(query) + '\u0000' + page;
+        long currentGeneration = generation.get();
+        long now = clock.millis();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.generation == currentGeneration && entry.expiresAt > now) {
+            hitCounter.increment();
+            savedNanos.addAndGet(entry.loadNanos);
+            return (T) entry.value;
+        }
+        missCounter.increment();
+        long start = System.nanoTime();
+        T value = loader.get();
+        long loadNanos = System.nanoTime() - start;
+        // changes indexed during the search may not be visible in the result
+        if (generation.get() == currentGeneration && cacheable.test(value)) {
+            if (entries.size() >= properties.getCacheMaxEntries() && !entries.containsKey(key)) {
+                log.debug("User search cache is full ({} entries), clearing it", entries.size());
+                entries.clear();
+            }
+            entries.put(key, new Entry(value, currentGeneration, now + properties.getCacheTtlMs(), loadNanos));
+        }
+        return value;
+    }
+
+    /**
+     * Discards all the cached results of this instance, to be called once user changes are indexed.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Normalizes a query so that equivalent ones share their results: surrounding and repeated whitespaces are
+     * ignored. The case is kept, as it is meaningful to query string operators.
+     */
+    static String normalize(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ");
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+
+        private final long generation;
+
+        private final long expiresAt;
+
+        private final long loadNanos;
+
+        private Entry(Object value, long generation, long expiresAt, long loadNanos) {
+            this.value = value;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+            this.loadNanos = loadNanos;
+        }
+    }
+}
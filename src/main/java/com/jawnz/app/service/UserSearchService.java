@@ -0,0 +1,309 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.domain.Authority;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.UserRepository;
+import com.jawnz.app.repository.search.LuceneUserSearchRepository;
+import com.jawnz.app.service.dto.UserDTO;
+
+import com.google.gson.JsonObject;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Service for paginated searches of the users in Elasticsearch.
+ * <p>
+ * Results are sorted by score, then by id, and pages are chained with {@code search_after} cursors, which keeps
+ * the cost of a page constant however deep it is. Only the fields of {@link UserDTO} stored in the index are
+ * fetched, the authorities of the users, which are not indexed, are then read from MongoDB with one query per page,
+ * and pages are cached for a few seconds by {@link UserSearchResultCache}.
+ * <p>
+ * Queries go through {@link UserSearchQueryGuard}, and run with a time budget and a maximum number of documents
+ * collected per shard: a search exceeding them returns the partial results found so far, which are not cached.
+ * <p>
+ * With the "lucene" profile, pages are searched in the embedded {@link LuceneUserSearchRepository} instead, with
+ * the same sort and cursors.
+ */
+@Service
+public class UserSearchService {
+
+    static final String[] SOURCE_FIELDS = {
+        "id", "login", "firstName", "lastName", "email", "imageUrl", "activated", "langKey"
+    };
+
+    /**
+     * The default {@code index.max_result_window} of Elasticsearch, which bounds the size of a single search.
+     */
+    static final int MAX_RESULT_WINDOW = 10_000;
+
+    private final Logger log = LoggerFactory.getLogger(UserSearchService.class);
+
+    private final ApplicationProperties.UserSearch properties;
+
+    private final JestClient jestClient;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final EntityMapper entityMapper;
+
+    private final UserSearchResultCache userSearchResultCache;
+
+    private final UserSearchQueryGuard userSearchQueryGuard;
+
+    private final Optional<LuceneUserSearchRepository> luceneUserSearchRepository;
+
+    private final UserRepository userRepository;
+
+    public UserSearchService(ApplicationProperties applicationProperties, JestClient jestClient,
+                             ElasticsearchOperations elasticsearchOperations, EntityMapper entityMapper,
+                             UserSearchResultCache userSearchResultCache, UserSearchQueryGuard userSearchQueryGuard,
+                             Optional<LuceneUserSearchRepository> luceneUserSearchRepository,
+                             UserRepository userRepository) {
+        this.properties = applicationProperties.getUserSearch();
+        this.jestClient = jestClient;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.entityMapper = entityMapper;
+        this.userSearchResultCache = userSearchResultCache;
+        this.userSearchQueryGuard = userSearchQueryGuard;
+        this.luceneUserSearchRepository = luceneUserSearchRepository;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Searches a page of users.
+     *
+     * @param query the query string, or blank for all users.
+     * @param size the size of the page, capped by the configured maximum.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @param countTotal whether to count the total number of matching users.
+     * @return the page of users.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     * @throws UserSearchRejectedException if the query is not admitted.
+     */
+    public Result search(String query, int size, String cursor, boolean countTotal) {
+        log.debug("Request to search users for query {}, cursor {}", query, cursor);
+        int pageSize = Math.max(1, Math.min(size, properties.getMaxPageSize()));
+        QueryBuilder admitted = userSearchQueryGuard.admit(query);
+        Object[] after = cursor == null ? null : decodeCursor(cursor);
+        String page = pageSize + "/" + cursor + "/" + countTotal;
+        if (luceneUserSearchRepository.isPresent()) {
+            LuceneUserSearchRepository repository = luceneUserSearchRepository.get();
+            return userSearchResultCache.get(query, page,
+                () -> userSearchQueryGuard.run(() -> execute(repository, admitted, pageSize, after, countTotal)));
+        }
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(admitted)
+            .timeout(TimeValue.timeValueMillis(properties.getTimeoutMs()))
+            .terminateAfter(properties.getTerminateAfter())
+            .size(pageSize)
+            .sort("_score", SortOrder.DESC)
+            .sort("id", SortOrder.ASC)
+            .fetchSource(SOURCE_FIELDS, null)
+            .trackTotalHits(countTotal);
+        if (after != null) {
+            source.searchAfter(after);
+        }
+        return userSearchResultCache.get(query, page,
+            () -> userSearchQueryGuard.run(() -> execute(source, pageSize, countTotal)),
+            result -> !result.isPartial());
+    }
+
+    private Result execute(LuceneUserSearchRepository repository, QueryBuilder query, int pageSize, Object[] after,
+                           boolean countTotal) {
+        LuceneUserSearchRepository.Hits hits = repository.searchAfter(query, pageSize, after);
+        List<UserDTO> users = new ArrayList<>();
+        for (User user : hits.getContent()) {
+            users.add(new UserDTO(user));
+        }
+        String nextCursor = users.size() == pageSize && hits.getLastSortValues() != null
+            ? encodeCursor(hits.getLastSortValues()) : null;
+        return new Result(withAuthorities(users), nextCursor, countTotal ? hits.getTotal() : null, false);
+    }
+
+    /**
+     * Searches the users matching a query at once, within the budget of the pages, for the deprecated search
+     * endpoint. At most {@code terminate-after} users are returned, and at most {@link #MAX_RESULT_WINDOW}.
+     *
+     * @param query the query to search, or blank for all users.
+     * @return the users found within the budget.
+     * @throws UserSearchRejectedException if the query is not admitted.
+     */
+    public List<User> searchAll(String query) {
+        log.debug("Request to search all users for query {}", query);
+        QueryBuilder admitted = userSearchQueryGuard.admit(query);
+        int size = Math.min(properties.getTerminateAfter(), MAX_RESULT_WINDOW);
+        if (luceneUserSearchRepository.isPresent()) {
+            LuceneUserSearchRepository repository = luceneUserSearchRepository.get();
+            return userSearchQueryGuard.run(() -> repository.searchAfter(admitted, size, null).getContent());
+        }
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(admitted)
+            .timeout(TimeValue.timeValueMillis(properties.getTimeoutMs()))
+            .terminateAfter(properties.getTerminateAfter())
+            .size(size);
+        return userSearchQueryGuard.run(() -> {
+            SearchResult result = execute(source);
+            List<User> users = new ArrayList<>();
+            for (SearchResult.Hit<Map, Void> hit : result.getHits(Map.class, false)) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> hitSource = hit.source;
+                users.add(entityMapper.readObject(hitSource, User.class));
+            }
+            if (isPartial(result)) {
+                log.debug("User search exceeded its budget, returning partial results");
+                userSearchQueryGuard.recordTimeout();
+            }
+            return users;
+        });
+    }
+
+    private SearchResult execute(SearchSourceBuilder source) {
+        ElasticsearchPersistentEntity<?> entity = elasticsearchOperations.getPersistentEntityFor(User.class);
+        Search search = new Search.Builder(source.toString())
+            .addIndex(entity.getIndexName())
+            .addType(entity.getIndexType())
+            .build();
+        SearchResult result;
+        try {
+            result = jestClient.execute(search);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not search users: " + e.getMessage(), e);
+        }
+        if (!result.isSucceeded()) {
+            throw new IllegalStateException("Could not search users: " + result.getErrorMessage());
+        }
+        return result;
+    }
+
+    private Result execute(SearchSourceBuilder source, int pageSize, boolean countTotal) {
+        SearchResult result = execute(source);
+        List<UserDTO> users = new ArrayList<>();
+        List<String> lastSort = null;
+        for (SearchResult.Hit<Map, Void> hit : result.getHits(Map.class, false)) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> hitSource = hit.source;
+            users.add(new UserDTO(entityMapper.readObject(hitSource, User.class)));
+            lastSort = hit.sort;
+        }
+        String nextCursor = users.size() == pageSize && lastSort != null ? encodeCursor(lastSort) : null;
+        Long total = countTotal ? result.getTotal() : null;
+        boolean partial = isPartial(result);
+        if (partial) {
+            log.debug("User search exceeded its budget, returning partial results");
+            userSearchQueryGuard.recordTimeout();
+        }
+        return new Result(withAuthorities(users), nextCursor, total, partial);
+    }
+
+    private List<UserDTO> withAuthorities(List<UserDTO> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        Map<String, Set<String>> authorities = new HashMap<>();
+        userRepository.findAllById(users.stream().map(UserDTO::getId).collect(Collectors.toList()))
+            .forEach(user -> authorities.put(user.getId(),
+                user.getAuthorities().stream().map(Authority::getName).collect(Collectors.toSet())));
+        users.forEach(user -> user.setAuthorities(authorities.getOrDefault(user.getId(), Collections.emptySet())));
+        return users;
+    }
+
+    private static boolean isPartial(SearchResult result) {
+        return isTrue(result.getJsonObject(), "timed_out") || isTrue(result.getJsonObject(), "terminated_early");
+    }
+
+    private static boolean isTrue(JsonObject json, String member) {
+        return json.has(member) && json.get(member).getAsBoolean();
+    }
+
+    /**
+     * Encodes the sort values of the last hit of a page, which are the score and the id of the user.
+     */
+    static String encodeCursor(List<String> sortValues) {
+        String value = sortValues.get(0) + " " + sortValues.get(1);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Object[] decodeCursor(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(' ');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new Object[] { Float.parseFloat(value.substring(0, separator)), value.substring(separator + 1) };
+        } catch (IllegalArgumentException e) {
+            // also covers malformed base64 and scores
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * A page of users, with the cursor of the next page.
+     */
+    public static class Result {
+
+        private final List<UserDTO> content;
+
+        private final String nextCursor;
+
+        private final Long total;
+
+        private final boolean partial;
+
+        Result(List<UserDTO> content, String nextCursor, Long total, boolean partial) {
+            this.content = Collections.unmodifiableList(content);
+            this.nextCursor = nextCursor;
+            this.total = total;
+            this.partial = partial;
+        }
+
+        public List<UserDTO> getContent() {
+            return content;
+        }
+
+        /**
+         * @return the cursor of the next page, or {@code null} if this page is the last one.
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        /**
+         * @return the total number of matching users, or {@code null} if it was not counted.
+         */
+        public Long getTotal() {
+            return total;
+        }
+
+        /**
+         * @return whether the search exceeded its budget, in which case only part of the matching users were found.
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+    }
+}
@@ -1,19 +1,31 @@
 package com.jawnz.app.service;
 
 import com.jawnz.app.config.Constants;
+import com.jawnz.app.config.cache.BatchCache;
 import com.jawnz.app.domain.Authority;
 import com.jawnz.app.domain.User;
-import com.jawnz.app.repository.AuthorityRepository;
 import com.jawnz.app.repository.UserRepository;
 import com.jawnz.app.repository.search.UserSearchRepository;
 import com.jawnz.app.security.SecurityUtils;
 import com.jawnz.app.service.dto.UserDTO;
 
+import com.mongodb.MongoClientSettings;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
@@ -24,6 +36,8 @@ import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
 /**
  * Service class for managing users.
  */
@@ -36,15 +50,70 @@ public class UserService {
 
     private final UserSearchRepository userSearchRepository;
 
-    private final AuthorityRepository authorityRepository;
+    private final AuthorityRegistryService authorityRegistryService;
+
+    private final UserCacheService userCacheService;
+
+    private final UserSyncStateService userSyncStateService;
+
+    private final UserWriteBehindService userWriteBehindService;
+
+    private final UserOutboxService userOutboxService;
+
+    private final UserBulkWriter userBulkWriter;
+
+    private final UserSearchResultCache userSearchResultCache;
 
     private final CacheManager cacheManager;
 
-    public UserService(UserRepository userRepository, UserSearchRepository userSearchRepository, AuthorityRepository authorityRepository, CacheManager cacheManager) {
+    private final UserLoginFilterService userLoginFilterService;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Timer partialUpdateTimer;
+
+    private final Timer fullUpdateTimer;
+
+    private final DistributionSummary partialUpdateBytes;
+
+    private final DistributionSummary fullUpdateBytes;
+
+    public UserService(UserRepository userRepository, UserSearchRepository userSearchRepository, AuthorityRegistryService authorityRegistryService,
+                       UserCacheService userCacheService, UserSyncStateService userSyncStateService,
+                       UserWriteBehindService userWriteBehindService, UserOutboxService userOutboxService,
+                       UserBulkWriter userBulkWriter, UserSearchResultCache userSearchResultCache, CacheManager cacheManager,
+                       UserLoginFilterService userLoginFilterService, MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
         this.userRepository = userRepository;
         this.userSearchRepository = userSearchRepository;
-        this.authorityRepository = authorityRepository;
+        this.authorityRegistryService = authorityRegistryService;
+        this.userCacheService = userCacheService;
+        this.userSyncStateService = userSyncStateService;
+        this.userWriteBehindService = userWriteBehindService;
+        this.userOutboxService = userOutboxService;
+        this.userBulkWriter = userBulkWriter;
+        this.userSearchResultCache = userSearchResultCache;
         this.cacheManager = cacheManager;
+        this.userLoginFilterService = userLoginFilterService;
+        this.mongoTemplate = mongoTemplate;
+        this.partialUpdateTimer = updateTimer(meterRegistry, "partial");
+        this.fullUpdateTimer = updateTimer(meterRegistry, "full");
+        this.partialUpdateBytes = updateBytes(meterRegistry, "partial");
+        this.fullUpdateBytes = updateBytes(meterRegistry, "full");
+    }
+
+    private static Timer updateTimer(MeterRegistry meterRegistry, String mode) {
+        return Timer.builder("user.update")
+            .tag("mode", mode)
+            .description("Writes of the basic information of a user, as a partial update or as a whole document")
+            .register(meterRegistry);
+    }
+
+    private static DistributionSummary updateBytes(MeterRegistry meterRegistry, String mode) {
+        return DistributionSummary.builder("user.update.bytes")
+            .tag("mode", mode)
+            .description("Size of the update sent to MongoDB for the basic information of a user")
+            .baseUnit("bytes")
+            .register(meterRegistry);
     }
 
     /**
@@ -58,20 +127,127 @@ public class UserService {
      */
     public void updateUser(String firstName, String lastName, String email, String langKey, String imageUrl) {
         SecurityUtils.getCurrentUserLogin()
-            .flatMap(userRepository::findOneByLogin)
-            .ifPresent(user -> {
-                user.setFirstName(firstName);
-                user.setLastName(lastName);
-                if (email != null) {
-                    user.setEmail(email.toLowerCase());
-                }
-                user.setLangKey(langKey);
-                user.setImageUrl(imageUrl);
-                userRepository.save(user);
-                userSearchRepository.save(user);
-                this.clearUserCaches(user);
-                log.debug("Changed Information for User: {}", user);
-            });
+            .ifPresent(login -> updateUser(login, firstName, lastName, email, langKey, imageUrl, null));
+    }
+
+    /**
+     * Update basic information (first name, last name, email, language) for a user.
+     * <p>
+     * Only these fields are written, with a single {@code findAndModify} guarded by the expected version, unless
+     * the write-behind queue is enabled and no version is expected: the queue coalesces whole users, which are then
+     * read and written back. A write of the user still queued is flushed before a guarded update, so that it is
+     * checked against it and cannot overwrite it afterwards. With the outbox enabled, the change event is recorded
+     * before the update, as for the other writes, so that a failure between the two cannot lose the change.
+     *
+     * @param login           login of user.
+     * @param firstName       first name of user.
+     * @param lastName        last name of user.
+     * @param email           email id of user, unchanged if {@code null}.
+     * @param langKey         language key.
+     * @param imageUrl        image URL of user.
+     * @param expectedVersion the version of the user which was read, or {@code null} to update any version.
+     * @return the updated user, or empty if there is no user with this login.
+     * @throws OptimisticLockingFailureException if the user does not have the expected version.
+     */
+    public Optional<User> updateUser(String login, String firstName, String lastName, String email, String langKey,
+                                     String imageUrl, Long expectedVersion) {
+        if (userWriteBehindService.isEnabled() && expectedVersion == null) {
+            return userRepository.findOneByLogin(login)
+                .map(user -> {
+                    user.setFirstName(firstName);
+                    user.setLastName(lastName);
+                    if (email != null) {
+                        user.setEmail(email.toLowerCase());
+                    }
+                    user.setLangKey(langKey);
+                    user.setImageUrl(imageUrl);
+                    saveUser(user);
+                    log.debug("Changed Information for User: {}", user);
+                    return user;
+                });
+        }
+        if (userWriteBehindService.getPending(login).isPresent()) {
+            userWriteBehindService.flush();
+        }
+        if (userOutboxService.isEnabled()) {
+            Query current = Query.query(where("login").is(login));
+            current.fields().include("login").include("version");
+            User recorded = mongoTemplate.findOne(current, User.class);
+            if (recorded == null) {
+                return Optional.empty();
+            }
+            if (expectedVersion != null && !expectedVersion.equals(recorded.getVersion())) {
+                throw new OptimisticLockingFailureException("User " + login + " is not at version " + expectedVersion);
+            }
+            userOutboxService.record(Collections.singletonList(recorded));
+        }
+        Query query = Query.query(where("login").is(login));
+        if (expectedVersion != null) {
+            query.addCriteria(where("version").is(expectedVersion));
+        }
+        Update update = new Update();
+        setOrUnset(update, "first_name", firstName);
+        setOrUnset(update, "last_name", lastName);
+        if (email != null) {
+            update.set("email", email.toLowerCase());
+        }
+        setOrUnset(update, "lang_key", langKey);
+        setOrUnset(update, "image_url", imageUrl);
+        update.set("last_modified_by", SecurityUtils.getCurrentUserLogin().orElse(Constants.SYSTEM_ACCOUNT))
+            .set("last_modified_date", Instant.now())
+            .inc("version", 1);
+        partialUpdateBytes.record(bsonSize(update.getUpdateObject()));
+        User user = partialUpdateTimer.record(() ->
+            mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class));
+        if (user == null) {
+            if (expectedVersion != null && mongoTemplate.exists(Query.query(where("login").is(login)), User.class)) {
+                throw new OptimisticLockingFailureException("User " + login + " is not at version " + expectedVersion);
+            }
+            return Optional.empty();
+        }
+        if (!userOutboxService.isEnabled()) {
+            userSearchRepository.save(user);
+            // the save waits for the index to be refreshed
+            userSearchResultCache.invalidate();
+        }
+        this.clearUserCaches(user);
+        log.debug("Changed Information for User: {}", user);
+        return Optional.of(user);
+    }
+
+    private static void setOrUnset(Update update, String field, String value) {
+        // as when the whole user is written, null fields are absent
+        if (value != null) {
+            update.set(field, value);
+        } else {
+            update.unset(field);
+        }
+    }
+
+    private static int bsonSize(Document document) {
+        return new RawBsonDocument(document, MongoClientSettings.getDefaultCodecRegistry().get(Document.class))
+            .getByteBuffer().remaining();
+    }
+
+    /**
+     * Writes an existing user, through the write-behind queue when it is enabled and not saturated, or else
+     * directly as the queue would, incrementing its version. With the outbox enabled, the user is indexed
+     * asynchronously from a change event.
+     */
+    private void saveUser(User user) {
+        // auditing is not applied to bulk writes, and the flushing thread has no security context
+        user.setLastModifiedBy(SecurityUtils.getCurrentUserLogin().orElse(Constants.SYSTEM_ACCOUNT));
+        user.setLastModifiedDate(Instant.now());
+        if (userWriteBehindService.offer(user)) {
+            return;
+        }
+        Document document = new Document();
+        mongoTemplate.getConverter().write(user, document);
+        fullUpdateBytes.record(bsonSize(document));
+        Timer.Sample sample = Timer.start();
+        userBulkWriter.write(Collections.singletonList(user));
+        sample.stop(fullUpdateTimer);
+        this.clearUserCaches(user);
     }
 
 
@@ -80,7 +256,64 @@ public class UserService {
     }
 
     public Optional<User> getUserWithAuthoritiesByLogin(String login) {
-        return userRepository.findOneByLogin(login);
+        Optional<User> pendingUser = userWriteBehindService.getPending(login);
+        if (pendingUser.isPresent()) {
+            return pendingUser;
+        }
+        if (!userLoginFilterService.mightExist(login)) {
+            return Optional.empty();
+        }
+        Optional<User> user = userRepository.findOneByLogin(login);
+        if (user.isPresent()) {
+            userLoginFilterService.found(login);
+        } else {
+            userLoginFilterService.notFound(login);
+        }
+        return user;
+    }
+
+    /**
+     * Gets several users at once, as {@link #getUserWithAuthoritiesByLogin(String)} does for one.
+     * <p>
+     * The users are read from the cache at once, the misses are loaded with a single query and written to the
+     * cache, including the unknown logins as for a single user.
+     *
+     * @param logins the logins of the users.
+     * @return the users found, in the order of their logins, once each.
+     */
+    public List<UserDTO> getUsersWithAuthoritiesByLogins(List<String> logins) {
+        Set<String> distinctLogins = new LinkedHashSet<>(logins);
+        Map<String, User> users = new HashMap<>();
+        Set<String> uncached = new HashSet<>();
+        for (String login : distinctLogins) {
+            userWriteBehindService.getPending(login).ifPresent(user -> users.put(login, user));
+        }
+        Cache cache = Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE));
+        long generation = BatchCache.generation(cache);
+        List<String> lookups = distinctLogins.stream().filter(login -> !users.containsKey(login)).collect(Collectors.toList());
+        Map<Object, Cache.ValueWrapper> cached = BatchCache.getAll(cache, lookups);
+        for (String login : lookups) {
+            Cache.ValueWrapper wrapper = cached.get(login);
+            if (wrapper == null) {
+                uncached.add(login);
+            } else if (wrapper.get() != null) {
+                users.put(login, (User) wrapper.get());
+            }
+        }
+        if (!uncached.isEmpty()) {
+            for (User user : userRepository.findAllByLoginIn(uncached)) {
+                users.put(user.getLogin(), user);
+            }
+            for (String login : uncached) {
+                // as for a single user, a user evicted during the query is not written back
+                BatchCache.putIfNotEvicted(cache, login, users.get(login), generation);
+            }
+        }
+        return distinctLogins.stream()
+            .map(users::get)
+            .filter(Objects::nonNull)
+            .map(UserDTO::new)
+            .collect(Collectors.toList());
     }
 
 
@@ -89,24 +322,18 @@ public class UserService {
      * @return a list of all the authorities.
      */
     public List<String> getAuthorities() {
-        return authorityRepository.findAll().stream().map(Authority::getName).collect(Collectors.toList());
+        return authorityRegistryService.getAuthorities().stream().sorted().collect(Collectors.toList());
     }
 
     private User syncUserWithIdP(Map<String, Object> details, User user) {
         // save authorities in to sync user roles/groups between IdP and JHipster's local database
-        Collection<String> dbAuthorities = getAuthorities();
-        Collection<String> userAuthorities =
-            user.getAuthorities().stream().map(Authority::getName).collect(Collectors.toList());
-        for (String authority : userAuthorities) {
-            if (!dbAuthorities.contains(authority)) {
-                log.debug("Saving authority '{}' in local database", authority);
-                Authority authorityToSave = new Authority();
-                authorityToSave.setName(authority);
-                authorityRepository.save(authorityToSave);
-            }
-        }
+        user.getAuthorities().stream()
+            .map(Authority::getName)
+            .forEach(authorityRegistryService::ensureExists);
         // save account in to sync users between IdP and JHipster's local database
-        Optional<User> existingUser = userRepository.findOneByLogin(user.getLogin());
+        // read from the database, as the version of a cached user may be stale
+        Optional<User> existingUser = Optional.ofNullable(
+            mongoTemplate.findOne(Query.query(where("login").is(user.getLogin())), User.class));
         if (existingUser.isPresent()) {
             // if IdP sends last updated information, use it to determine if an update should happen
             if (details.get("updated_at") != null) {
@@ -114,17 +341,18 @@ public class UserService {
                 Instant idpModifiedDate = (Instant) details.get("updated_at");
                 if (idpModifiedDate.isAfter(dbModifiedDate)) {
                     log.debug("Updating user '{}' in local database", user.getLogin());
-                    updateUser(user.getFirstName(), user.getLastName(), user.getEmail(),
-                        user.getLangKey(), user.getImageUrl());
+                    updateUser(user.getLogin(), user.getFirstName(), user.getLastName(), user.getEmail(),
+                        user.getLangKey(), user.getImageUrl(), existingUser.get().getVersion());
                 }
                 // no last updated info, blindly update
             } else {
                 log.debug("Updating user '{}' in local database", user.getLogin());
-                updateUser(user.getFirstName(), user.getLastName(), user.getEmail(),
-                    user.getLangKey(), user.getImageUrl());
+                updateUser(user.getLogin(), user.getFirstName(), user.getLastName(), user.getEmail(),
+                    user.getLangKey(), user.getImageUrl(), existingUser.get().getVersion());
             }
         } else {
             log.debug("Saving user '{}' in local database", user.getLogin());
+            user.setVersion(0L);
             userRepository.save(user);
             this.clearUserCaches(user);
         }
@@ -133,7 +361,7 @@ public class UserService {
 
     /**
      * Returns the user from an OAuth 2.0 login or resource server with JWT.
-     * Synchronizes the user in the local repository.
+     * Synchronizes the user in the local repository, unless the same claims were already synchronized recently.
      *
      * @param authToken the authentication token.
      * @return the user from the authentication.
@@ -148,18 +376,34 @@ public class UserService {
             throw new IllegalArgumentException("AuthenticationToken is not OAuth2 or JWT!");
         }
         User user = getUser(attributes);
-        user.setAuthorities(authToken.getAuthorities().stream()
+        Set<String> authorities = authToken.getAuthorities().stream()
             .map(GrantedAuthority::getAuthority)
+            .collect(Collectors.toSet());
+        user.setAuthorities(authorities.stream()
             .map(authority -> {
                 Authority auth = new Authority();
                 auth.setName(authority);
                 return auth;
             })
             .collect(Collectors.toSet()));
-        return new UserDTO(syncUserWithIdP(attributes, user));
+        String fingerprint = userSyncStateService.fingerprint(attributes, authorities);
+        if (userSyncStateService.isUpToDate(user.getLogin(), fingerprint)) {
+            log.trace("Claims of user '{}' unchanged since last sync, skipping", user.getLogin());
+            return new UserDTO(user);
+        }
+        UserDTO userDTO;
+        try {
+            userDTO = new UserDTO(syncUserWithIdP(attributes, user));
+        } catch (OptimisticLockingFailureException e) {
+            // the user was modified since it was read: the claims are synchronized again on the next request
+            log.debug("User '{}' modified concurrently, not synchronized: {}", user.getLogin(), e.getMessage());
+            return new UserDTO(user);
+        }
+        userSyncStateService.markSynced(user.getLogin(), fingerprint);
+        return userDTO;
     }
 
-    private static User getUser(Map<String, Object> details) {
+    static User getUser(Map<String, Object> details) {
         User user = new User();
         // handle resource server JWT, where sub claim is email and uid is ID
         if (details.get("uid") != null) {
@@ -210,9 +454,6 @@ public class UserService {
     }
 
     private void clearUserCaches(User user) {
-        Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE)).evict(user.getLogin());
-        if (user.getEmail() != null) {
-            Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE)).evict(user.getEmail());
-        }
+        userCacheService.evict(user);
     }
 }
@@ -0,0 +1,169 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the identity provider claims last synchronized for each login, so that
+ * {@link UserService#getUserFromAuthentication} can skip the database and index writes when a token
+ * carries exactly the same claims as the previous one.
+ * <p>
+ * The state is local to this instance and bounded both in time and in size: it is only an optimisation,
+ * so losing it simply means the next request goes through a full synchronization again.
+ */
+@Service
+public class UserSyncStateService {
+
+    /**
+     * Claims used by {@link UserService} to build the local user, in a fixed order.
+     */
+    static final String[] FINGERPRINT_CLAIMS = {
+        "sub", "uid", "preferred_username", "email", "email_verified", "given_name", "family_name",
+        "langKey", "locale", "picture"
+    };
+
+    private final Logger log = LoggerFactory.getLogger(UserSyncStateService.class);
+
+    private final Map<String, SyncState> states = new ConcurrentHashMap<>();
+
+    private final ApplicationProperties.UserSync properties;
+
+    private final Clock clock;
+
+    private final Counter skippedCounter;
+
+    private final Counter syncedCounter;
+
+    @Autowired
+    public UserSyncStateService(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this(applicationProperties, meterRegistry, Clock.systemUTC());
+    }
+
+    UserSyncStateService(ApplicationProperties applicationProperties, MeterRegistry meterRegistry, Clock clock) {
+        this.properties = applicationProperties.getUserSync();
+        this.clock = clock;
+        this.skippedCounter = Counter.builder("user.idp.sync")
+            .description("Identity provider synchronizations, by outcome")
+            .tag("result", "skipped")
+            .register(meterRegistry);
+        this.syncedCounter = Counter.builder("user.idp.sync")
+            .description("Identity provider synchronizations, by outcome")
+            .tag("result", "synced")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Computes a stable fingerprint of the claims and roles relevant to the local user.
+     *
+     * @param claims the token attributes.
+     * @param authorities the authorities granted to the token.
+     * @return a Base64 encoded SHA-256 digest.
+     */
+    public String fingerprint(Map<String, Object> claims, Collection<String> authorities) {
+        MessageDigest digest = newDigest();
+        for (String claim : FINGERPRINT_CLAIMS) {
+            update(digest, claim);
+            update(digest, String.valueOf(claims.get(claim)));
+        }
+        List<String> sortedAuthorities = new ArrayList<>(authorities);
+        Collections.sort(sortedAuthorities);
+        for (String authority : sortedAuthorities) {
+            update(digest, authority);
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Checks whether the given fingerprint is the last one synchronized for this login.
+     * Records the outcome in the {@code user.idp.sync} counter.
+     *
+     * @param login the login of the user.
+     * @param fingerprint the fingerprint of the current claims.
+     * @return {@code true} if the synchronization can be skipped.
+     */
+    public boolean isUpToDate(String login, String fingerprint) {
+        if (!properties.isEnabled() || login == null) {
+            syncedCounter.increment();
+            return false;
+        }
+        SyncState state = states.get(login);
+        if (state != null && state.fingerprint.equals(fingerprint) && clock.millis() < state.expiresAt) {
+            skippedCounter.increment();
+            return true;
+        }
+        syncedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Records a successful synchronization of this login.
+     *
+     * @param login the login of the user.
+     * @param fingerprint the fingerprint of the synchronized claims.
+     */
+    public void markSynced(String login, String fingerprint) {
+        if (!properties.isEnabled() || login == null) {
+            return;
+        }
+        if (states.size() >= properties.getMaxEntries() && !states.containsKey(login)) {
+            log.debug("Sync state is full ({} entries), clearing it", states.size());
+            states.clear();
+        }
+        states.put(login, new SyncState(fingerprint, clock.millis() + properties.getTtlSeconds() * 1000));
+    }
+
+    /**
+     * Forgets the synchronization state of this login, forcing the next request to synchronize again.
+     *
+     * @param login the login of the user.
+     */
+    public void invalidate(String login) {
+        if (login != null) {
+            states.remove(login);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // separator, so that ("ab", "c") and ("a", "bc") do not collide
+        digest.update((byte) 0);
+    }
+
+    private static final class SyncState {
+
+        private final String fingerprint;
+
+        private final long expiresAt;
+
+        private SyncState(String fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
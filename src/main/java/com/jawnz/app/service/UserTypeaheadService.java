@@ -0,0 +1,245 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.search.LuceneUserSearchRepository;
+import com.jawnz.app.service.dto.UserSuggestionDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.multiMatchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.prefixQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Service for typeahead suggestions of users.
+ * <p>
+ * Suggestions come from the edge n-gram sub-fields of the Elasticsearch index, with exact prefixes of the login
+ * and email boosted first. If Elasticsearch does not answer within the configured budget, they come from an
+ * in-memory {@link UserPrefixIndex} of the activated users, which is periodically rebuilt from MongoDB.
+ * <p>
+ * Once Elasticsearch failed or timed out, the in-memory index answers at once for {@code RETRY_DELAY}, after
+ * which a single request tries Elasticsearch again. With the {@code lucene} profile, where there is no
+ * Elasticsearch, the in-memory index answers all the requests.
+ */
+@Service
+public class UserTypeaheadService {
+
+    private static final String[] AUTOCOMPLETE_FIELDS = {
+        "login.autocomplete", "email.autocomplete", "firstName.autocomplete", "lastName.autocomplete"
+    };
+
+    private static final String[] SOURCE_FIELDS = { "id", "login", "firstName", "lastName", "email", "imageUrl" };
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final Logger log = LoggerFactory.getLogger(UserTypeaheadService.class);
+
+    private final ApplicationProperties.UserTypeahead properties;
+
+    private final JestClient jestClient;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final EntityMapper entityMapper;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final boolean elasticsearchEnabled;
+
+    private final Clock clock;
+
+    private final Counter elasticsearchCounter;
+
+    private final Counter memoryCounter;
+
+    private volatile UserPrefixIndex prefixIndex = UserPrefixIndex.EMPTY;
+
+    /**
+     * The time until which Elasticsearch is considered unavailable, or 0 if it is available.
+     */
+    private final AtomicLong unavailableUntil = new AtomicLong();
+
+    @Autowired
+    public UserTypeaheadService(ApplicationProperties applicationProperties, JestClient jestClient,
+                                ElasticsearchOperations elasticsearchOperations, EntityMapper entityMapper,
+                                MongoTemplate mongoTemplate, Optional<LuceneUserSearchRepository> luceneUserSearchRepository,
+                                MeterRegistry meterRegistry) {
+        this(applicationProperties, jestClient, elasticsearchOperations, entityMapper, mongoTemplate,
+            !luceneUserSearchRepository.isPresent(), meterRegistry, Clock.systemUTC());
+    }
+
+    UserTypeaheadService(ApplicationProperties applicationProperties, JestClient jestClient,
+                         ElasticsearchOperations elasticsearchOperations, EntityMapper entityMapper,
+                         MongoTemplate mongoTemplate, boolean elasticsearchEnabled, MeterRegistry meterRegistry,
+                         Clock clock) {
+        this.properties = applicationProperties.getUserTypeahead();
+        this.jestClient = jestClient;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.entityMapper = entityMapper;
+        this.mongoTemplate = mongoTemplate;
+        this.elasticsearchEnabled = elasticsearchEnabled;
+        this.clock = clock;
+        this.elasticsearchCounter = meterRegistry.counter("user.typeahead", "source", "elasticsearch");
+        this.memoryCounter = meterRegistry.counter("user.typeahead", "source", "memory");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refresh();
+    }
+
+    /**
+     * Rebuilds the in-memory prefix index from the database.
+     */
+    @Scheduled(initialDelayString = "${application.user-typeahead.refresh-interval-ms:300000}",
+        fixedDelayString = "${application.user-typeahead.refresh-interval-ms:300000}")
+    public void refresh() {
+        Query query = Query.query(where("activated").is(true));
+        query.fields().include("login").include("first_name").include("last_name").include("email").include("image_url");
+        List<UserSuggestionDTO> users = new ArrayList<>();
+        try (CloseableIterator<User> iterator = mongoTemplate.stream(query, User.class)) {
+            while (iterator.hasNext()) {
+                if (users.size() == properties.getMaxEntries()) {
+                    log.warn("More than {} activated users, the in-memory typeahead index is disabled", properties.getMaxEntries());
+                    prefixIndex = UserPrefixIndex.EMPTY;
+                    return;
+                }
+                users.add(new UserSuggestionDTO(iterator.next()));
+            }
+        }
+        prefixIndex = UserPrefixIndex.build(users);
+        log.debug("Built the typeahead index of {} users", users.size());
+    }
+
+    /**
+     * Suggests the activated users with a login, email or name starting with the prefix.
+     *
+     * @param prefix the prefix typed by the user.
+     * @param limit the maximum number of suggestions, capped by the configured maximum.
+     * @return the suggested users, best matches first.
+     */
+    public List<UserSuggestionDTO> suggest(String prefix, int limit) {
+        String normalized = UserPrefixIndex.normalize(prefix);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int size = Math.max(1, Math.min(limit, properties.getMaxResults()));
+        if (tryElasticsearch()) {
+            try {
+                List<UserSuggestionDTO> suggestions = searchElasticsearch(normalized, size);
+                unavailableUntil.set(0);
+                elasticsearchCounter.increment();
+                return suggestions;
+            } catch (TimeoutException e) {
+                log.debug("Typeahead search took more than {} ms, using the in-memory index", properties.getBudgetMs());
+                unavailableUntil.set(clock.millis() + RETRY_DELAY.toMillis());
+            } catch (ExecutionException | IllegalStateException e) {
+                log.debug("Typeahead search failed, using the in-memory index: {}", e.getMessage());
+                unavailableUntil.set(clock.millis() + RETRY_DELAY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        memoryCounter.increment();
+        return prefixIndex.search(normalized, size);
+    }
+
+    /**
+     * Returns whether to search Elasticsearch: while it is considered unavailable, only the request claiming the
+     * retry once the delay has elapsed does, and the others keep using the in-memory index.
+     */
+    private boolean tryElasticsearch() {
+        if (!elasticsearchEnabled) {
+            return false;
+        }
+        long until = unavailableUntil.get();
+        long now = clock.millis();
+        if (until == 0) {
+            return true;
+        }
+        return until <= now && unavailableUntil.compareAndSet(until, now + RETRY_DELAY.toMillis());
+    }
+
+    private List<UserSuggestionDTO> searchElasticsearch(String prefix, int size)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(boolQuery()
+                .filter(termQuery("activated", true))
+                .should(prefixQuery("login.keyword", prefix).boost(10))
+                .should(prefixQuery("email.keyword", prefix).boost(5))
+                .should(multiMatchQuery(prefix, AUTOCOMPLETE_FIELDS)
+                    .type(MultiMatchQueryBuilder.Type.CROSS_FIELDS)
+                    .operator(Operator.AND))
+                .minimumShouldMatch(1))
+            .size(size)
+            .fetchSource(SOURCE_FIELDS, null)
+            .timeout(TimeValue.timeValueMillis(properties.getBudgetMs()));
+        ElasticsearchPersistentEntity<?> entity = elasticsearchOperations.getPersistentEntityFor(User.class);
+        Search search = new Search.Builder(source.toString())
+            .addIndex(entity.getIndexName())
+            .addType(entity.getIndexType())
+            .build();
+
+        CompletableFuture<SearchResult> future = new CompletableFuture<>();
+        jestClient.executeAsync(search, new JestResultHandler<SearchResult>() {
+            @Override
+            public void completed(SearchResult result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        SearchResult result = future.get(properties.getBudgetMs(), TimeUnit.MILLISECONDS);
+        if (!result.isSucceeded()) {
+            throw new IllegalStateException(result.getErrorMessage());
+        }
+        List<UserSuggestionDTO> suggestions = new ArrayList<>();
+        for (SearchResult.Hit<Map, Void> hit : result.getHits(Map.class, false)) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> hitSource = hit.source;
+            suggestions.add(new UserSuggestionDTO(entityMapper.readObject(hitSource, User.class)));
+        }
+        return suggestions;
+    }
+}
@@ -0,0 +1,255 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.domain.User;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optional write-behind pipeline for user profile writes.
+ * <p>
+ * Pending writes are keyed by login and only the latest state of each user is kept, so a burst of updates
+ * to the same user results in a single write. Batches are flushed with {@link UserBulkWriter} when
+ * {@code batch-size} users are pending, or every {@code flush-interval-ms}; the user caches are evicted
+ * afterwards, in the order the users were queued.
+ * <p>
+ * When the pipeline is disabled or its queue is full, {@link #offer(User)} returns {@code false} and the
+ * caller is expected to write synchronously.
+ * <p>
+ * A batch failing because MongoDB is unavailable is retried on the next flush. A batch failing otherwise is
+ * split until the users which cannot be written are isolated: each of them is retried on the next flushes, up
+ * to {@code max-attempts} times, and then dropped and logged as a dead letter.
+ */
+@Service
+public class UserWriteBehindService {
+
+    private final Logger log = LoggerFactory.getLogger(UserWriteBehindService.class);
+
+    private final ApplicationProperties.UserWriteBehind properties;
+
+    private final UserBulkWriter userBulkWriter;
+
+    private final UserCacheService userCacheService;
+
+    private final Executor taskExecutor;
+
+    private final Map<String, User> pending = new ConcurrentHashMap<>();
+
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+
+    /**
+     * Users whose write failed during the current flush, queued again once it is over.
+     */
+    private final List<User> retries = new ArrayList<>();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Object flushLock = new Object();
+
+    private final Counter enqueuedCounter;
+
+    private final Counter writtenCounter;
+
+    private final Counter saturatedCounter;
+
+    private final Counter failedCounter;
+
+    private final Counter deadLetterCounter;
+
+    private final Timer flushTimer;
+
+    public UserWriteBehindService(ApplicationProperties applicationProperties, UserBulkWriter userBulkWriter,
+                                  UserCacheService userCacheService, @Qualifier("taskExecutor") Executor taskExecutor,
+                                  MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getUserWriteBehind();
+        this.userBulkWriter = userBulkWriter;
+        this.userCacheService = userCacheService;
+        this.taskExecutor = taskExecutor;
+        this.enqueuedCounter = meterRegistry.counter("user.write.behind.enqueued");
+        this.writtenCounter = meterRegistry.counter("user.write.behind.written");
+        this.saturatedCounter = meterRegistry.counter("user.write.behind.saturated");
+        this.failedCounter = meterRegistry.counter("user.write.behind.failed");
+        this.deadLetterCounter = meterRegistry.counter("user.write.behind.dead.letters");
+        this.flushTimer = Timer.builder("user.write.behind.flush")
+            .description("Time taken to flush a batch of user writes")
+            .register(meterRegistry);
+        Gauge.builder("user.write.behind.queue.depth", pending, Map::size)
+            .description("Number of users waiting to be written")
+            .register(meterRegistry);
+        Gauge.builder("user.write.behind.coalescing.ratio", this, UserWriteBehindService::coalescingRatio)
+            .description("Share of queued writes which were superseded by a later write of the same user")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Queues the user for writing.
+     *
+     * @param user the user to write, with its auditing fields already set.
+     * @return {@code false} if the user was not queued and must be written synchronously.
+     */
+    public boolean offer(User user) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        if (pending.size() >= properties.getCapacity() && !pending.containsKey(user.getLogin())) {
+            saturatedCounter.increment();
+            return false;
+        }
+        if (pending.put(user.getLogin(), user) == null) {
+            order.add(user.getLogin());
+        }
+        // a new state may be writable
+        attempts.remove(user.getLogin());
+        enqueuedCounter.increment();
+        if (pending.size() >= properties.getBatchSize() && flushRequested.compareAndSet(false, true)) {
+            try {
+                taskExecutor.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+                log.warn("Could not schedule user write-behind flush: {}", e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the state of a user which is queued but not written yet.
+     *
+     * @param login the login of the user.
+     * @return the pending user, if any.
+     */
+    public Optional<User> getPending(String login) {
+        return Optional.ofNullable(pending.get(login));
+    }
+
+    /**
+     * Writes all the pending users, in batches.
+     */
+    @Scheduled(fixedDelayString = "${application.user-write-behind.flush-interval-ms:500}")
+    public void flush() {
+        flushRequested.set(false);
+        synchronized (flushLock) {
+            try {
+                List<User> batch = drain();
+                // stop when MongoDB is unavailable, the remaining users are written on the next flush
+                while (!batch.isEmpty() && write(batch)) {
+                    batch = drain();
+                }
+            } finally {
+                requeue(retries);
+                retries.clear();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+        if (!pending.isEmpty()) {
+            log.error("{} user writes could not be flushed before shutdown and are lost: {}", pending.size(),
+                pending.keySet());
+        }
+    }
+
+    private List<User> drain() {
+        List<User> batch = new ArrayList<>();
+        String login;
+        while (batch.size() < properties.getBatchSize() && (login = order.poll()) != null) {
+            User user = pending.remove(login);
+            if (user != null) {
+                batch.add(user);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return {@code false} if MongoDB is unavailable.
+     */
+    private boolean write(List<User> batch) {
+        long start = System.nanoTime();
+        try {
+            userBulkWriter.write(batch);
+        } catch (RuntimeException e) {
+            if (e instanceof DataAccessResourceFailureException || e instanceof TransientDataAccessException) {
+                failedCounter.increment(batch.size());
+                log.error("Could not write {} users, they will be retried: {}", batch.size(), e.getMessage());
+                retries.addAll(batch);
+                return false;
+            }
+            if (batch.size() > 1) {
+                // isolate the users which cannot be written, so that they do not hold back the others
+                int middle = batch.size() / 2;
+                return write(batch.subList(0, middle)) & write(batch.subList(middle, batch.size()));
+            }
+            failed(batch.get(0), e);
+            return true;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        for (User user : batch) {
+            attempts.remove(user.getLogin());
+            userCacheService.evict(user);
+        }
+        writtenCounter.increment(batch.size());
+        return true;
+    }
+
+    private void failed(User user, RuntimeException e) {
+        int attempt = attempts.merge(user.getLogin(), 1, Integer::sum);
+        if (attempt >= properties.getMaxAttempts()) {
+            attempts.remove(user.getLogin());
+            deadLetterCounter.increment();
+            log.error("Dropping the write of user {} (id {}) after {} attempts: {}", user.getLogin(), user.getId(),
+                attempt, e.getMessage());
+            return;
+        }
+        failedCounter.increment();
+        log.warn("Could not write user {}, attempt {} of {}: {}", user.getLogin(), attempt,
+            properties.getMaxAttempts(), e.getMessage());
+        retries.add(user);
+    }
+
+    private void requeue(List<User> users) {
+        for (User user : users) {
+            // keep newer states, which may have been queued in the meantime
+            if (pending.putIfAbsent(user.getLogin(), user) == null) {
+                order.add(user.getLogin());
+            }
+        }
+    }
+
+    private double coalescingRatio() {
+        double enqueued = enqueuedCounter.count();
+        return enqueued == 0 ? 0 : 1 - writtenCounter.count() / enqueued;
+    }
+}
@@ -0,0 +1,74 @@
+package com.jawnz.app.service.dto;
+
+import java.time.Instant;
+
+/**
+ * A DTO representing a change of a user, published to the user changes topic.
+ * <p>
+ * It only identifies the user and its version: consumers read the current state of the user from the database,
+ * so applying an event twice, or out of order, is harmless.
+ */
+public class UserChangeEventDTO {
+
+    private String id;
+
+    private String login;
+
+    private long version;
+
+    private Instant createdAt;
+
+    public UserChangeEventDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public UserChangeEventDTO(String id, String login, long version, Instant createdAt) {
+        this.id = id;
+        this.login = login;
+        this.version = version;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public void setLogin(String login) {
+        this.login = login;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "UserChangeEventDTO{" +
+            "id='" + id + '\'' +
+            ", login='" + login + '\'' +
+            ", version=" + version +
+            ", createdAt=" + createdAt +
+            "}";
+    }
+}
@@ -0,0 +1,92 @@
+package com.jawnz.app.service.dto;
+
+import com.jawnz.app.domain.User;
+
+/**
+ * A DTO representing a user suggested by the typeahead search, with only the fields needed by user pickers.
+ */
+public class UserSuggestionDTO {
+
+    private String id;
+
+    private String login;
+
+    private String firstName;
+
+    private String lastName;
+
+    private String email;
+
+    private String imageUrl;
+
+    public UserSuggestionDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public UserSuggestionDTO(User user) {
+        this.id = user.getId();
+        this.login = user.getLogin();
+        this.firstName = user.getFirstName();
+        this.lastName = user.getLastName();
+        this.email = user.getEmail();
+        this.imageUrl = user.getImageUrl();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public void setLogin(String login) {
+        this.login = login;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "UserSuggestionDTO{" +
+            "login='" + login + '\'' +
+            ", firstName='" + firstName + '\'' +
+            ", lastName='" + lastName + '\'' +
+            "}";
+    }
+}
@@ -0,0 +1,34 @@
+package com.jawnz.app.web.rest;
+
+import com.jawnz.app.service.CacheStatisticsService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for the statistics of the memcached caches.
+ */
+@RestController
+@RequestMapping("/management")
+public class CacheResource {
+
+    private final Logger log = LoggerFactory.getLogger(CacheResource.class);
+
+    private final CacheStatisticsService cacheStatisticsService;
+
+    public CacheResource(CacheStatisticsService cacheStatisticsService) {
+        this.cacheStatisticsService = cacheStatisticsService;
+    }
+
+    /**
+     * {@code GET /caches} : get the statistics of the caches, of the memcached servers, and the most read keys.
+     *
+     * @return the statistics of the caches.
+     */
+    @GetMapping("/caches")
+    public CacheStatisticsService.Report getCaches() {
+        log.debug("REST request to get the cache statistics");
+        return cacheStatisticsService.getReport();
+    }
+}
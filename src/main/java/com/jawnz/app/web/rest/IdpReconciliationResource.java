@@ -0,0 +1,51 @@
+package com.jawnz.app.web.rest;
+
+import com.jawnz.app.service.IdpReconciliationService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for reconciling the local users with the identity provider.
+ */
+@RestController
+@RequestMapping("/management/idp-reconciliation")
+public class IdpReconciliationResource {
+
+    private final Logger log = LoggerFactory.getLogger(IdpReconciliationResource.class);
+
+    private final IdpReconciliationService idpReconciliationService;
+
+    public IdpReconciliationResource(IdpReconciliationService idpReconciliationService) {
+        this.idpReconciliationService = idpReconciliationService;
+    }
+
+    /**
+     * {@code POST /idp-reconciliation} : start a reconciliation in the background.
+     *
+     * @param resume whether to resume from the last checkpoint.
+     * @return the {@link ResponseEntity} with status {@code 202 (Accepted)} and the progress in body,
+     * or with status {@code 409 (Conflict)} if a reconciliation is already running.
+     */
+    @PostMapping
+    public ResponseEntity<IdpReconciliationService.Status> start(@RequestParam(defaultValue = "true") boolean resume) {
+        log.debug("REST request to start IdP reconciliation, resume: {}", resume);
+        if (!idpReconciliationService.start(resume)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(idpReconciliationService.getStatus());
+        }
+        return ResponseEntity.accepted().body(idpReconciliationService.getStatus());
+    }
+
+    /**
+     * {@code GET /idp-reconciliation} : get the progress of the current, or last, reconciliation.
+     *
+     * @return the progress of the reconciliation.
+     */
+    @GetMapping
+    public IdpReconciliationService.Status getStatus() {
+        return idpReconciliationService.getStatus();
+    }
+}
@@ -0,0 +1,35 @@
+package com.jawnz.app.web.rest;
+
+import com.jawnz.app.service.MongoStatisticsService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for the statistics of the MongoDB commands.
+ */
+@RestController
+@RequestMapping("/management")
+public class MongoResource {
+
+    private final Logger log = LoggerFactory.getLogger(MongoResource.class);
+
+    private final MongoStatisticsService mongoStatisticsService;
+
+    public MongoResource(MongoStatisticsService mongoStatisticsService) {
+        this.mongoStatisticsService = mongoStatisticsService;
+    }
+
+    /**
+     * {@code GET /mongo} : get the statistics of the MongoDB commands by repository method, of the connection
+     * pools, and the most recent slow commands.
+     *
+     * @return the statistics of the MongoDB commands.
+     */
+    @GetMapping("/mongo")
+    public MongoStatisticsService.Report getMongo() {
+        log.debug("REST request to get the MongoDB statistics");
+        return mongoStatisticsService.getReport();
+    }
+}
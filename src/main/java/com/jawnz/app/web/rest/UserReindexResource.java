@@ -0,0 +1,81 @@
+package com.jawnz.app.web.rest;
+
+import com.jawnz.app.service.UserReindexService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for rebuilding the Elasticsearch index of the users.
+ */
+@RestController
+@RequestMapping("/management/user-reindex")
+public class UserReindexResource {
+
+    private final Logger log = LoggerFactory.getLogger(UserReindexResource.class);
+
+    private final UserReindexService userReindexService;
+
+    public UserReindexResource(UserReindexService userReindexService) {
+        this.userReindexService = userReindexService;
+    }
+
+    /**
+     * {@code POST /user-reindex} : start a reindex in the background.
+     *
+     * @param slices the number of slices to process in parallel.
+     * @param maxDocsPerSecond the maximum indexing rate, {@code 0} for no limit.
+     * @return the {@link ResponseEntity} with status {@code 202 (Accepted)} and the progress in body,
+     * or with status {@code 409 (Conflict)} if a reindex is already running.
+     */
+    @PostMapping
+    public ResponseEntity<UserReindexService.Status> start(@RequestParam(required = false) Integer slices,
+                                                           @RequestParam(required = false) Integer maxDocsPerSecond) {
+        log.debug("REST request to reindex users, slices: {}, maxDocsPerSecond: {}", slices, maxDocsPerSecond);
+        if (!userReindexService.start(slices, maxDocsPerSecond)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(userReindexService.getStatus());
+        }
+        return ResponseEntity.accepted().body(userReindexService.getStatus());
+    }
+
+    /**
+     * {@code GET /user-reindex} : get the progress of the current, or last, reindex.
+     *
+     * @return the progress of the reindex.
+     */
+    @GetMapping
+    public UserReindexService.Status getStatus() {
+        return userReindexService.getStatus();
+    }
+
+    /**
+     * {@code PUT /user-reindex/throttle} : change the maximum indexing rate of the running reindex.
+     *
+     * @param maxDocsPerSecond the maximum indexing rate, {@code 0} for no limit.
+     * @return the progress of the reindex.
+     */
+    @PutMapping("/throttle")
+    public UserReindexService.Status throttle(@RequestParam int maxDocsPerSecond) {
+        log.debug("REST request to throttle the user reindex to {} users/s", maxDocsPerSecond);
+        userReindexService.throttle(maxDocsPerSecond);
+        return userReindexService.getStatus();
+    }
+
+    /**
+     * {@code DELETE /user-reindex} : cancel the running reindex.
+     *
+     * @return the {@link ResponseEntity} with status {@code 202 (Accepted)} and the progress in body,
+     * or with status {@code 404 (Not Found)} if no reindex is running.
+     */
+    @DeleteMapping
+    public ResponseEntity<UserReindexService.Status> cancel() {
+        log.debug("REST request to cancel the user reindex");
+        if (!userReindexService.cancel()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.accepted().body(userReindexService.getStatus());
+    }
+}
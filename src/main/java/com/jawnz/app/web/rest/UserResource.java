@@ -1,11 +1,17 @@
 package com.jawnz.app.web.rest;
 
+import com.jawnz.app.config.ApplicationProperties;
 import com.jawnz.app.config.Constants;
 import com.jawnz.app.domain.User;
-import com.jawnz.app.repository.search.UserSearchRepository;
+import com.jawnz.app.repository.search.InvalidSearchQueryException;
 import com.jawnz.app.security.AuthoritiesConstants;
+import com.jawnz.app.service.UserListingService;
+import com.jawnz.app.service.UserSearchService;
 import com.jawnz.app.service.UserService;
+import com.jawnz.app.service.UserTypeaheadService;
 import com.jawnz.app.service.dto.UserDTO;
+import com.jawnz.app.service.dto.UserSuggestionDTO;
+import com.jawnz.app.web.rest.errors.BadRequestAlertException;
 
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
@@ -24,10 +30,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
+import java.util.regex.Pattern;
 
 /**
  * REST controller for managing users.
@@ -57,6 +60,10 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 @RequestMapping("/api")
 public class UserResource {
 
+    private static final Pattern LOGIN_PATTERN = Pattern.compile(Constants.LOGIN_REGEX);
+
+    private static final int LOGIN_MAX_LENGTH = 50;
+
     private final Logger log = LoggerFactory.getLogger(UserResource.class);
 
     @Value("${jhipster.clientApp.name}")
@@ -64,11 +71,22 @@ public class UserResource {
 
     private final UserService userService;
 
-    private final UserSearchRepository userSearchRepository;
+    private final UserSearchService userSearchService;
+
+    private final UserTypeaheadService userTypeaheadService;
 
-    public UserResource(UserService userService, UserSearchRepository userSearchRepository) {
+    private final UserListingService userListingService;
+
+    private final ApplicationProperties.UserBatch userBatchProperties;
+
+    public UserResource(UserService userService, UserSearchService userSearchService,
+                        UserTypeaheadService userTypeaheadService, UserListingService userListingService,
+                        ApplicationProperties applicationProperties) {
         this.userService = userService;
-        this.userSearchRepository = userSearchRepository;
+        this.userSearchService = userSearchService;
+        this.userTypeaheadService = userTypeaheadService;
+        this.userListingService = userListingService;
+        this.userBatchProperties = applicationProperties.getUserBatch();
     }
 
     /**
@@ -86,6 +104,42 @@ public class UserResource {
     }
 
 
+    /**
+     * {@code GET /_keyset/users} : get a page of users, sorted by login.
+     * <p>
+     * Unlike {@code GET /users}, deep pages are as fast as the first one. The next page is linked in the
+     * {@code Link} header, with a {@code cursor} parameter.
+     *
+     * @param size the size of the page.
+     * @param cursor the cursor of the page, from the {@code Link} header of the previous page.
+     * @param countTotal whether to estimate the number of users in the {@code X-Total-Count} header.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the page of users, or with status
+     * {@code 400 (Bad Request)} if the cursor is invalid.
+     */
+    @GetMapping("/_keyset/users")
+    public ResponseEntity<List<UserDTO>> listUsers(@RequestParam(defaultValue = "20") int size,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = "false") boolean countTotal) {
+        log.debug("REST request to list a page of Users, cursor {}", cursor);
+        UserSearchService.Result result;
+        try {
+            result = userListingService.list(size, cursor, countTotal);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), "userManagement", "invalidcursor");
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (result.getTotal() != null) {
+            headers.add("X-Total-Count", Long.toString(result.getTotal()));
+        }
+        if (result.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", result.getNextCursor())
+                .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<>(result.getContent(), headers, HttpStatus.OK);
+    }
+
     /**
      * Gets a list of all roles.
      * @return a string list of all roles.
@@ -110,16 +164,99 @@ public class UserResource {
                 .map(UserDTO::new));
     }
 
+    /**
+     * {@code POST /users/_batch} : get several users at once.
+     *
+     * @param logins the logins of the users to find.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the users found, in the order of
+     * their logins, or with status {@code 400 (Bad Request)} if there are too many logins or one is invalid.
+     */
+    @PostMapping("/users/_batch")
+    public List<UserDTO> getUsers(@RequestBody List<String> logins) {
+        log.debug("REST request to get {} Users", logins.size());
+        if (logins.size() > userBatchProperties.getMaxSize()) {
+            throw new BadRequestAlertException("At most " + userBatchProperties.getMaxSize() + " users can be requested at once",
+                "userManagement", "batchtoolarge");
+        }
+        for (String login : logins) {
+            if (login == null || login.length() > LOGIN_MAX_LENGTH || !LOGIN_PATTERN.matcher(login).matches()) {
+                throw new BadRequestAlertException("Invalid login", "userManagement", "invalidlogin");
+            }
+        }
+        return userService.getUsersWithAuthoritiesByLogins(logins);
+    }
+
+    /**
+     * {@code SEARCH /_search/users?query=:query} : search a page of users corresponding to the query.
+     * <p>
+     * The next page is linked in the {@code Link} header, with a {@code cursor} parameter.
+     *
+     * @param query the query to search, or blank for all users.
+     * @param size the size of the page.
+     * @param cursor the cursor of the page, from the {@code Link} header of the previous page.
+     * @param countTotal whether to count the matching users in the {@code X-Total-Count} header.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the page of users, flagged by
+     * the {@code X-Search-Partial} header if the search exceeded its budget, or with status
+     * {@code 400 (Bad Request)} if the cursor or the query is invalid or the query too expensive, or with status
+     * {@code 429 (Too Many Requests)} if the current user runs too many searches.
+     */
+    @GetMapping("/_search/users")
+    public ResponseEntity<List<UserDTO>> searchUsers(@RequestParam(defaultValue = "") String query,
+                                                     @RequestParam(defaultValue = "20") int size,
+                                                     @RequestParam(required = false) String cursor,
+                                                     @RequestParam(defaultValue = "true") boolean countTotal) {
+        log.debug("REST request to search a page of Users for query {}", query);
+        UserSearchService.Result result;
+        try {
+            result = userSearchService.search(query, size, cursor, countTotal);
+        } catch (InvalidSearchQueryException e) {
+            throw new BadRequestAlertException(e.getMessage(), "userManagement", "invalidquery");
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), "userManagement", "invalidcursor");
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (result.getTotal() != null) {
+            headers.add("X-Total-Count", Long.toString(result.getTotal()));
+        }
+        if (result.isPartial()) {
+            headers.add("X-Search-Partial", "true");
+        }
+        if (result.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", result.getNextCursor())
+                .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<>(result.getContent(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * {@code GET /_typeahead/users?prefix=:prefix} : suggest the activated users matching what was typed.
+     *
+     * @param prefix the beginning of a login, email or name.
+     * @param limit the maximum number of suggestions.
+     * @return the suggested users, best matches first.
+     */
+    @GetMapping("/_typeahead/users")
+    public List<UserSuggestionDTO> suggestUsers(@RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+        log.debug("REST request to suggest Users for prefix {}", prefix);
+        return userTypeaheadService.suggest(prefix, limit);
+    }
+
     /**
      * {@code SEARCH /_search/users/:query} : search for the User corresponding to the query.
      *
      * @param query the query to search.
-     * @return the result of the search.
+     * @return the users found within the budget of the searches.
+     * @deprecated loads all the matching users, use {@link #searchUsers(String, int, String, boolean)}.
      */
+    @Deprecated
     @GetMapping("/_search/users/{query}")
     public List<User> search(@PathVariable String query) {
-        return StreamSupport
-            .stream(userSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+        try {
+            return userSearchService.searchAll(query);
+        } catch (InvalidSearchQueryException e) {
+            throw new BadRequestAlertException(e.getMessage(), "userManagement", "invalidquery");
+        }
     }
 }
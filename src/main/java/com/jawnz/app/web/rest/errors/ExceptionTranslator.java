@@ -1,5 +1,7 @@
 package com.jawnz.app.web.rest.errors;
 
+import com.jawnz.app.service.UserSearchRejectedException;
+
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.web.util.HeaderUtil;
 
@@ -112,6 +114,18 @@ public class ExceptionTranslator implements ProblemHandling, SecurityAdviceTrait
         return create(ex, request, HeaderUtil.createFailureAlert(applicationName, false, ex.getEntityName(), ex.getErrorKey(), ex.getMessage()));
     }
 
+    @ExceptionHandler
+    public ResponseEntity<Problem> handleUserSearchRejected(UserSearchRejectedException ex, NativeWebRequest request) {
+        Problem problem = Problem.builder()
+            .withStatus(ex.getReason() == UserSearchRejectedException.Reason.TOO_MANY_CONCURRENT_SEARCHES ?
+                Status.TOO_MANY_REQUESTS : Status.BAD_REQUEST)
+            .withDetail(ex.getMessage())
+            .with(MESSAGE_KEY, ErrorConstants.ERR_SEARCH_REJECTED)
+            .with("reason", ex.getReason())
+            .build();
+        return create(ex, problem, request);
+    }
+
     @ExceptionHandler
     public ResponseEntity<Problem> handleConcurrencyFailure(ConcurrencyFailureException ex, NativeWebRequest request) {
         Problem problem = Problem.builder()
@@ -0,0 +1,141 @@
+package com.jawnz.app.client;
+
+import com.jawnz.app.config.ApplicationProperties;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of {@link IdpUserDirectoryClient} against a stub identity provider.
+ */
+public class IdpUserDirectoryClientTest {
+
+    private static final int USERS = 5;
+
+    private HttpServer server;
+
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+    private volatile int usersStatus = 200;
+
+    private IdpUserDirectoryClient client;
+
+    @BeforeEach
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/token", exchange -> {
+            tokenRequests.incrementAndGet();
+            respond(exchange, 200, "{\"access_token\":\"token-" + tokenRequests.get() +
+                "\",\"token_type\":\"bearer\",\"expires_in\":300}");
+        });
+        server.createContext("/users", exchange -> {
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            if (usersStatus != 200) {
+                respond(exchange, usersStatus, "{\"error\":\"unavailable\"}");
+                return;
+            }
+            Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            int first = Integer.parseInt(parameters.get("first"));
+            int max = Integer.parseInt(parameters.get("max"));
+            List<String> users = new ArrayList<>();
+            for (int i = first; i < Math.min(USERS, first + max); i++) {
+                users.add("{\"id\":\"user-" + i + "\",\"username\":\"user" + i + "\"}");
+            }
+            respond(exchange, 200, "[" + String.join(",", users) + "]");
+        });
+        server.start();
+        String baseUri = "http://localhost:" + server.getAddress().getPort();
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getIdpReconciliation().setUsersUri(baseUri + "/users");
+        ClientRegistration registration = ClientRegistration.withRegistrationId("oidc")
+            .clientId("jawnzapp")
+            .clientSecret("secret")
+            .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+            .tokenUri(baseUri + "/token")
+            .build();
+        client = new IdpUserDirectoryClient(applicationProperties, new InMemoryClientRegistrationRepository(registration),
+            new RestTemplateBuilder());
+    }
+
+    @AfterEach
+    public void destroy() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetchesTheUsersPageByPageWithOneToken() {
+        List<String> ids = new ArrayList<>();
+        List<Map<String, Object>> page;
+        int first = 0;
+        do {
+            page = client.getUsers(first, 2);
+            page.forEach(user -> ids.add((String) user.get("id")));
+            first += page.size();
+        } while (page.size() == 2);
+
+        assertThat(ids).containsExactly("user-0", "user-1", "user-2", "user-3", "user-4");
+        assertThat(tokenRequests.get()).isEqualTo(1);
+        assertThat(authorizations).hasSize(3).containsOnly("Bearer token-1");
+    }
+
+    @Test
+    public void returnsAnEmptyPageAfterTheLastUser() {
+        assertThat(client.getUsers(USERS, 2)).isEmpty();
+    }
+
+    @Test
+    public void propagatesTheErrorsOfTheIdentityProvider() {
+        usersStatus = 503;
+        assertThatThrownBy(() -> client.getUsers(0, 2)).isInstanceOf(HttpServerErrorException.class);
+
+        usersStatus = 403;
+        assertThatThrownBy(() -> client.getUsers(0, 2)).isInstanceOf(HttpClientErrorException.class);
+
+        usersStatus = 200;
+        assertThat(client.getUsers(0, 2)).hasSize(2);
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            parameters.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
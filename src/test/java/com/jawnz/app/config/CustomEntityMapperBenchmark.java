@@ -0,0 +1,144 @@
+package com.jawnz.app.config;
+
+import com.jawnz.app.domain.Authority;
+import com.jawnz.app.domain.User;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput and allocation rate of {@link ElasticsearchConfiguration.CustomEntityMapper} with
+ * the previous implementation, which went through a JSON string for every conversion.
+ * <p>
+ * This is not run with the tests: launch {@link #main(String[])} from the IDE, or with
+ * {@code ./mvnw test-compile exec:java -Dexec.mainClass=com.jawnz.app.config.CustomEntityMapperBenchmark -Dexec.classpathScope=test}.
+ * The allocation rate is reported by the {@code gc.alloc.rate.norm} lines, in bytes per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomEntityMapperBenchmark {
+
+    private EntityMapper stringMapper;
+
+    private EntityMapper streamingMapper;
+
+    private User user;
+
+    private Map<String, Object> source;
+
+    @Setup
+    public void setup() throws IOException {
+        stringMapper = new StringEntityMapper(objectMapper());
+        streamingMapper = new ElasticsearchConfiguration.CustomEntityMapper(objectMapper());
+
+        user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setLogin("jean-baptiste.poquelin");
+        user.setFirstName("Jean-Baptiste");
+        user.setLastName("Poquelin");
+        user.setEmail("jean-baptiste.poquelin@comedie-francaise.fr");
+        user.setImageUrl("https://cdn.example.com/avatars/jean-baptiste.poquelin/256x256.png");
+        user.setLangKey("fr");
+        user.setActivated(true);
+        user.setCreatedBy("system");
+        user.setCreatedDate(Instant.parse("2020-01-15T09:30:00.123456789Z"));
+        user.setLastModifiedBy("admin");
+        user.setLastModifiedDate(Instant.now());
+        user.setAuthorities(new HashSet<>());
+        for (String name : new String[] { "ROLE_USER", "ROLE_ADMIN" }) {
+            Authority authority = new Authority();
+            authority.setName(name);
+            user.getAuthorities().add(authority);
+        }
+        source = stringMapper.mapObject(user);
+    }
+
+    private static ObjectMapper objectMapper() {
+        return new ObjectMapper().registerModule(new JavaTimeModule());
+    }
+
+    @Benchmark
+    public Map<String, Object> mapObjectThroughString() {
+        return stringMapper.mapObject(user);
+    }
+
+    @Benchmark
+    public Map<String, Object> mapObjectStreaming() {
+        return streamingMapper.mapObject(user);
+    }
+
+    @Benchmark
+    public User readObjectThroughString() {
+        return stringMapper.readObject(source, User.class);
+    }
+
+    @Benchmark
+    public User readObjectStreaming() {
+        return streamingMapper.readObject(source, User.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(CustomEntityMapperBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * The previous implementation of the mapper, for comparison.
+     */
+    private static class StringEntityMapper extends ElasticsearchConfiguration.CustomEntityMapper {
+
+        StringEntityMapper(ObjectMapper objectMapper) {
+            super(objectMapper);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> mapObject(Object source) {
+            try {
+                return mapToObject(mapToString(source), HashMap.class);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public <T> T readObject(Map<String, Object> source, Class<T> targetType) {
+            try {
+                return mapToObject(mapToString(source), targetType);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
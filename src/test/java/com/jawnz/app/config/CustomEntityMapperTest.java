@@ -0,0 +1,58 @@
+package com.jawnz.app.config;
+
+import com.jawnz.app.domain.User;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link ElasticsearchConfiguration.CustomEntityMapper}.
+ */
+public class CustomEntityMapperTest {
+
+    private ElasticsearchConfiguration.CustomEntityMapper mapper;
+
+    private User user;
+
+    @BeforeEach
+    public void init() {
+        mapper = new ElasticsearchConfiguration.CustomEntityMapper(new ObjectMapper().registerModule(new JavaTimeModule()));
+        user = new User();
+        user.setId("id1");
+        user.setLogin("johndoe");
+        user.setFirstName("john");
+        user.setLastName("doe");
+        user.setEmail("johndoe@localhost");
+        user.setActivated(true);
+        user.setLangKey("en");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void mapObjectMatchesTheJsonDocument() throws IOException {
+        Map<String, Object> fromJson = mapper.mapToObject(mapper.mapToString(user), HashMap.class);
+
+        assertThat(mapper.mapObject(user)).isEqualTo(fromJson);
+    }
+
+    @Test
+    public void readObjectRoundTrips() {
+        User read = mapper.readObject(mapper.mapObject(user), User.class);
+
+        assertThat(read.getId()).isEqualTo("id1");
+        assertThat(read.getLogin()).isEqualTo("johndoe");
+        assertThat(read.getFirstName()).isEqualTo("john");
+        assertThat(read.getLastName()).isEqualTo("doe");
+        assertThat(read.getEmail()).isEqualTo("johndoe@localhost");
+        assertThat(read.getActivated()).isTrue();
+        assertThat(read.getLangKey()).isEqualTo("en");
+    }
+}
@@ -0,0 +1,123 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link CoalescingCache}.
+ */
+public class CoalescingCacheTest {
+
+    private ConcurrentMapCache delegate;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void init() {
+        delegate = new ConcurrentMapCache("usersByLogin");
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void concurrentMissesRunASingleLoader() throws Exception {
+        CoalescingCache cache = new CoalescingCache(delegate, value -> new StringBuilder((CharSequence) value), null, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<StringBuilder>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("john", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return new StringBuilder("John");
+            })));
+            loading.await();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> cache.get("john", () -> {
+                    loads.incrementAndGet();
+                    return new StringBuilder("other");
+                })));
+            }
+            while (meterRegistry.get("cache.load.coalesced").counter().count() < 3) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            List<StringBuilder> values = new ArrayList<>();
+            for (Future<StringBuilder> result : results) {
+                values.add(result.get(5, TimeUnit.SECONDS));
+            }
+            assertThat(loads).hasValue(1);
+            assertThat(values).extracting(StringBuilder::toString).containsOnly("John");
+            assertThat(values.get(1)).isNotSameAs(values.get(0));
+            assertThat(meterRegistry.get("cache.loads").timer().count()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void loaderFailuresAreRethrown() {
+        CoalescingCache cache = new CoalescingCache(delegate, value -> value, null, meterRegistry);
+
+        assertThatThrownBy(() -> cache.get("john", () -> {
+            throw new IllegalStateException("down");
+        })).isInstanceOf(Cache.ValueRetrievalException.class);
+        assertThat(cache.get("john", () -> "John")).isEqualTo("John");
+    }
+
+    @Test
+    public void valuesLoadedByTheLeaseHolderAreAwaited() {
+        CoalescingCache cache = new CoalescingCache(delegate, value -> value, new BusyLease(() -> delegate.put("john", "John")), meterRegistry);
+
+        assertThat(cache.get("john", () -> "loaded")).isEqualTo("John");
+        assertThat(meterRegistry.get("cache.load.lease.busy").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.loads").timer().count()).isZero();
+    }
+
+    /**
+     * A lease held by another instance, which loads the value while it is awaited.
+     */
+    private static class BusyLease implements LoadLease {
+
+        private final Runnable otherInstance;
+
+        BusyLease(Runnable otherInstance) {
+            this.otherInstance = otherInstance;
+        }
+
+        @Override
+        public boolean tryAcquire(String cacheName, Object key) {
+            return false;
+        }
+
+        @Override
+        public void release(String cacheName, Object key) {
+            throw new AssertionError("The lease was not taken");
+        }
+
+        @Override
+        public Cache.ValueWrapper await(Supplier<Cache.ValueWrapper> lookup) {
+            otherInstance.run();
+            return lookup.get();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.jawnz.app.config.cache;
+
+import com.jawnz.app.domain.Authority;
+import com.jawnz.app.domain.User;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the size and the encoding and decoding times of a cached user with {@link CompactCacheTranscoder}
+ * and with Java serialization, which is what the default memcached transcoder does.
+ * <p>
+ * This is not run with the tests: launch {@link #main(String[])} from the IDE, or with
+ * {@code ./mvnw test-compile exec:java -Dexec.mainClass=com.jawnz.app.config.cache.CompactCacheTranscoderBenchmark -Dexec.classpathScope=test}.
+ * The sizes are printed before the benchmarks run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactCacheTranscoderBenchmark {
+
+    private CompactCacheTranscoder transcoder;
+
+    private User user;
+
+    private byte[] compact;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        transcoder = new CompactCacheTranscoder(512);
+        user = user();
+        compact = transcoder.encodeValue(user);
+        serialized = serialize(user);
+    }
+
+    @Benchmark
+    public byte[] encodeCompact() {
+        return transcoder.encodeValue(user);
+    }
+
+    @Benchmark
+    public byte[] encodeJava() throws IOException {
+        return serialize(user);
+    }
+
+    @Benchmark
+    public Object decodeCompact() {
+        return transcoder.decodeValue(compact);
+    }
+
+    @Benchmark
+    public Object decodeJava() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return input.readObject();
+        }
+    }
+
+    static User user() {
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setLogin("jean-baptiste.poquelin");
+        user.setFirstName("Jean-Baptiste");
+        user.setLastName("Poquelin");
+        user.setEmail("jean-baptiste.poquelin@comedie-francaise.fr");
+        user.setImageUrl("https://cdn.example.com/avatars/jean-baptiste.poquelin/256x256.png");
+        user.setLangKey("fr");
+        user.setActivated(true);
+        user.setCreatedBy("system");
+        user.setCreatedDate(Instant.parse("2020-01-15T09:30:00.123456789Z"));
+        user.setLastModifiedBy("admin");
+        user.setLastModifiedDate(Instant.now());
+        user.setAuthorities(new HashSet<>());
+        for (String name : new String[] { "ROLE_USER", "ROLE_ADMIN" }) {
+            Authority authority = new Authority();
+            authority.setName(name);
+            user.getAuthorities().add(authority);
+        }
+        return user;
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        User user = user();
+        System.out.printf("Compact: %d bytes, Java serialization: %d bytes%n",
+            new CompactCacheTranscoder(512).encodeValue(user).length, serialize(user).length);
+        Options options = new OptionsBuilder()
+            .include(CompactCacheTranscoderBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
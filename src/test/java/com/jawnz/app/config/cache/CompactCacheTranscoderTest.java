@@ -0,0 +1,119 @@
+package com.jawnz.app.config.cache;
+
+import com.jawnz.app.domain.Authority;
+import com.jawnz.app.domain.User;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link CompactCacheTranscoder}.
+ */
+public class CompactCacheTranscoderTest {
+
+    private CompactCacheTranscoder transcoder;
+
+    private User user;
+
+    @BeforeEach
+    public void init() {
+        transcoder = new CompactCacheTranscoder(512);
+        user = new User();
+        user.setId("id1");
+        user.setLogin("johndoe");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setEmail("johndoe@localhost");
+        user.setImageUrl("http://placehold.it/50x50");
+        user.setActivated(true);
+        user.setLangKey("en");
+        user.setAuthorities(new HashSet<>(Arrays.asList(authority("ROLE_USER"), authority("ROLE_ADMIN"))));
+        user.setCreatedBy("system");
+        user.setCreatedDate(Instant.parse("1969-07-20T20:17:40.123456789Z"));
+        user.setLastModifiedBy("admin");
+        user.setLastModifiedDate(Instant.parse("2020-06-01T10:00:00Z"));
+        user.setVersion(3L);
+    }
+
+    @Test
+    public void usersRoundTrip() {
+        User decoded = (User) transcoder.decodeValue(transcoder.encodeValue(user));
+
+        assertThat(decoded).isEqualToComparingFieldByField(user);
+        assertThat(decoded.getAuthorities()).extracting(Authority::getName).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+    }
+
+    @Test
+    public void absentFieldsAreNull() {
+        User empty = new User();
+        empty.setCreatedDate(null);
+        empty.setLastModifiedDate(null);
+
+        User decoded = (User) transcoder.decodeValue(transcoder.encodeValue(empty));
+
+        assertThat(decoded.getLogin()).isNull();
+        assertThat(decoded.getCreatedDate()).isNull();
+        assertThat(decoded.getAuthorities()).isEmpty();
+    }
+
+    @Test
+    public void encodedUsersAreSmallerThanWithJavaSerialization() throws IOException {
+        assertThat(transcoder.encodeValue(user).length).isLessThan(serialize(user).length / 3);
+    }
+
+    @Test
+    public void largeValuesAreCompressed() {
+        user.setImageUrl(String.join("/", Collections.nCopies(100, "https://cdn.example.com")));
+
+        byte[] encoded = transcoder.encodeValue(user);
+
+        assertThat(encoded[1]).isEqualTo(CompactCacheTranscoder.FLAG_LZ4);
+        assertThat(((User) transcoder.decodeValue(encoded)).getImageUrl()).isEqualTo(user.getImageUrl());
+    }
+
+    @Test
+    public void unknownFieldsAreSkipped() {
+        byte[] encoded = transcoder.encodeValue(user);
+        // a varint field 31 and a string field 32, written by a later version
+        byte[] extra = { (byte) 0xF8, 0x01, 0x2A, (byte) 0x82, 0x02, 0x02, 'o', 'k' };
+        byte[] extended = Arrays.copyOf(encoded, encoded.length + extra.length);
+        System.arraycopy(extra, 0, extended, encoded.length, extra.length);
+
+        assertThat(((User) transcoder.decodeValue(extended)).getLogin()).isEqualTo("johndoe");
+    }
+
+    @Test
+    public void otherValuesUseJavaSerialization() {
+        assertThat(transcoder.decodeValue(transcoder.encodeValue(Boolean.TRUE))).isEqualTo(Boolean.TRUE);
+    }
+
+    @Test
+    public void unreadableValuesAreMisses() throws IOException {
+        assertThat(transcoder.decodeValue(serialize(user))).isNull();
+        assertThat(transcoder.decodeValue(new byte[] { CompactCacheTranscoder.FORMAT_USER, 0, (byte) 0x0A, 0x7F })).isNull();
+    }
+
+    private static Authority authority(String name) {
+        Authority authority = new Authority();
+        authority.setName(name);
+        return authority;
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,91 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link InstrumentedCache} and {@link HotKeySampler}.
+ */
+public class InstrumentedCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CacheInstrumentation cacheInstrumentation;
+
+    @BeforeEach
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        cacheInstrumentation = new CacheInstrumentation(meterRegistry, 1, 10);
+    }
+
+    @Test
+    public void recordsHitsMissesPutsAndEvictions() {
+        InstrumentedCache cache = cacheInstrumentation.instrument(new ConcurrentMapCache("usersByLogin"));
+
+        assertThat(cache.get("john")).isNull();
+        cache.put("john", "John");
+        assertThat(cache.get("john").get()).isEqualTo("John");
+        assertThat(cache.get("john", String.class)).isEqualTo("John");
+        cache.evict("john");
+
+        assertThat(meterRegistry.get("cache.memcached.gets").tags("cache", "usersByLogin", "result", "hit").timer().count())
+            .isEqualTo(2);
+        assertThat(meterRegistry.get("cache.memcached.gets").tags("cache", "usersByLogin", "result", "miss").timer().count())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("cache.memcached.puts").tag("cache", "usersByLogin").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.memcached.evictions").tag("cache", "usersByLogin").counter().count()).isEqualTo(1);
+        assertThat(cacheInstrumentation.getCaches()).containsExactly(cache);
+    }
+
+    @Test
+    public void loadsOnMissAndStores() {
+        InstrumentedCache cache = cacheInstrumentation.instrument(new ConcurrentMapCache("usersByLogin"));
+
+        assertThat(cache.get("john", () -> "John")).isEqualTo("John");
+        assertThat(cache.get("john", () -> "other")).isEqualTo("John");
+        assertThat(cache.getPuts().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void recordsPayloadSizesOfTheTranscoder() {
+        CompactCacheTranscoder transcoder = new CompactCacheTranscoder(512, cacheInstrumentation.payloadSizes("usersByLogin"));
+
+        transcoder.decode(transcoder.encode(CompactCacheTranscoderBenchmark.user()));
+
+        assertThat(meterRegistry.get("cache.memcached.payload").tag("cache", "usersByLogin").summary().count()).isEqualTo(2);
+        assertThat(cacheInstrumentation.payloadSummary("usersByLogin").max()).isGreaterThan(0);
+    }
+
+    @Test
+    public void hotKeysAreTheMostSampled() {
+        HotKeySampler sampler = new HotKeySampler(1, 3);
+        for (int i = 0; i < 10; i++) {
+            sampler.sample("john");
+        }
+        for (int i = 0; i < 5; i++) {
+            sampler.sample("jane");
+        }
+        sampler.sample("jim");
+        sampler.sample("joe");
+
+        assertThat(sampler.top(2)).extracting(Map.Entry::getKey).containsExactly("john", "jane");
+        assertThat(sampler.top(2).get(0).getValue()).isEqualTo(10);
+        // joe replaced jim, the least counted key, and inherited its count
+        assertThat(sampler.top(3)).extracting(Map.Entry::getKey).containsExactly("john", "jane", "joe");
+        assertThat(sampler.top(3).get(2).getValue()).isEqualTo(2);
+    }
+
+    @Test
+    public void nothingIsSampledWithAZeroRate() {
+        HotKeySampler sampler = new HotKeySampler(0, 3);
+        sampler.sample("john");
+
+        assertThat(sampler.top(10)).isEmpty();
+    }
+}
@@ -0,0 +1,134 @@
+package com.jawnz.app.config.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link RefreshAheadCache}.
+ */
+public class RefreshAheadCacheTest {
+
+    private ConcurrentMapCache delegate;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private MutableClock clock;
+
+    private List<Runnable> tasks;
+
+    private RefreshAheadCache cache;
+
+    @BeforeEach
+    public void init() {
+        delegate = new ConcurrentMapCache("usersByLogin");
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new MutableClock();
+        tasks = new ArrayList<>();
+        cache = new RefreshAheadCache(delegate, 300000, 30000, 1, 10, tasks::add, clock, meterRegistry);
+    }
+
+    @Test
+    public void readsOutsideTheWindowDoNotRefresh() {
+        AtomicInteger loads = new AtomicInteger();
+        assertThat(cache.get("john", () -> "John" + loads.incrementAndGet())).isEqualTo("John1");
+
+        clock.advance(Duration.ofSeconds(200));
+        assertThat(cache.get("john", () -> "John" + loads.incrementAndGet())).isEqualTo("John1");
+
+        assertThat(tasks).isEmpty();
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    public void readsInTheWindowRefreshInTheBackground() {
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("john", () -> "John" + loads.incrementAndGet());
+
+        clock.advance(Duration.ofSeconds(280));
+        assertThat(cache.get("john", () -> "John" + loads.incrementAndGet())).isEqualTo("John1");
+        // a single refresh per key
+        assertThat(cache.get("john", () -> "John" + loads.incrementAndGet())).isEqualTo("John1");
+        assertThat(tasks).hasSize(1);
+
+        tasks.remove(0).run();
+        assertThat(delegate.get("john").get()).isEqualTo("John2");
+        assertThat(meterRegistry.get("cache.refreshes").tag("result", "success").counter().count()).isEqualTo(1);
+
+        // the refreshed entry has a new expiration
+        clock.advance(Duration.ofSeconds(100));
+        cache.get("john", () -> "John" + loads.incrementAndGet());
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    public void refreshesOverTheLimitAreSkipped() {
+        cache.get("john", () -> "John");
+        cache.get("jane", () -> "Jane");
+
+        clock.advance(Duration.ofSeconds(280));
+        cache.get("john", () -> "John");
+        cache.get("jane", () -> "Jane");
+
+        assertThat(tasks).hasSize(1);
+        assertThat(meterRegistry.get("cache.refreshes").tag("result", "skipped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void refreshedValuesAreNotWrittenAfterAnEviction() {
+        cache.get("john", () -> "John");
+        clock.advance(Duration.ofSeconds(280));
+        cache.get("john", () -> "stale");
+
+        cache.evict("john");
+        tasks.remove(0).run();
+
+        assertThat(delegate.get("john")).isNull();
+    }
+
+    @Test
+    public void entriesOfUnknownExpirationAreNotRefreshed() {
+        delegate.put("john", "John");
+
+        clock.advance(Duration.ofSeconds(280));
+        assertThat(cache.get("john", () -> "other")).isEqualTo("John");
+
+        assertThat(tasks).isEmpty();
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.jawnz.app.config.cache;
+
+import com.jawnz.app.domain.User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link TwoTierCache} and {@link NearCache}.
+ */
+public class TwoTierCacheTest {
+
+    private ConcurrentMapCache l2;
+
+    private MutableClock clock;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private List<Object> invalidations;
+
+    private TwoTierCache cache;
+
+    @BeforeEach
+    public void init() {
+        l2 = new ConcurrentMapCache("usersByLogin");
+        clock = new MutableClock();
+        meterRegistry = new SimpleMeterRegistry();
+        invalidations = new ArrayList<>();
+        cache = new TwoTierCache(l2, new NearCache(1000, 5000, value -> 100, clock), TwoTierCacheTest::copy,
+            invalidations::add, meterRegistry);
+    }
+
+    @Test
+    public void readsFromTheSharedCacheAreKeptInProcess() {
+        l2.put("john", user("john"));
+
+        assertThat(cache.get("john", User.class).getLogin()).isEqualTo("john");
+        l2.evict("john");
+
+        assertThat(cache.get("john", User.class).getLogin()).isEqualTo("john");
+        assertThat(meterRegistry.get("cache.tier.gets").tags("tier", "l1", "result", "hit").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.tier.gets").tags("tier", "l2", "result", "hit").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.tier.hit.ratio").tags("tier", "l1").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void batchReadsGoToTheSharedCacheForTheInProcessMisses() {
+        cache.put("john", user("john"));
+        l2.evict("john");
+        l2.put("jane", user("jane"));
+
+        Map<Object, Cache.ValueWrapper> values = cache.getAll(Arrays.asList("john", "jane", "jim"));
+
+        assertThat(values).containsOnlyKeys("john", "jane");
+        assertThat(((User) values.get("jane").get()).getLogin()).isEqualTo("jane");
+        l2.evict("jane");
+        assertThat(cache.get("jane", User.class).getLogin()).isEqualTo("jane");
+    }
+
+    @Test
+    public void inProcessEntriesExpire() {
+        cache.put("john", user("john"));
+        l2.evict("john");
+
+        clock.advance(Duration.ofSeconds(6));
+
+        assertThat(cache.get("john")).isNull();
+    }
+
+    @Test
+    public void callersGetCopies() {
+        cache.put("john", user("john"));
+
+        cache.get("john", User.class).setFirstName("changed");
+
+        assertThat(cache.get("john", User.class).getFirstName()).isEqualTo("John");
+    }
+
+    @Test
+    public void evictionsAreBroadcast() {
+        cache.put("john", user("john"));
+
+        cache.evict("john");
+
+        assertThat(cache.get("john")).isNull();
+        assertThat(invalidations).containsExactly("john");
+    }
+
+    @Test
+    public void readsDuringAnEvictionAreNotKeptInProcess() {
+        l2.put("john", user("john"));
+        TwoTierCache[] self = new TwoTierCache[1];
+        Cache slowL2 = new ConcurrentMapCache("usersByLogin") {
+            @Override
+            public void evict(Object key) {
+                // a read of the stale value, which started before the eviction, completes in between
+                self[0].get(key);
+                l2.evict(key);
+            }
+
+            @Override
+            public ValueWrapper get(Object key) {
+                return l2.get(key);
+            }
+        };
+        self[0] = new TwoTierCache(slowL2, new NearCache(1000, 5000, value -> 100, clock), TwoTierCacheTest::copy,
+            invalidations::add, new SimpleMeterRegistry());
+
+        self[0].evict("john");
+
+        assertThat(self[0].get("john")).isNull();
+    }
+
+    @Test
+    public void loadedEntriesEvictedDuringTheLoadingAreNotWritten() {
+        long generation = cache.generation();
+        cache.evict("john");
+
+        cache.putIfNotEvicted("john", user("john"), generation);
+
+        assertThat(cache.get("john")).isNull();
+        cache.putIfNotEvicted("john", user("john"), cache.generation());
+        l2.evict("john");
+        assertThat(cache.get("john", User.class).getLogin()).isEqualTo("john");
+    }
+
+    @Test
+    public void localEvictionsKeepTheSharedCache() {
+        cache.put("john", user("john"));
+
+        cache.evictLocal("john");
+
+        assertThat(l2.get("john")).isNotNull();
+        assertThat(invalidations).isEmpty();
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvictedAboveTheMaximumWeight() {
+        NearCache nearCache = new NearCache(500, 5000, value -> 100, clock);
+        nearCache.put("a", "1");
+        nearCache.put("b", "2");
+        nearCache.get("a");
+
+        nearCache.put("c", "3");
+
+        assertThat(nearCache.get("a")).isNotNull();
+        assertThat(nearCache.get("b")).isNull();
+        assertThat(nearCache.weight()).isEqualTo(400);
+        assertThat(nearCache.evictions()).isEqualTo(1);
+    }
+
+    private static User user(String login) {
+        User user = new User();
+        user.setId(login);
+        user.setLogin(login);
+        user.setFirstName("John");
+        return user;
+    }
+
+    private static Object copy(Object value) {
+        if (!(value instanceof User)) {
+            return value;
+        }
+        User copy = user(((User) value).getLogin());
+        copy.setFirstName(((User) value).getFirstName());
+        return copy;
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
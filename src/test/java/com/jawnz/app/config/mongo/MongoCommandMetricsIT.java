@@ -0,0 +1,36 @@
+package com.jawnz.app.config.mongo;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.repository.UserRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link MongoCommandMetrics}.
+ */
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class})
+public class MongoCommandMetricsIT {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void assertThatTheCommandsAreTaggedWithTheRepositoryMethod() {
+        userRepository.findAllByLoginIn(Collections.singletonList("johndoe"));
+
+        assertThat(meterRegistry.get(MongoCommandMetrics.COMMANDS)
+            .tags("command", "find", "repository.method", "UserRepository.findAllByLoginIn")
+            .timer().count()).isPositive();
+    }
+}
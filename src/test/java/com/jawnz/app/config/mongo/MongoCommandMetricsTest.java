@@ -0,0 +1,81 @@
+package com.jawnz.app.config.mongo;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link MongoCommandMetrics} and {@link SlowCommandLog}.
+ */
+public class MongoCommandMetricsTest {
+
+    private static final ConnectionDescription CONNECTION = new ConnectionDescription(
+        new ServerId(new ClusterId(), new ServerAddress()));
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private SlowCommandLog slowCommandLog;
+
+    private MongoCommandMetrics commandMetrics;
+
+    @BeforeEach
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        slowCommandLog = new SlowCommandLog(2, false, Runnable::run, null);
+        commandMetrics = new MongoCommandMetrics(meterRegistry, slowCommandLog, 100, 1);
+    }
+
+    @Test
+    public void timesTheCommandsByCollection() {
+        BsonDocument find = BsonDocument.parse("{find: 'jwn_user', filter: {login: 'johndoe'}, $db: 'jawnzapp'}");
+        commandMetrics.commandStarted(new CommandStartedEvent(1, CONNECTION, "jawnzapp", "find", find));
+        commandMetrics.commandSucceeded(new CommandSucceededEvent(1, CONNECTION, "find", new BsonDocument(),
+            TimeUnit.MILLISECONDS.toNanos(5)));
+
+        assertThat(meterRegistry.get(MongoCommandMetrics.COMMANDS)
+            .tags("collection", "jwn_user", "command", "find", "repository.method", MongoCommandMetrics.NONE,
+                "status", "success")
+            .timer().count()).isEqualTo(1);
+        assertThat(slowCommandLog.getCommands()).isEmpty();
+    }
+
+    @Test
+    public void logsTheSlowCommandsRedacted() {
+        BsonDocument find = BsonDocument.parse("{find: 'jwn_user', filter: {login: 'johndoe', activated: true}," +
+            " sort: {login: 1}, lsid: {id: 1}, $db: 'jawnzapp'}");
+        commandMetrics.commandStarted(new CommandStartedEvent(2, CONNECTION, "jawnzapp", "find", find));
+        commandMetrics.commandSucceeded(new CommandSucceededEvent(2, CONNECTION, "find", new BsonDocument(),
+            TimeUnit.MILLISECONDS.toNanos(150)));
+
+        assertThat(slowCommandLog.getCommands()).hasSize(1);
+        SlowCommandLog.SlowCommand slowCommand = slowCommandLog.getCommands().get(0);
+        assertThat(slowCommand.getCollection()).isEqualTo("jwn_user");
+        assertThat(slowCommand.getDurationMs()).isEqualTo(150);
+        assertThat(BsonDocument.parse(slowCommand.getCommand())).isEqualTo(BsonDocument.parse(
+            "{find: 'jwn_user', filter: {login: '?', activated: '?'}, sort: {login: '?'}}"));
+    }
+
+    @Test
+    public void summarizesTheWinningPlan() {
+        Document plan = Document.parse("{stage: 'LIMIT', inputStage: {stage: 'FETCH'," +
+            " inputStage: {stage: 'IXSCAN', indexName: 'login_1'}}}");
+
+        assertThat(SlowCommandLog.summarize(plan)).isEqualTo("LIMIT > FETCH > IXSCAN login_1");
+        assertThat(SlowCommandLog.summarize(Document.parse("{stage: 'SUBPLAN', inputStage: {stage: 'OR'," +
+            " inputStages: [{stage: 'IXSCAN', indexName: 'login_1'}, {stage: 'COLLSCAN'}]}}")))
+            .isEqualTo("SUBPLAN > OR > [IXSCAN login_1, COLLSCAN]");
+        assertThat(SlowCommandLog.summarize(null)).isEqualTo("unavailable");
+    }
+}
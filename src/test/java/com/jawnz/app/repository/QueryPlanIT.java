@@ -0,0 +1,115 @@
+package com.jawnz.app.repository;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.config.mongo.SlowCommandLog;
+import com.jawnz.app.domain.PersistentAuditEvent;
+import com.jawnz.app.domain.User;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests explaining the queries of the MongoDB repositories, which must all use an index.
+ * <p>
+ * Every command is logged as slow and explained by the {@link SlowCommandLog}. A query method added to a
+ * repository fails this test until it is run below.
+ */
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class}, properties = {
+    "application.mongo-metrics.slow-threshold-ms=0",
+    "application.mongo-metrics.slow-sample-rate=1",
+    "application.mongo-metrics.slow-log-capacity=1000"
+})
+public class QueryPlanIT {
+
+    private static final List<Class<?>> REPOSITORIES = Arrays.asList(
+        UserRepository.class, AuthorityRepository.class, PersistenceAuditEventRepository.class);
+
+    private static final Set<String> QUERY_COMMANDS = new HashSet<>(Arrays.asList(
+        "find", "aggregate", "count", "distinct", "findAndModify", "update", "delete"));
+
+    private static final long EXPLAIN_TIMEOUT_MS = 10000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private SlowCommandLog slowCommandLog;
+
+    @Test
+    public void assertThatNoRepositoryQueryScansACollection() throws InterruptedException {
+        // empty collections are not planned
+        String login = "query-plan-" + RandomStringUtils.randomAlphanumeric(8).toLowerCase();
+        User user = new User();
+        user.setLogin(login);
+        user.setEmail(login + "@localhost");
+        mongoTemplate.insert(user);
+        Instant now = Instant.now();
+        PersistentAuditEvent auditEvent = new PersistentAuditEvent();
+        auditEvent.setPrincipal(login);
+        auditEvent.setAuditEventType("AUTHENTICATION_SUCCESS");
+        auditEvent.setAuditEventDate(now);
+        mongoTemplate.insert(auditEvent);
+        Instant start = Instant.now();
+
+        userRepository.findOneByLogin(login);
+        userRepository.findAllByLoginIn(Collections.singletonList(login));
+        userRepository.findAllByLoginNot(PageRequest.of(0, 10, Sort.by("login")), "anonymoususer");
+        persistenceAuditEventRepository.findByPrincipal(login);
+        persistenceAuditEventRepository.findByPrincipalAndAuditEventDateAfterAndAuditEventType(login,
+            now.minus(1, ChronoUnit.DAYS), "AUTHENTICATION_SUCCESS");
+        persistenceAuditEventRepository.findAllByAuditEventDateBetween(now.minus(1, ChronoUnit.DAYS),
+            now.plus(1, ChronoUnit.DAYS), PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "auditEventDate")));
+
+        List<SlowCommandLog.SlowCommand> queries = explainedQueries(start);
+        Set<String> queryMethods = REPOSITORIES.stream()
+            .flatMap(repository -> Arrays.stream(repository.getDeclaredMethods())
+                .map(method -> repository.getSimpleName() + "." + method.getName()))
+            .collect(Collectors.toSet());
+        assertThat(queries.stream().map(SlowCommandLog.SlowCommand::getRepositoryMethod).collect(Collectors.toSet()))
+            .containsAll(queryMethods);
+        for (SlowCommandLog.SlowCommand query : queries) {
+            assertThat(query.getPlan())
+                .as("plan of %s: %s", query.getRepositoryMethod(), query.getCommand())
+                .isNotEqualTo("unavailable")
+                .doesNotContain("COLLSCAN");
+        }
+    }
+
+    private List<SlowCommandLog.SlowCommand> explainedQueries(Instant start) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + EXPLAIN_TIMEOUT_MS;
+        while (true) {
+            List<SlowCommandLog.SlowCommand> queries = slowCommandLog.getCommands().stream()
+                .filter(command -> command.getRepositoryMethod() != null && !command.getTime().isBefore(start))
+                .filter(command -> QUERY_COMMANDS.contains(command.getCommandName()))
+                .collect(Collectors.toList());
+            boolean explained = queries.stream().allMatch(command -> command.getPlan() != null);
+            if (explained || System.currentTimeMillis() > deadline) {
+                return queries;
+            }
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.jawnz.app.repository.search;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.ElasticsearchConfiguration;
+import com.jawnz.app.domain.User;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestClientFactory;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.config.HttpClientConfig;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Index;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+import io.searchbox.indices.CreateIndex;
+import io.searchbox.indices.DeleteIndex;
+import io.searchbox.indices.Refresh;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+
+/**
+ * Compares the latency of a page of user search in the embedded {@link LuceneUserSearchRepository} with the same
+ * search sent to Elasticsearch through Jest, on the same generated users.
+ * <p>
+ * This is not run with the tests: start Elasticsearch, for example with
+ * {@code docker-compose -f src/main/docker/elasticsearch.yml up -d}, then launch {@link #main(String[])} from the
+ * IDE, or with
+ * {@code ./mvnw test-compile exec:java -Dexec.mainClass=com.jawnz.app.repository.search.LuceneUserSearchRepositoryBenchmark -Dexec.classpathScope=test}.
+ * The Elasticsearch URL defaults to {@code http://localhost:9200}, and can be set with the {@code jest.uri} system
+ * property. Latency percentiles are reported by the sample time mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LuceneUserSearchRepositoryBenchmark {
+
+    private static final String INDEX = "user-benchmark";
+
+    private static final String[] FIRST_NAMES = { "John", "Jane", "Alice", "Bob", "Carol", "David", "Erin", "Frank" };
+
+    private static final String[] LAST_NAMES = { "Doe", "Smith", "Martin", "Bernard", "Dubois", "Moreau", "Garcia" };
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({ "100000" })
+    private int users;
+
+    @Param({ "john", "lastName:smith AND activated:true", "login:jan*" })
+    private String query;
+
+    private Path directory;
+
+    private LuceneUserSearchRepository repository;
+
+    private JestClient jestClient;
+
+    private ElasticsearchConfiguration.CustomEntityMapper entityMapper;
+
+    private String jestSearch;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        entityMapper = new ElasticsearchConfiguration.CustomEntityMapper(new ObjectMapper().registerModule(new JavaTimeModule()));
+        List<User> generated = generate(users);
+
+        directory = Files.createTempDirectory("lucene-user-benchmark");
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getUserLucene().setDirectory(directory.toString());
+        repository = new LuceneUserSearchRepository(applicationProperties, entityMapper, null);
+        repository.open();
+        repository.saveAll(generated);
+
+        JestClientFactory factory = new JestClientFactory();
+        factory.setHttpClientConfig(new HttpClientConfig.Builder(System.getProperty("jest.uri", "http://localhost:9200"))
+            .multiThreaded(true)
+            .build());
+        jestClient = factory.getObject();
+        jestClient.execute(new DeleteIndex.Builder(INDEX).build());
+        check(jestClient.execute(new CreateIndex.Builder(INDEX).build()));
+        for (int from = 0; from < generated.size(); from += 1000) {
+            Bulk.Builder bulk = new Bulk.Builder().defaultIndex(INDEX).defaultType("user");
+            for (User user : generated.subList(from, Math.min(from + 1000, generated.size()))) {
+                bulk.addAction(new Index.Builder(entityMapper.mapToString(user)).id(user.getId()).build());
+            }
+            check(jestClient.execute(bulk.build()));
+        }
+        check(jestClient.execute(new Refresh.Builder().addIndex(INDEX).build()));
+
+        jestSearch = new SearchSourceBuilder()
+            .query(queryStringQuery(query))
+            .size(PAGE_SIZE)
+            .sort("_score", SortOrder.DESC)
+            .sort("id.keyword", SortOrder.ASC)
+            .toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jestClient.execute(new DeleteIndex.Builder(INDEX).build());
+        jestClient.close();
+        repository.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<User> lucene() {
+        return repository.searchAfter(queryStringQuery(query), PAGE_SIZE, null).getContent();
+    }
+
+    @Benchmark
+    public List<User> jest() throws IOException {
+        SearchResult result = jestClient.execute(new Search.Builder(jestSearch).addIndex(INDEX).build());
+        List<User> page = new ArrayList<>(PAGE_SIZE);
+        for (SearchResult.Hit<Map, Void> hit : result.getHits(Map.class, false)) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> source = hit.source;
+            page.add(entityMapper.readObject(source, User.class));
+        }
+        return page;
+    }
+
+    private static List<User> generate(int count) {
+        Random random = new Random(42);
+        List<User> generated = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            User user = new User();
+            user.setId(String.format("%08d", i));
+            user.setLogin((firstName.charAt(0) + lastName + i).toLowerCase());
+            user.setFirstName(firstName);
+            user.setLastName(lastName);
+            user.setEmail(user.getLogin() + "@localhost");
+            user.setActivated(random.nextInt(10) > 0);
+            user.setLangKey("en");
+            generated.add(user);
+        }
+        return generated;
+    }
+
+    private static void check(JestResult result) {
+        if (!result.isSucceeded()) {
+            throw new IllegalStateException(result.getErrorMessage());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(LuceneUserSearchRepositoryBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
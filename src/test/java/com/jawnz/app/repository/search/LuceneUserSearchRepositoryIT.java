@@ -0,0 +1,87 @@
+package com.jawnz.app.repository.search;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.Constants;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.UserRepository;
+import com.jawnz.app.security.AuthoritiesConstants;
+import com.jawnz.app.service.UserSearchService;
+import com.jawnz.app.service.dto.UserDTO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests of the application with the "lucene" profile, where the embedded
+ * {@link LuceneUserSearchRepository} replaces the Elasticsearch repositories.
+ */
+@AutoConfigureMockMvc
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+@ActiveProfiles(Constants.SPRING_PROFILE_LUCENE)
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class},
+    properties = "application.user-lucene.directory=target/lucene/user")
+public class LuceneUserSearchRepositoryIT {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSearchRepository userSearchRepository;
+
+    @Autowired
+    private UserSearchService userSearchService;
+
+    @Autowired
+    private MockMvc restUserMockMvc;
+
+    @BeforeEach
+    public void init() {
+        userRepository.deleteAll();
+        userSearchRepository.deleteAll();
+    }
+
+    @Test
+    public void theEmbeddedIndexIsTheOnlyUserSearchRepository() {
+        assertThat(applicationContext.getBeansOfType(UserSearchRepository.class)).hasSize(1);
+        assertThat(userSearchRepository).isInstanceOf(LuceneUserSearchRepository.class);
+    }
+
+    @Test
+    public void usersAreSearchedInTheEmbeddedIndex() {
+        User user = new User();
+        user.setId("lucene-1");
+        user.setLogin("lucenedoe");
+        user.setEmail("lucenedoe@localhost");
+        user.setActivated(true);
+        userRepository.save(user);
+        userSearchRepository.save(user);
+
+        UserSearchService.Result result = userSearchService.search("lucenedoe", 10, null, true);
+
+        assertThat(result.getContent()).extracting(UserDTO::getLogin).containsExactly("lucenedoe");
+        assertThat(result.getTotal()).isEqualTo(1);
+    }
+
+    @Test
+    public void unsupportedQueriesAreInvalidQueries() throws Exception {
+        restUserMockMvc.perform(get("/api/_search/users").param("query", "lucenedoe AND"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.invalidquery"));
+    }
+}
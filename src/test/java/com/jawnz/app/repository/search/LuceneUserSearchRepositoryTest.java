@@ -0,0 +1,137 @@
+package com.jawnz.app.repository.search;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.ElasticsearchConfiguration;
+import com.jawnz.app.domain.User;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * Unit tests for {@link LuceneUserSearchRepository}.
+ */
+public class LuceneUserSearchRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    private LuceneUserSearchRepository repository;
+
+    @BeforeEach
+    public void init() throws IOException {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getUserLucene().setDirectory(directory.toString());
+        repository = new LuceneUserSearchRepository(applicationProperties,
+            new ElasticsearchConfiguration.CustomEntityMapper(new ObjectMapper().registerModule(new JavaTimeModule())), null);
+        repository.open();
+        repository.saveAll(Arrays.asList(
+            user("id1", "johndoe", "John", "Doe"),
+            user("id2", "janedoe", "Jane", "Doe"),
+            user("id3", "jsmith", "John", "Smith")));
+    }
+
+    @AfterEach
+    public void destroy() throws IOException {
+        repository.close();
+    }
+
+    @Test
+    public void savedUsersAreSearchableAtOnce() {
+        repository.save(user("id4", "bwayne", "Bruce", "Wayne"));
+
+        assertThat(repository.search(queryStringQuery("bruce"))).extracting(User::getLogin).containsExactly("bwayne");
+        assertThat(repository.count()).isEqualTo(4);
+    }
+
+    @Test
+    public void queryStringsHaveTheSyntaxOfElasticsearch() {
+        assertThat(repository.search(queryStringQuery("john"))).extracting(User::getId).containsExactlyInAnyOrder("id1", "id3");
+        assertThat(repository.search(queryStringQuery("john AND lastName:doe"))).extracting(User::getId).containsExactly("id1");
+        assertThat(repository.search(queryStringQuery("login:j*"))).hasSize(3);
+        assertThat(repository.search(queryStringQuery("login.keyword:johndoe"))).extracting(User::getId).containsExactly("id1");
+        assertThat(repository.search(matchAllQuery())).hasSize(3);
+    }
+
+    @Test
+    public void storedUsersAreReadBack() {
+        User user = repository.findById("id2").orElseThrow(AssertionError::new);
+
+        assertThat(user.getLogin()).isEqualTo("janedoe");
+        assertThat(user.getEmail()).isEqualTo("janedoe@localhost");
+        assertThat(user.getLangKey()).isEqualTo("en");
+    }
+
+    @Test
+    public void pagesAreChainedWithTheLastSortValues() {
+        LuceneUserSearchRepository.Hits first = repository.searchAfter(queryStringQuery("doe OR smith"), 2, null);
+        List<String> last = first.getLastSortValues();
+        LuceneUserSearchRepository.Hits second = repository.searchAfter(queryStringQuery("doe OR smith"), 2,
+            new Object[] { Float.parseFloat(last.get(0)), last.get(1) });
+
+        assertThat(first.getContent()).hasSize(2);
+        assertThat(first.getTotal()).isEqualTo(3);
+        assertThat(second.getContent()).hasSize(1);
+        assertThat(second.getContent().get(0).getId()).isNotIn(first.getContent().get(0).getId(), first.getContent().get(1).getId());
+    }
+
+    @Test
+    public void deletedUsersAreNotFound() {
+        repository.deleteById("id1");
+
+        assertThat(repository.existsById("id1")).isFalse();
+        assertThat(repository.search(queryStringQuery("johndoe"))).isEmpty();
+    }
+
+    @Test
+    public void malformedAndUnsupportedQueriesAreRejected() {
+        assertThatThrownBy(() -> repository.search(queryStringQuery("login:(john")))
+            .isInstanceOf(InvalidSearchQueryException.class);
+        assertThatThrownBy(() -> repository.search(termQuery("login", "john")))
+            .isInstanceOf(InvalidSearchQueryException.class);
+        assertThatThrownBy(() -> repository.findAll(Sort.by("login")))
+            .isInstanceOf(InvalidSearchQueryException.class);
+    }
+
+    @Test
+    public void similarUsersShareTheTermsOfTheComparedFields() {
+        User john = repository.findById("id1").get();
+
+        assertThat(repository.searchSimilar(john, new String[] { "firstName" }, PageRequest.of(0, 10)))
+            .extracting(User::getId).containsExactly("id3");
+        assertThat(repository.searchSimilar(john, new String[] { "lastName" }, PageRequest.of(0, 10)))
+            .extracting(User::getId).containsExactly("id2");
+        assertThat(repository.searchSimilar(john, null, PageRequest.of(0, 10)))
+            .extracting(User::getId).containsExactlyInAnyOrder("id2", "id3");
+        assertThatThrownBy(() -> repository.searchSimilar(john, new String[] { "password" }, PageRequest.of(0, 10)))
+            .isInstanceOf(InvalidSearchQueryException.class);
+    }
+
+    private static User user(String id, String login, String firstName, String lastName) {
+        User user = new User();
+        user.setId(id);
+        user.setLogin(login);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setEmail(login + "@localhost");
+        user.setActivated(true);
+        user.setLangKey("en");
+        return user;
+    }
+}
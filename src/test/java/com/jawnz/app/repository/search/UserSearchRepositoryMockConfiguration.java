@@ -1,13 +1,18 @@
 package com.jawnz.app.repository.search;
 
+import com.jawnz.app.config.Constants;
+
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 /**
  * Configure a Mock version of {@link UserSearchRepository} to test the
- * application without starting Elasticsearch.
+ * application without starting Elasticsearch, unless the embedded index
+ * of the "lucene" profile is used.
  */
 @Configuration
+@Profile("!" + Constants.SPRING_PROFILE_LUCENE)
 public class UserSearchRepositoryMockConfiguration {
 
     @MockBean
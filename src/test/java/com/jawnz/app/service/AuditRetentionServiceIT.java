@@ -0,0 +1,122 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.domain.PersistentAuditEvent;
+import com.jawnz.app.repository.PersistenceAuditEventRepository;
+
+import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for {@link AuditRetentionService}.
+ */
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class})
+public class AuditRetentionServiceIT {
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private AuditRetentionService auditRetentionService;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private JHipsterProperties jHipsterProperties;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    public void init() {
+        persistenceAuditEventRepository.deleteAll();
+    }
+
+    @Test
+    public void removesTheExpiredEventsOnly() {
+        Instant now = Instant.now();
+        auditEvent("johndoe", now.minus(Duration.ofDays(400)));
+        auditEvent("johndoe", now.minus(Duration.ofDays(60)));
+        auditEvent("janedoe", now.minus(Duration.ofDays(60)).plusSeconds(1));
+        auditEvent("johndoe", now.minus(Duration.ofDays(31)));
+        auditEvent("johndoe", now.minus(Duration.ofDays(29)));
+        auditEvent("janedoe", now);
+
+        auditRetentionService.removeExpired();
+
+        assertThat(persistenceAuditEventRepository.findAll())
+            .extracting(PersistentAuditEvent::getAuditEventDate)
+            .allMatch(date -> date.isAfter(now.minus(Duration.ofDays(30))))
+            .hasSize(2);
+    }
+
+    @Test
+    public void stopsOnceTheLockIsLost() {
+        Instant now = Instant.now();
+        auditEvent("johndoe", now.minus(Duration.ofDays(400)));
+        auditEvent("johndoe", now.minus(Duration.ofDays(60)));
+        JobLockService jobLockService = mock(JobLockService.class);
+        when(jobLockService.extend(eq(AuditRetentionService.JOB_NAME), any())).thenReturn(false);
+        AuditRetentionService service = new AuditRetentionService(applicationProperties, jHipsterProperties,
+            mongoTemplate, jobLockService, Runnable::run, new SimpleMeterRegistry());
+
+        service.removeExpired();
+
+        assertThat(persistenceAuditEventRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    public void replacesTheDateIndexWithATtlIndex() {
+        ApplicationProperties.AuditRetention properties = applicationProperties.getAuditRetention();
+        try {
+            properties.setMode(ApplicationProperties.AuditRetention.Mode.TTL);
+            auditRetentionService.ensureIndexes();
+
+            Map<String, Document> indexes = indexes();
+            assertThat(indexes).doesNotContainKey(AuditRetentionService.DATE_INDEX);
+            assertThat(((Number) indexes.get(AuditRetentionService.TTL_INDEX).get("expireAfterSeconds")).longValue())
+                .isEqualTo(Duration.ofDays(30).getSeconds());
+        } finally {
+            properties.setMode(ApplicationProperties.AuditRetention.Mode.CHUNKED);
+            auditRetentionService.ensureIndexes();
+        }
+        assertThat(indexes()).containsKey(AuditRetentionService.DATE_INDEX).doesNotContainKey(AuditRetentionService.TTL_INDEX);
+    }
+
+    private Map<String, Document> indexes() {
+        Map<String, Document> indexes = new HashMap<>();
+        for (Document index : mongoTemplate.getCollection(mongoTemplate.getCollectionName(PersistentAuditEvent.class))
+            .listIndexes()) {
+            indexes.put(index.getString("name"), index);
+        }
+        return indexes;
+    }
+
+    private void auditEvent(String principal, Instant date) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setPrincipal(principal);
+        event.setAuditEventType("AUTHENTICATION_SUCCESS");
+        event.setAuditEventDate(date);
+        persistenceAuditEventRepository.save(event);
+    }
+}
@@ -0,0 +1,79 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.repository.AuthorityRepository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link AuthorityRegistryService}.
+ */
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class})
+public class AuthorityRegistryServiceIT {
+
+    private static final String AUTHORITY = "ROLE_CONCURRENT";
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private AuthorityRegistryService authorityRegistryService;
+
+    @Autowired
+    private AuthorityRepository authorityRepository;
+
+    @AfterEach
+    public void cleanup() {
+        authorityRepository.deleteById(AUTHORITY);
+        authorityRegistryService.refresh();
+    }
+
+    @Test
+    public void assertThatConcurrentCallersInsertTheAuthorityOnce() throws Exception {
+        authorityRepository.deleteById(AUTHORITY);
+        authorityRegistryService.refresh();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> calls = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                // half of the callers reload the registry while the others insert
+                boolean refresh = i % 2 == 1;
+                calls.add(executor.submit(() -> {
+                    start.await();
+                    if (refresh) {
+                        authorityRegistryService.refresh();
+                    }
+                    authorityRegistryService.ensureExists(AUTHORITY);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> call : calls) {
+                // rethrows the failure of a caller, such as a duplicate key error
+                call.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(authorityRepository.findAll()).filteredOn(authority -> AUTHORITY.equals(authority.getName()))
+            .hasSize(1);
+        assertThat(authorityRegistryService.contains(AUTHORITY)).isTrue();
+        authorityRegistryService.refresh();
+        assertThat(authorityRegistryService.contains(AUTHORITY)).isTrue();
+    }
+}
@@ -0,0 +1,146 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.KafkaProperties;
+import com.jawnz.app.config.cache.TwoTierCacheManager;
+import com.jawnz.app.repository.UserRepository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.testcontainers.containers.KafkaContainer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Integration tests for {@link CacheInvalidationService}, with two instances sharing the same caches.
+ */
+class CacheInvalidationServiceIT {
+
+    private static KafkaContainer kafkaContainer;
+
+    private final CacheManager sharedCacheManager = new ConcurrentMapCacheManager();
+
+    private String topic;
+
+    private TwoTierCacheManager cacheManager;
+
+    private TwoTierCacheManager otherCacheManager;
+
+    private UserLoginFilterService otherUserLoginFilterService;
+
+    private CacheInvalidationService service;
+
+    private CacheInvalidationService otherService;
+
+    @BeforeAll
+    static void startServer() {
+        kafkaContainer = new KafkaContainer("5.5.0").withNetwork(null);
+        kafkaContainer.start();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        kafkaContainer.stop();
+    }
+
+    @BeforeEach
+    void setup() {
+        topic = "cache-invalidation-" + UUID.randomUUID();
+        cacheManager = cacheManager();
+        otherCacheManager = cacheManager();
+        otherUserLoginFilterService = mock(UserLoginFilterService.class);
+        service = service(cacheManager, mock(UserLoginFilterService.class));
+        otherService = service(otherCacheManager, otherUserLoginFilterService);
+        service.start();
+        otherService.start();
+        await(() -> service.isListening() && otherService.isListening());
+    }
+
+    @AfterEach
+    void teardown() {
+        service.stop();
+        otherService.stop();
+    }
+
+    @Test
+    void evictionsReachTheInProcessCachesOfTheOtherInstances() {
+        Cache cache = cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE);
+        Cache otherCache = otherCacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE);
+        cache.put("john", "john");
+        assertThat(otherCache.get("john")).isNotNull();
+        // only the in-process cache of the other instance is left
+        sharedCacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).clear();
+        assertThat(otherCache.get("john")).isNotNull();
+
+        cache.evict("john");
+
+        await(() -> otherCache.get("john") == null);
+        verify(otherUserLoginFilterService, timeout(5000)).add("john");
+    }
+
+    @Test
+    void clearsReachTheInProcessCachesOfTheOtherInstances() {
+        Cache otherCache = otherCacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE);
+        otherCache.put("john", "john");
+        sharedCacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).clear();
+
+        cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).clear();
+
+        await(() -> otherCache.get("john") == null);
+    }
+
+    private TwoTierCacheManager cacheManager() {
+        return new TwoTierCacheManager(sharedCacheManager, 1024 * 1024, 60000, value -> 100, value -> value,
+            new SimpleMeterRegistry());
+    }
+
+    private CacheInvalidationService service(TwoTierCacheManager cacheManager, UserLoginFilterService userLoginFilterService) {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getNearCache().setInvalidationTopic(topic);
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        Map<String, String> producerProps = new HashMap<>();
+        producerProps.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        producerProps.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        producerProps.put("bootstrap.servers", kafkaContainer.getBootstrapServers());
+        kafkaProperties.setProducer(producerProps);
+        Map<String, String> consumerProps = new HashMap<>();
+        consumerProps.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        consumerProps.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        consumerProps.put("bootstrap.servers", kafkaContainer.getBootstrapServers());
+        kafkaProperties.setConsumer(consumerProps);
+        return new CacheInvalidationService(applicationProperties, kafkaProperties, cacheManager, new ObjectMapper(),
+            userLoginFilterService, new SimpleMeterRegistry());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        for (int i = 0; i < 300; i++) {
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted");
+            }
+        }
+        fail("Condition not met in time");
+    }
+}
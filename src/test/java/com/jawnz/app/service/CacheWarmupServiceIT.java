@@ -0,0 +1,76 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.domain.PersistentAuditEvent;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.PersistenceAuditEventRepository;
+import com.jawnz.app.repository.UserRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link CacheWarmupService}.
+ */
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class})
+public class CacheWarmupServiceIT {
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheWarmupService cacheWarmupService;
+
+    @Autowired
+    private CacheWarmupHealthIndicator cacheWarmupHealthIndicator;
+
+    @BeforeEach
+    public void init() {
+        persistenceAuditEventRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void loadsTheMostActivePrincipals() {
+        User user = new User();
+        user.setLogin("johndoe");
+        user.setActivated(true);
+        userRepository.save(user);
+        auditEvent("johndoe", CacheWarmupService.AUTHENTICATION_SUCCESS, Instant.now());
+        auditEvent("johndoe", CacheWarmupService.AUTHENTICATION_SUCCESS, Instant.now());
+        // unknown user
+        auditEvent("janedoe", CacheWarmupService.AUTHENTICATION_SUCCESS, Instant.now());
+        // too old, or not an authentication
+        auditEvent("jimdoe", CacheWarmupService.AUTHENTICATION_SUCCESS, Instant.now().minus(Duration.ofDays(10)));
+        auditEvent("joedoe", "AUTHENTICATION_FAILURE", Instant.now());
+
+        cacheWarmupService.warmUp();
+
+        CacheWarmupService.Status status = cacheWarmupService.getStatus();
+        assertThat(status.getState()).isEqualTo(CacheWarmupService.State.DONE);
+        assertThat(status.getPrincipals()).isEqualTo(2);
+        assertThat(status.getLoaded()).isEqualTo(1);
+        assertThat(status.getCoverage()).isEqualTo(0.5);
+        assertThat(cacheWarmupHealthIndicator.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    private void auditEvent(String principal, String type, Instant date) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setPrincipal(principal);
+        event.setAuditEventType(type);
+        event.setAuditEventDate(date);
+        persistenceAuditEventRepository.save(event);
+    }
+}
@@ -0,0 +1,100 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.client.IdpUserDirectoryClient;
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.UserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the mapping rules and the locking of {@link IdpReconciliationService}.
+ */
+public class IdpReconciliationServiceTest {
+
+    private Map<String, Object> representation;
+
+    @BeforeEach
+    public void init() {
+        representation = new HashMap<>();
+        representation.put("id", "8b4c5f3e-0d6e-4a57-9a7c-4c1f1d0e2b11");
+        representation.put("username", "JohnDoe");
+        representation.put("firstName", "john");
+        representation.put("lastName", "doe");
+        representation.put("email", "JohnDoe@localhost");
+        representation.put("emailVerified", true);
+        representation.put("attributes", Collections.singletonMap("locale", Collections.singletonList("fr-FR")));
+    }
+
+    @Test
+    public void representationIsMappedLikeAnIdToken() {
+        User user = UserService.getUser(IdpReconciliationService.toClaims(representation));
+
+        assertThat(user.getId()).isEqualTo("8b4c5f3e-0d6e-4a57-9a7c-4c1f1d0e2b11");
+        assertThat(user.getLogin()).isEqualTo("johndoe");
+        assertThat(user.getFirstName()).isEqualTo("john");
+        assertThat(user.getLastName()).isEqualTo("doe");
+        assertThat(user.getEmail()).isEqualTo("johndoe@localhost");
+        assertThat(user.getLangKey()).isEqualTo("fr");
+        assertThat(user.getActivated()).isTrue();
+    }
+
+    @Test
+    public void unchangedUserIsNotWritten() {
+        User current = UserService.getUser(IdpReconciliationService.toClaims(representation));
+        User incoming = UserService.getUser(IdpReconciliationService.toClaims(representation));
+
+        assertThat(IdpReconciliationService.hasChanged(current, incoming)).isFalse();
+    }
+
+    @Test
+    public void changedUserIsWritten() {
+        User current = UserService.getUser(IdpReconciliationService.toClaims(representation));
+        representation.put("lastName", "smith");
+        User incoming = UserService.getUser(IdpReconciliationService.toClaims(representation));
+
+        assertThat(IdpReconciliationService.hasChanged(current, incoming)).isTrue();
+    }
+
+    @Test
+    public void stopsWithoutWritingOnceTheLockIsLost() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getIdpReconciliation().setPageSize(1);
+        IdpUserDirectoryClient client = mock(IdpUserDirectoryClient.class);
+        List<Map<String, Object>> page = Collections.singletonList(representation);
+        when(client.getUsers(0, 1)).thenReturn(page);
+        JobLockService jobLockService = mock(JobLockService.class);
+        when(jobLockService.tryLock(eq(IdpReconciliationService.JOB_NAME), any())).thenReturn(true);
+        when(jobLockService.extend(eq(IdpReconciliationService.JOB_NAME), any())).thenReturn(false);
+        UserBulkWriter userBulkWriter = mock(UserBulkWriter.class);
+        IdpReconciliationService service = new IdpReconciliationService(applicationProperties, client,
+            mock(UserRepository.class), userBulkWriter, mock(UserCacheService.class), jobLockService,
+            mock(MongoTemplate.class), Runnable::run, new SimpleMeterRegistry());
+
+        service.run(false);
+
+        verify(userBulkWriter, never()).write(anyList());
+        verify(client, never()).getUsers(1, 1);
+        assertThat(service.getStatus().getError()).contains("lock");
+        assertThat(service.getStatus().getProcessed()).isZero();
+        verify(jobLockService).unlock(IdpReconciliationService.JOB_NAME);
+    }
+}
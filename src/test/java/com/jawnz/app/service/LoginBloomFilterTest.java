@@ -0,0 +1,48 @@
+package com.jawnz.app.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link LoginBloomFilter}.
+ */
+public class LoginBloomFilterTest {
+
+    @Test
+    public void addedLoginsMightBeContained() {
+        LoginBloomFilter filter = LoginBloomFilter.create(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            assertThat(filter.mightContain("user" + i)).isTrue();
+        }
+    }
+
+    @Test
+    public void falsePositivesStayNearTheConfiguredRate() {
+        LoginBloomFilter filter = LoginBloomFilter.create(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("unknown" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / 100000.0).isLessThan(0.02);
+        assertThat(filter.expectedFalsePositiveRate()).isBetween(0.005, 0.02);
+    }
+
+    @Test
+    public void emptyFilterContainsNothing() {
+        LoginBloomFilter filter = LoginBloomFilter.create(0, 0.01);
+
+        assertThat(filter.mightContain("john")).isFalse();
+        assertThat(filter.expectedFalsePositiveRate()).isZero();
+    }
+}
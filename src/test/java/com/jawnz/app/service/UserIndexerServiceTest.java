@@ -0,0 +1,174 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.KafkaProperties;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.UserRepository;
+import com.jawnz.app.repository.search.UserSearchRepository;
+import com.jawnz.app.service.dto.UserChangeEventDTO;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link UserIndexerService}, with change events delivered early or out of order.
+ */
+public class UserIndexerServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private UserRepository userRepository;
+
+    private UserSearchRepository userSearchRepository;
+
+    private ElasticsearchOperations elasticsearchOperations;
+
+    private UserSearchResultCache userSearchResultCache;
+
+    private UserIndexerService service;
+
+    private List<User> stored;
+
+    @BeforeEach
+    public void init() {
+        userRepository = mock(UserRepository.class);
+        userSearchRepository = mock(UserSearchRepository.class);
+        elasticsearchOperations = mock(ElasticsearchOperations.class);
+        userSearchResultCache = mock(UserSearchResultCache.class);
+        stored = new ArrayList<>();
+        when(userRepository.findAllById(any())).thenAnswer(invocation -> stored);
+        service = new UserIndexerService(new ApplicationProperties(), new KafkaProperties(), userRepository,
+            userSearchRepository, elasticsearchOperations, objectMapper, userSearchResultCache, new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void indexesTheCurrentStateOfTheUsers() throws Exception {
+        stored.add(user("john", 2));
+
+        boolean ready = service.index(records(event("john", 2, Instant.now())));
+
+        assertThat(ready).isTrue();
+        assertThat(indexed()).extracting(IndexQuery::getId, IndexQuery::getVersion)
+            .containsExactly(tuple("john", 2L));
+        verify(userSearchResultCache).invalidate();
+    }
+
+    @Test
+    public void eventsDeliveredBeforeTheWriteAreConsumedAgain() throws Exception {
+        stored.add(user("john", 1));
+
+        boolean ready = service.index(records(event("john", 2, Instant.now()), event("jane", 1, Instant.now())));
+
+        assertThat(ready).isFalse();
+        verify(elasticsearchOperations, never()).bulkIndex(anyList());
+        // jane is not written yet, and must not be removed from the index
+        verify(userSearchRepository, never()).deleteById(any());
+    }
+
+    @Test
+    public void eventsOfFailedWritesAreAppliedAfterTheGracePeriod() throws Exception {
+        Instant recorded = Instant.now().minus(Duration.ofMinutes(5));
+        stored.add(user("john", 1));
+
+        boolean ready = service.index(records(event("john", 2, recorded), event("jane", 1, recorded)));
+
+        assertThat(ready).isTrue();
+        assertThat(indexed()).extracting(IndexQuery::getId, IndexQuery::getVersion)
+            .containsExactly(tuple("john", 1L));
+        verify(userSearchRepository).deleteById("jane");
+    }
+
+    @Test
+    public void eventsOutOfOrderIndexTheLatestWriteOnce() throws Exception {
+        stored.add(user("john", 3));
+
+        boolean ready = service.index(records(event("john", 3, Instant.now()), event("john", 2, Instant.now())));
+
+        assertThat(ready).isTrue();
+        assertThat(indexed()).extracting(IndexQuery::getId, IndexQuery::getVersion)
+            .containsExactly(tuple("john", 3L));
+    }
+
+    @Test
+    public void eventsOutOfOrderWaitForTheLatestWrite() throws Exception {
+        stored.add(user("john", 2));
+
+        boolean ready = service.index(records(event("john", 3, Instant.now()), event("john", 2, Instant.now())));
+
+        assertThat(ready).isFalse();
+        verify(elasticsearchOperations, never()).bulkIndex(anyList());
+    }
+
+    @Test
+    public void staleEventsReindexTheCurrentState() throws Exception {
+        stored.add(user("john", 3));
+
+        boolean ready = service.index(records(event("john", 2, Instant.now())));
+
+        assertThat(ready).isTrue();
+        assertThat(indexed()).extracting(IndexQuery::getVersion).containsExactly(3L);
+    }
+
+    @Test
+    public void failedBatchesAreRetriedWithAnExponentialBackoff() {
+        assertThat(UserIndexerService.retryDelay(1)).isEqualTo(Duration.ofMillis(500));
+        assertThat(UserIndexerService.retryDelay(2)).isEqualTo(Duration.ofSeconds(1));
+        assertThat(UserIndexerService.retryDelay(4)).isEqualTo(Duration.ofSeconds(4));
+        assertThat(UserIndexerService.retryDelay(7)).isEqualTo(Duration.ofSeconds(30));
+        assertThat(UserIndexerService.retryDelay(1000)).isEqualTo(Duration.ofSeconds(30));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<IndexQuery> indexed() {
+        ArgumentCaptor<List<IndexQuery>> queries = ArgumentCaptor.forClass(List.class);
+        verify(elasticsearchOperations).bulkIndex(queries.capture());
+        return queries.getValue();
+    }
+
+    private UserChangeEventDTO event(String id, long version, Instant createdAt) {
+        return new UserChangeEventDTO(id, id, version, createdAt);
+    }
+
+    private ConsumerRecords<String, String> records(UserChangeEventDTO... events) throws JsonProcessingException {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (UserChangeEventDTO event : Arrays.asList(events)) {
+            records.add(new ConsumerRecord<>("jawnzapp-user-changes", 0, records.size(), event.getId(),
+                objectMapper.writeValueAsString(event)));
+        }
+        return new ConsumerRecords<>(Collections.singletonMap(new TopicPartition("jawnzapp-user-changes", 0), records));
+    }
+
+    private static User user(String id, long version) {
+        User user = new User();
+        user.setId(id);
+        user.setLogin(id);
+        user.setVersion(version);
+        return user;
+    }
+}
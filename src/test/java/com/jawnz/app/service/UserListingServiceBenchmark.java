@@ -0,0 +1,144 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.Constants;
+import com.jawnz.app.domain.User;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Compares the latency of a page of users at increasing depths, with the skip and count of {@code GET /users} and
+ * with the cursors of {@link UserListingService}.
+ * <p>
+ * This is not run with the tests: start MongoDB, for example with
+ * {@code docker-compose -f src/main/docker/mongodb.yml up -d}, then launch {@link #main(String[])} from the IDE, or
+ * with
+ * {@code ./mvnw test-compile exec:java -Dexec.mainClass=com.jawnz.app.service.UserListingServiceBenchmark -Dexec.classpathScope=test}.
+ * The MongoDB URL defaults to {@code mongodb://localhost:27017}, and can be set with the {@code mongo.uri} system
+ * property; the users are generated in a {@code jawnzapp-benchmark} database, once. Latency percentiles are
+ * reported by the sample time mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserListingServiceBenchmark {
+
+    private static final String DATABASE = "jawnzapp-benchmark";
+
+    private static final int USERS = 1000000;
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({ "0", "1000", "10000", "49000" })
+    private int page;
+
+    private MongoClient mongoClient;
+
+    private MongoTemplate mongoTemplate;
+
+    private UserListingService userListingService;
+
+    private String cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mongoClient = MongoClients.create(System.getProperty("mongo.uri", "mongodb://localhost:27017"));
+        mongoTemplate = new MongoTemplate(mongoClient, DATABASE);
+        if (mongoTemplate.count(new Query(), User.class) != USERS) {
+            generate();
+        }
+        userListingService = new UserListingService(new ApplicationProperties(), mongoTemplate);
+        if (page > 0) {
+            // the cursor of the previous page, as a client would get it
+            Query previous = offsetQuery(page - 1).limit(PAGE_SIZE);
+            List<User> users = mongoTemplate.find(previous, User.class);
+            User last = users.get(users.size() - 1);
+            cursor = UserListingService.encodeCursor(last.getLogin(), last.getId());
+        }
+    }
+
+    private void generate() {
+        mongoTemplate.dropCollection(User.class);
+        mongoTemplate.indexOps(User.class).ensureIndex(new Index().on("login", Sort.Direction.ASC).unique());
+        mongoTemplate.indexOps(User.class).ensureIndex(new Index()
+            .on("login", Sort.Direction.ASC)
+            .on("_id", Sort.Direction.ASC)
+            .named("login_id"));
+        for (int from = 0; from < USERS; from += 10000) {
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+            for (int i = from; i < from + 10000; i++) {
+                User user = new User();
+                user.setId(UUID.randomUUID().toString());
+                user.setLogin(String.format("user%07d", i));
+                user.setEmail(user.getLogin() + "@localhost");
+                user.setActivated(true);
+                operations.insert(user);
+            }
+            operations.execute();
+        }
+    }
+
+    private static Query offsetQuery(int page) {
+        return Query.query(where("login").ne(Constants.ANONYMOUS_USER))
+            .with(Sort.by("login"))
+            .skip((long) page * PAGE_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mongoClient.close();
+    }
+
+    /**
+     * What {@code GET /users} does: a skip and a count.
+     */
+    @Benchmark
+    public long offset() {
+        List<User> users = mongoTemplate.find(offsetQuery(page).limit(PAGE_SIZE), User.class);
+        return users.size() + mongoTemplate.count(Query.query(where("login").ne(Constants.ANONYMOUS_USER)), User.class);
+    }
+
+    @Benchmark
+    public int keyset() {
+        return userListingService.list(PAGE_SIZE, cursor, false).getContent().size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(UserListingServiceBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,67 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.Constants;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.repository.UserRepository;
+import com.jawnz.app.service.dto.UserDTO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Integration tests for {@link UserListingService}.
+ */
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class})
+public class UserListingServiceIT {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserListingService userListingService;
+
+    @BeforeEach
+    public void init() {
+        userRepository.deleteAll();
+        for (String login : new String[] { "erin", "alice", Constants.ANONYMOUS_USER, "carol", "bob", "david" }) {
+            User user = new User();
+            user.setLogin(login);
+            user.setActivated(true);
+            userRepository.save(user);
+        }
+    }
+
+    @Test
+    public void pagesAreChainedByCursorsInLoginOrder() {
+        List<String> logins = new ArrayList<>();
+        UserSearchService.Result page = userListingService.list(2, null, true);
+        assertThat(page.getTotal()).isEqualTo(6);
+        int pages = 1;
+        page.getContent().stream().map(UserDTO::getLogin).forEach(logins::add);
+        while (page.getNextCursor() != null) {
+            page = userListingService.list(2, page.getNextCursor(), false);
+            assertThat(page.getTotal()).isNull();
+            page.getContent().stream().map(UserDTO::getLogin).forEach(logins::add);
+            pages++;
+        }
+
+        assertThat(logins).containsExactly("alice", "bob", "carol", "david", "erin");
+        assertThat(pages).isEqualTo(3);
+    }
+
+    @Test
+    public void invalidCursorsAreRejected() {
+        assertThatThrownBy(() -> userListingService.list(2, "not a cursor", false))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,149 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.config.KafkaProperties;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.domain.User;
+import com.jawnz.app.service.dto.UserChangeEventDTO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.KafkaContainer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link UserOutboxService}.
+ */
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class})
+public class UserOutboxServiceIT {
+
+    private static KafkaContainer kafkaContainer;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String topic;
+
+    private UserOutboxService userOutboxService;
+
+    @BeforeAll
+    static void startServer() {
+        kafkaContainer = new KafkaContainer("5.5.0").withNetwork(null);
+        kafkaContainer.start();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        kafkaContainer.stop();
+    }
+
+    @BeforeEach
+    public void init() {
+        mongoTemplate.dropCollection(UserOutboxService.COLLECTION);
+        topic = "user-changes-" + UUID.randomUUID();
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getUserOutbox().setEnabled(true);
+        applicationProperties.getUserOutbox().setTopic(topic);
+        applicationProperties.getUserOutbox().setBatchSize(2);
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        Map<String, String> producerProps = new HashMap<>();
+        producerProps.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        producerProps.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        producerProps.put("bootstrap.servers", kafkaContainer.getBootstrapServers());
+        producerProps.put("max.block.ms", "2000");
+        producerProps.put("request.timeout.ms", "1000");
+        producerProps.put("delivery.timeout.ms", "2000");
+        kafkaProperties.setProducer(producerProps);
+        userOutboxService = new UserOutboxService(applicationProperties, kafkaProperties, mongoTemplate, objectMapper,
+            new SimpleMeterRegistry());
+        userOutboxService.init();
+    }
+
+    @AfterEach
+    public void destroy() {
+        userOutboxService.destroy();
+    }
+
+    @Test
+    public void relaysTheEventsInTheOrderTheyWereRecorded() throws Exception {
+        // a stale writer records its change after a newer one
+        userOutboxService.record(Arrays.asList(user("john", 2L), user("jane", 1L)));
+        userOutboxService.record(Collections.singletonList(user("john", 1L)));
+
+        userOutboxService.relay();
+
+        assertThat(mongoTemplate.getCollection(UserOutboxService.COLLECTION).countDocuments()).isZero();
+        List<UserChangeEventDTO> events = consume(3);
+        assertThat(events).extracting(UserChangeEventDTO::getId).containsExactlyInAnyOrder("john", "jane", "john");
+        // the events of a user share a partition, and keep their order for the indexer
+        assertThat(events.stream().filter(event -> "john".equals(event.getId())))
+            .extracting(UserChangeEventDTO::getVersion)
+            // at the version their write produces
+            .containsExactly(3L, 2L);
+    }
+
+    @Test
+    public void keepsTheEventsUntilKafkaIsReachable() {
+        kafkaContainer.getDockerClient().pauseContainerCmd(kafkaContainer.getContainerId()).exec();
+        try {
+            userOutboxService.record(Collections.singletonList(user("john", 1L)));
+
+            userOutboxService.relay();
+
+            assertThat(mongoTemplate.getCollection(UserOutboxService.COLLECTION).countDocuments()).isEqualTo(1);
+        } finally {
+            kafkaContainer.getDockerClient().unpauseContainerCmd(kafkaContainer.getContainerId()).exec();
+        }
+    }
+
+    private List<UserChangeEventDTO> consume(int count) throws Exception {
+        Map<String, Object> consumerProps = new HashMap<>();
+        consumerProps.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        consumerProps.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        consumerProps.put("bootstrap.servers", kafkaContainer.getBootstrapServers());
+        consumerProps.put("auto.offset.reset", "earliest");
+        consumerProps.put("group.id", topic);
+        List<UserChangeEventDTO> events = new ArrayList<>();
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(consumerProps)) {
+            consumer.subscribe(Collections.singletonList(topic));
+            for (int i = 0; i < 30 && events.size() < count; i++) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofSeconds(1))) {
+                    events.add(objectMapper.readValue(record.value(), UserChangeEventDTO.class));
+                }
+            }
+        }
+        return events;
+    }
+
+    private static User user(String id, long version) {
+        User user = new User();
+        user.setId(id);
+        user.setLogin(id);
+        user.setVersion(version);
+        return user;
+    }
+}
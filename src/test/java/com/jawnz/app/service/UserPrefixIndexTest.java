@@ -0,0 +1,65 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.service.dto.UserSuggestionDTO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link UserPrefixIndex}.
+ */
+public class UserPrefixIndexTest {
+
+    private UserPrefixIndex index;
+
+    @BeforeEach
+    public void init() {
+        index = UserPrefixIndex.build(Arrays.asList(
+            user("1", "jdoe", "John", "Doe", "jdoe@localhost"),
+            user("2", "alice", "Jöhanna", "Smith", "alice@localhost"),
+            user("3", "johnny", "Johnny", "Walker", "jw@localhost"),
+            user("4", "john", "Jack", "Sparrow", "captain@localhost")
+        ));
+    }
+
+    @Test
+    public void exactMatchesAndLoginsComeFirst() {
+        assertThat(index.search("John", 10))
+            .extracting(UserSuggestionDTO::getLogin)
+            .containsExactly("john", "jdoe", "johnny");
+    }
+
+    @Test
+    public void prefixIsNormalized() {
+        assertThat(index.search("  JOHA", 10))
+            .extracting(UserSuggestionDTO::getLogin)
+            .containsExactly("alice");
+    }
+
+    @Test
+    public void fullNameAndEmailAreIndexed() {
+        assertThat(index.search("john d", 10)).extracting(UserSuggestionDTO::getLogin).containsExactly("jdoe");
+        assertThat(index.search("captain@", 10)).extracting(UserSuggestionDTO::getLogin).containsExactly("john");
+    }
+
+    @Test
+    public void resultsAreCapped() {
+        assertThat(index.search("j", 2)).hasSize(2);
+        assertThat(index.search("", 2)).isEmpty();
+        assertThat(index.search("zorro", 2)).isEmpty();
+    }
+
+    private static UserSuggestionDTO user(String id, String login, String firstName, String lastName, String email) {
+        UserSuggestionDTO user = new UserSuggestionDTO();
+        user.setId(id);
+        user.setLogin(login);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setEmail(email);
+        return user;
+    }
+}
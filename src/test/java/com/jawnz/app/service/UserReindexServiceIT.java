@@ -0,0 +1,55 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.TestSecurityConfiguration;
+import com.jawnz.app.repository.UserRepository;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the slicing of {@link UserReindexService}.
+ */
+@SpringBootTest(classes = {JawnzappApp.class, TestSecurityConfiguration.class})
+public class UserReindexServiceIT {
+
+    @Autowired
+    private UserReindexService userReindexService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    public void init() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void idsOfASingleTypeAreSplitIntoRanges() {
+        for (int i = 0; i < 8; i++) {
+            mongoTemplate.insert(new Document("_id", "user-" + i).append("login", "user" + i), "jwn_user");
+        }
+
+        assertThat(userReindexService.sliceBoundaries(4)).containsExactly("user-2", "user-4", "user-6");
+    }
+
+    @Test
+    public void idsOfSeveralTypesAreReadAsASingleSlice() {
+        for (int i = 0; i < 4; i++) {
+            mongoTemplate.insert(new Document("_id", "user-" + i).append("login", "user" + i), "jwn_user");
+            mongoTemplate.insert(new Document("_id", new ObjectId()).append("login", "other" + i), "jwn_user");
+        }
+
+        assertThat(userReindexService.sliceBoundaries(4)).isEmpty();
+    }
+}
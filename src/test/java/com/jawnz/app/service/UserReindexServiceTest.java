@@ -0,0 +1,33 @@
+package com.jawnz.app.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the throttling and the slicing of {@link UserReindexService}.
+ */
+public class UserReindexServiceTest {
+
+    @Test
+    public void noLimitNeverWaits() {
+        assertThat(UserReindexService.throttleDelayMillis(1_000_000, 1, 0)).isZero();
+    }
+
+    @Test
+    public void rateUnderLimitDoesNotWait() {
+        assertThat(UserReindexService.throttleDelayMillis(500, 1000, 1000)).isZero();
+    }
+
+    @Test
+    public void rateOverLimitWaitsUntilBackUnderLimit() {
+        assertThat(UserReindexService.throttleDelayMillis(3000, 1000, 1000)).isEqualTo(2000);
+    }
+
+    @Test
+    public void slicesAreCapped() {
+        assertThat(UserReindexService.slices(null, 4)).isEqualTo(4);
+        assertThat(UserReindexService.slices(0, 4)).isEqualTo(1);
+        assertThat(UserReindexService.slices(1000, 4)).isEqualTo(UserReindexService.MAX_SLICES);
+    }
+}
@@ -0,0 +1,106 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.service.UserSearchRejectedException.Reason;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link UserSearchQueryGuard}.
+ */
+public class UserSearchQueryGuardTest {
+
+    private ApplicationProperties applicationProperties;
+
+    private MeterRegistry meterRegistry;
+
+    private UserSearchQueryGuard guard;
+
+    @BeforeEach
+    public void init() {
+        applicationProperties = new ApplicationProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new UserSearchQueryGuard(applicationProperties, meterRegistry);
+    }
+
+    @Test
+    public void clausesAreCountedByKind() {
+        UserSearchQueryGuard.Analysis analysis = UserSearchQueryGuard.analyze(
+            "login:jo* AND (\"john doe\" OR lastName:[a TO d]) -email:*@example.com firstName:/jo.*/ \\*escaped");
+
+        assertThat(analysis.clauses).isEqualTo(5);
+        assertThat(analysis.wildcardTerms).isEqualTo(1);
+        assertThat(analysis.leadingWildcards).isEqualTo(1);
+        assertThat(analysis.regexes).isEqualTo(1);
+    }
+
+    @Test
+    public void reasonableQueryIsAdmitted() {
+        assertThat(guard.admit("  login:john   AND lastName:do*")).isInstanceOf(QueryStringQueryBuilder.class)
+            .extracting(query -> ((QueryStringQueryBuilder) query).queryString())
+            .isEqualTo("login:john AND lastName:do*");
+        assertThat(guard.admit(" ")).isInstanceOf(MatchAllQueryBuilder.class);
+        assertThat(guard.admit("*")).isInstanceOf(QueryStringQueryBuilder.class);
+    }
+
+    @Test
+    public void expensiveQueriesAreRejected() {
+        assertRejected("*doe", Reason.LEADING_WILDCARD);
+        assertRejected("login:/j.*/", Reason.REGEX);
+        assertRejected("a* b* c*", Reason.TOO_MANY_WILDCARDS);
+        assertRejected(String.join(" OR ", Collections.nCopies(33, "john")), Reason.TOO_MANY_CLAUSES);
+        assertRejected("(john", Reason.MALFORMED);
+        assertRejected("\"john", Reason.MALFORMED);
+
+        assertThat(meterRegistry.get("user.search.rejected").tag("reason", "malformed").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrentSearchesOfAPrincipalAreLimited() {
+        applicationProperties.getUserSearch().setMaxConcurrentPerPrincipal(1);
+        AtomicReference<Throwable> nested = new AtomicReference<>();
+
+        guard.run(() -> {
+            try {
+                guard.run(() -> "nested");
+            } catch (UserSearchRejectedException e) {
+                nested.set(e);
+            }
+            return "outer";
+        });
+
+        assertThat(nested.get()).isInstanceOf(UserSearchRejectedException.class);
+        assertThat(guard.run(() -> "after")).isEqualTo("after");
+    }
+
+    @Test
+    public void principalsAreForgottenOnceTheirSearchesAreDone() {
+        guard.run(() -> {
+            assertThat(guard.principalsRunning()).isEqualTo(1);
+            return guard.run(() -> "nested");
+        });
+        assertThatThrownBy(() -> guard.run(() -> {
+            throw new IllegalStateException("Search failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(guard.principalsRunning()).isZero();
+    }
+
+    private void assertRejected(String query, Reason reason) {
+        assertThatThrownBy(() -> guard.admit(query))
+            .isInstanceOf(UserSearchRejectedException.class)
+            .extracting(e -> ((UserSearchRejectedException) e).getReason())
+            .isEqualTo(reason);
+    }
+}
@@ -0,0 +1,109 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link UserSearchResultCache}.
+ */
+public class UserSearchResultCacheTest {
+
+    private ApplicationProperties applicationProperties;
+
+    private MeterRegistry meterRegistry;
+
+    private MutableClock clock;
+
+    private UserSearchResultCache cache;
+
+    private AtomicInteger searches;
+
+    @BeforeEach
+    public void init() {
+        applicationProperties = new ApplicationProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new MutableClock();
+        cache = new UserSearchResultCache(applicationProperties, meterRegistry, clock);
+        searches = new AtomicInteger();
+    }
+
+    @Test
+    public void equivalentQueriesShareTheirResult() {
+        assertThat(search("  john   doe ", "20")).isEqualTo(1);
+        assertThat(search("john doe", "20")).isEqualTo(1);
+        assertThat(search("john doe", "50")).isEqualTo(2);
+        assertThat(search("John doe", "20")).isEqualTo(3);
+
+        assertThat(meterRegistry.get("user.search.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("user.search.cache.hit.ratio").gauge().value()).isEqualTo(0.25);
+    }
+
+    @Test
+    public void indexingDiscardsTheResults() {
+        search("john", "20");
+
+        cache.invalidate();
+
+        assertThat(search("john", "20")).isEqualTo(2);
+    }
+
+    @Test
+    public void resultOfASearchConcurrentWithIndexingIsNotCached() {
+        cache.get("john", "20", () -> {
+            cache.invalidate();
+            return searches.incrementAndGet();
+        });
+
+        assertThat(search("john", "20")).isEqualTo(2);
+    }
+
+    @Test
+    public void resultsExpire() {
+        search("john", "20");
+
+        clock.advance(Duration.ofMillis(applicationProperties.getUserSearch().getCacheTtlMs() + 1));
+
+        assertThat(search("john", "20")).isEqualTo(2);
+    }
+
+    private int search(String query, String page) {
+        return cache.get(query, page, searches::incrementAndGet);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
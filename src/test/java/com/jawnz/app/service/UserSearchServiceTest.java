@@ -0,0 +1,30 @@
+package com.jawnz.app.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for the cursors of {@link UserSearchService}.
+ */
+public class UserSearchServiceTest {
+
+    @Test
+    public void cursorRoundTripsTheSortValues() {
+        String cursor = UserSearchService.encodeCursor(Arrays.asList("1.4142135", "8b4c5f3e-0d6e-4a57-9a7c-4c1f1d0e2b11"));
+
+        assertThat(UserSearchService.decodeCursor(cursor))
+            .containsExactly(1.4142135f, "8b4c5f3e-0d6e-4a57-9a7c-4c1f1d0e2b11");
+    }
+
+    @Test
+    public void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> UserSearchService.decodeCursor("not a cursor"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UserSearchService.decodeCursor("Zm9vYmFy"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
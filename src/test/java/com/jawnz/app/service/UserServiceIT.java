@@ -1,6 +1,7 @@
 package com.jawnz.app.service;
 
 import com.jawnz.app.JawnzappApp;
+import com.jawnz.app.config.ApplicationProperties;
 import com.jawnz.app.config.Constants;
 import com.jawnz.app.config.TestSecurityConfiguration;
 import com.jawnz.app.domain.User;
@@ -9,12 +10,18 @@ import com.jawnz.app.repository.UserRepository;
 import com.jawnz.app.security.AuthoritiesConstants;
 import com.jawnz.app.service.dto.UserDTO;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -26,8 +33,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -56,6 +70,27 @@ public class UserServiceIT {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private UserLoginFilterService userLoginFilterService;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserBulkWriter userBulkWriter;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @SpyBean
+    private UserOutboxService userOutboxService;
+
+    @Autowired
+    private UserSearchResultCache userSearchResultCache;
+
     /**
      * This repository is mocked in the com.jawnz.app.repository.search test package.
      *
@@ -102,6 +137,151 @@ public class UserServiceIT {
             .isTrue();
     }
 
+    @Test
+    public void assertThatUpdateUserSetsTheFieldsAndIncrementsTheVersion() {
+        user.setVersion(1L);
+        userRepository.save(user);
+
+        Optional<User> updated = userService.updateUser(DEFAULT_LOGIN, "jane", null, "Jane@Localhost", "fr", null, 1L);
+
+        assertThat(updated).isPresent();
+        User saved = userRepository.findOneByLogin(DEFAULT_LOGIN).get();
+        assertThat(saved.getFirstName()).isEqualTo("jane");
+        assertThat(saved.getLastName()).isNull();
+        assertThat(saved.getEmail()).isEqualTo("jane@localhost");
+        assertThat(saved.getLangKey()).isEqualTo("fr");
+        assertThat(saved.getImageUrl()).isNull();
+        assertThat(saved.getActivated()).isTrue();
+        assertThat(saved.getVersion()).isEqualTo(2L);
+        verify(mockUserSearchRepository, times(1)).save(updated.get());
+    }
+
+    @Test
+    public void assertThatUpdateUserRejectsAStaleVersion() {
+        user.setVersion(2L);
+        userRepository.save(user);
+
+        assertThatThrownBy(() -> userService.updateUser(DEFAULT_LOGIN, "jane", DEFAULT_LASTNAME, null,
+            DEFAULT_LANGKEY, DEFAULT_IMAGEURL, 1L))
+            .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(userRepository.findOneByLogin(DEFAULT_LOGIN).get().getFirstName()).isEqualTo(DEFAULT_FIRSTNAME);
+        assertThat(userService.updateUser("unknown", "jane", DEFAULT_LASTNAME, null, DEFAULT_LANGKEY,
+            DEFAULT_IMAGEURL, 1L)).isEmpty();
+    }
+
+    @Test
+    public void assertThatVersionedUpdatesAreGuardedWithTheWriteBehindQueue() {
+        ApplicationProperties.UserWriteBehind properties = applicationProperties.getUserWriteBehind();
+        int batchSize = properties.getBatchSize();
+        try {
+            properties.setEnabled(true);
+            properties.setBatchSize(Integer.MAX_VALUE);
+            user.setVersion(1L);
+            userRepository.save(user);
+
+            userService.updateUser(DEFAULT_LOGIN, "jim", DEFAULT_LASTNAME, null, DEFAULT_LANGKEY, DEFAULT_IMAGEURL, null);
+            assertThat(userService.getUserWithAuthoritiesByLogin(DEFAULT_LOGIN).get().getFirstName()).isEqualTo("jim");
+
+            // the queued write is applied first, and increments the version
+            assertThatThrownBy(() -> userService.updateUser(DEFAULT_LOGIN, "jane", DEFAULT_LASTNAME, null,
+                DEFAULT_LANGKEY, DEFAULT_IMAGEURL, 1L))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+            userService.updateUser(DEFAULT_LOGIN, "jane", DEFAULT_LASTNAME, null, DEFAULT_LANGKEY, DEFAULT_IMAGEURL, 2L);
+
+            User saved = userRepository.findById(user.getId()).get();
+            assertThat(saved.getFirstName()).isEqualTo("jane");
+            assertThat(saved.getVersion()).isEqualTo(3L);
+        } finally {
+            properties.setEnabled(false);
+            properties.setBatchSize(batchSize);
+        }
+    }
+
+    @Test
+    public void assertThatWritesBypassingASaturatedQueueIncrementTheVersion() {
+        ApplicationProperties.UserWriteBehind properties = applicationProperties.getUserWriteBehind();
+        int capacity = properties.getCapacity();
+        try {
+            properties.setEnabled(true);
+            properties.setCapacity(0);
+            user.setVersion(1L);
+            userRepository.save(user);
+
+            userService.updateUser(DEFAULT_LOGIN, "jim", DEFAULT_LASTNAME, null, DEFAULT_LANGKEY, DEFAULT_IMAGEURL, null);
+
+            User saved = userRepository.findById(user.getId()).get();
+            assertThat(saved.getFirstName()).isEqualTo("jim");
+            assertThat(saved.getVersion()).isEqualTo(2L);
+        } finally {
+            properties.setEnabled(false);
+            properties.setCapacity(capacity);
+        }
+    }
+
+    @Test
+    public void assertThatIndexedUpdatesDiscardTheCachedSearchResults() {
+        userRepository.save(user);
+        AtomicInteger searches = new AtomicInteger();
+        userSearchResultCache.get(DEFAULT_LOGIN, "1", searches::incrementAndGet);
+
+        userService.updateUser(DEFAULT_LOGIN, "jim", DEFAULT_LASTNAME, null, DEFAULT_LANGKEY, DEFAULT_IMAGEURL, null);
+
+        assertThat(userSearchResultCache.get(DEFAULT_LOGIN, "1", searches::incrementAndGet)).isEqualTo(2);
+    }
+
+    @Test
+    public void assertThatUpdatesAreRecordedInTheOutboxBeforeBeingWritten() {
+        user.setVersion(1L);
+        userRepository.save(user);
+        doReturn(true).when(userOutboxService).isEnabled();
+        doAnswer(invocation -> {
+            assertThat(userRepository.findById(user.getId()).get().getFirstName()).isEqualTo(DEFAULT_FIRSTNAME);
+            return invocation.callRealMethod();
+        }).when(userOutboxService).record(any());
+        try {
+            userService.updateUser(DEFAULT_LOGIN, "jim", DEFAULT_LASTNAME, null, DEFAULT_LANGKEY, DEFAULT_IMAGEURL, 1L);
+
+            assertThat(userRepository.findById(user.getId()).get().getFirstName()).isEqualTo("jim");
+            assertThat(mongoTemplate.findAll(Document.class, UserOutboxService.COLLECTION))
+                .extracting(event -> event.getString("user_id")).containsExactly(user.getId());
+            verify(mockUserSearchRepository, never()).save(any(User.class));
+        } finally {
+            mongoTemplate.dropCollection(UserOutboxService.COLLECTION);
+        }
+    }
+
+    @Test
+    public void assertThatUpdatesAreNotWrittenWhenTheOutboxFails() {
+        user.setVersion(1L);
+        userRepository.save(user);
+        doReturn(true).when(userOutboxService).isEnabled();
+        doThrow(new DataAccessResourceFailureException("Outbox unavailable")).when(userOutboxService).record(any());
+
+        assertThatThrownBy(() -> userService.updateUser(DEFAULT_LOGIN, "jim", DEFAULT_LASTNAME, null,
+            DEFAULT_LANGKEY, DEFAULT_IMAGEURL, 1L))
+            .isInstanceOf(DataAccessResourceFailureException.class);
+
+        User saved = userRepository.findById(user.getId()).get();
+        assertThat(saved.getFirstName()).isEqualTo(DEFAULT_FIRSTNAME);
+        assertThat(saved.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    public void assertThatBulkWritesClearTheNullFields() {
+        userRepository.save(user);
+        User cleared = userRepository.findOneByLogin(DEFAULT_LOGIN).get();
+        cleared.setLastName(null);
+        cleared.setImageUrl(null);
+
+        userBulkWriter.write(Collections.singletonList(cleared));
+
+        User written = userRepository.findOneByLogin(DEFAULT_LOGIN).get();
+        assertThat(written.getLastName()).isNull();
+        assertThat(written.getImageUrl()).isNull();
+        assertThat(written.getFirstName()).isEqualTo(DEFAULT_FIRSTNAME);
+        assertThat(written.getLangKey()).isEqualTo(DEFAULT_LANGKEY);
+    }
+
     @Test
     public void testDefaultUserDetails() {
         OAuth2AuthenticationToken authentication = createMockOAuth2AuthenticationToken(userDetails);
@@ -168,6 +348,51 @@ public class UserServiceIT {
         assertThat(userDTO.getLangKey()).isEqualTo("en");
     }
 
+    @Test
+    public void assertThatUsersMissingFromAnIncompleteLoginFilterAreFound() {
+        ApplicationProperties.UserLoginFilter properties = applicationProperties.getUserLoginFilter();
+        try {
+            properties.setEnabled(true);
+            userLoginFilterService.rebuild();
+            user.setLogin("filter-missing");
+            // inserted behind the back of the application, as a migration would
+            userRepository.save(user);
+            double falseNegatives = meterRegistry.get("user.login.filter.false.negatives").counter().count();
+
+            assertThat(userLoginFilterService.isComplete()).isFalse();
+            assertThat(userService.getUserWithAuthoritiesByLogin("filter-missing")).isPresent();
+            assertThat(meterRegistry.get("user.login.filter.false.negatives").counter().count())
+                .isEqualTo(falseNegatives + 1);
+        } finally {
+            properties.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void assertThatOnlyACompleteLoginFilterAnswersThatAUserDoesNotExist() {
+        ApplicationProperties.UserLoginFilter properties = applicationProperties.getUserLoginFilter();
+        try {
+            properties.setEnabled(true);
+            properties.setSoleWriter(true);
+            userLoginFilterService.setBroadcastListening(true);
+            userLoginFilterService.rebuild();
+            user.setLogin("filter-complete");
+            userRepository.save(user);
+
+            assertThat(userLoginFilterService.isComplete()).isTrue();
+            assertThat(userService.getUserWithAuthoritiesByLogin("filter-complete")).isEmpty();
+
+            userLoginFilterService.setBroadcastListening(false);
+
+            assertThat(userLoginFilterService.isComplete()).isFalse();
+            assertThat(userService.getUserWithAuthoritiesByLogin("filter-complete")).isPresent();
+        } finally {
+            userLoginFilterService.setBroadcastListening(false);
+            properties.setSoleWriter(false);
+            properties.setEnabled(false);
+        }
+    }
+
     private OAuth2AuthenticationToken createMockOAuth2AuthenticationToken(Map<String, Object> userDetails) {
         Collection<GrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.ANONYMOUS));
         UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(Constants.ANONYMOUS_USER, Constants.ANONYMOUS_USER, authorities);
@@ -0,0 +1,121 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link UserSyncStateService}.
+ */
+public class UserSyncStateServiceTest {
+
+    private static final String DEFAULT_LOGIN = "johndoe";
+
+    private ApplicationProperties applicationProperties;
+
+    private MeterRegistry meterRegistry;
+
+    private Map<String, Object> claims;
+
+    @BeforeEach
+    public void init() {
+        applicationProperties = new ApplicationProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        claims = new HashMap<>();
+        claims.put("sub", DEFAULT_LOGIN);
+        claims.put("email", "johndoe@localhost");
+        claims.put("given_name", "john");
+        claims.put("family_name", "doe");
+    }
+
+    @Test
+    public void fingerprintIgnoresAuthorityOrder() {
+        UserSyncStateService service = new UserSyncStateService(applicationProperties, meterRegistry);
+
+        assertThat(service.fingerprint(claims, Arrays.asList("ROLE_USER", "ROLE_ADMIN")))
+            .isEqualTo(service.fingerprint(claims, Arrays.asList("ROLE_ADMIN", "ROLE_USER")));
+    }
+
+    @Test
+    public void fingerprintChangesWithClaims() {
+        UserSyncStateService service = new UserSyncStateService(applicationProperties, meterRegistry);
+        String before = service.fingerprint(claims, Arrays.asList("ROLE_USER"));
+
+        claims.put("family_name", "smith");
+
+        assertThat(service.fingerprint(claims, Arrays.asList("ROLE_USER"))).isNotEqualTo(before);
+    }
+
+    @Test
+    public void skipsOnlyMatchingFingerprint() {
+        UserSyncStateService service = new UserSyncStateService(applicationProperties, meterRegistry);
+        String fingerprint = service.fingerprint(claims, Arrays.asList("ROLE_USER"));
+
+        assertThat(service.isUpToDate(DEFAULT_LOGIN, fingerprint)).isFalse();
+        service.markSynced(DEFAULT_LOGIN, fingerprint);
+        assertThat(service.isUpToDate(DEFAULT_LOGIN, fingerprint)).isTrue();
+        assertThat(service.isUpToDate(DEFAULT_LOGIN, "other")).isFalse();
+
+        assertThat(meterRegistry.get("user.idp.sync").tag("result", "skipped").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("user.idp.sync").tag("result", "synced").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidateForcesSync() {
+        UserSyncStateService service = new UserSyncStateService(applicationProperties, meterRegistry);
+        service.markSynced(DEFAULT_LOGIN, "fingerprint");
+
+        service.invalidate(DEFAULT_LOGIN);
+
+        assertThat(service.isUpToDate(DEFAULT_LOGIN, "fingerprint")).isFalse();
+    }
+
+    @Test
+    public void stateExpires() {
+        MutableClock clock = new MutableClock();
+        UserSyncStateService service = new UserSyncStateService(applicationProperties, meterRegistry, clock);
+        service.markSynced(DEFAULT_LOGIN, "fingerprint");
+
+        clock.advance(Duration.ofSeconds(applicationProperties.getUserSync().getTtlSeconds() + 1));
+
+        assertThat(service.isUpToDate(DEFAULT_LOGIN, "fingerprint")).isFalse();
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
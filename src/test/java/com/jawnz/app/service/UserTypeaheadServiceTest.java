@@ -0,0 +1,116 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.domain.User;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Search;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the fallback of {@link UserTypeaheadService} to its in-memory index.
+ */
+public class UserTypeaheadServiceTest {
+
+    private JestClient jestClient;
+
+    private ElasticsearchOperations elasticsearchOperations;
+
+    private MeterRegistry meterRegistry;
+
+    private MutableClock clock;
+
+    @BeforeEach
+    public void init() {
+        jestClient = mock(JestClient.class);
+        doAnswer(invocation -> {
+            JestResultHandler<?> handler = invocation.getArgument(1);
+            handler.failed(new IOException("Connection refused"));
+            return null;
+        }).when(jestClient).executeAsync(any(Search.class), any());
+        ElasticsearchPersistentEntity<?> entity = mock(ElasticsearchPersistentEntity.class);
+        when(entity.getIndexName()).thenReturn("user");
+        when(entity.getIndexType()).thenReturn("user");
+        elasticsearchOperations = mock(ElasticsearchOperations.class);
+        doReturn(entity).when(elasticsearchOperations).getPersistentEntityFor(User.class);
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new MutableClock();
+    }
+
+    @Test
+    public void unavailableElasticsearchIsOnlyRetriedAfterADelay() {
+        UserTypeaheadService service = service(true);
+
+        service.suggest("jo", 10);
+        service.suggest("joh", 10);
+        verify(jestClient, times(1)).executeAsync(any(Search.class), any());
+
+        clock.advance(Duration.ofSeconds(5));
+        service.suggest("john", 10);
+        service.suggest("john", 10);
+        verify(jestClient, times(2)).executeAsync(any(Search.class), any());
+        assertThat(meterRegistry.get("user.typeahead").tag("source", "memory").counter().count()).isEqualTo(4);
+    }
+
+    @Test
+    public void elasticsearchIsNotSearchedWithTheLuceneProfile() {
+        UserTypeaheadService service = service(false);
+
+        service.suggest("jo", 10);
+
+        verify(jestClient, never()).executeAsync(any(Search.class), any());
+        assertThat(meterRegistry.get("user.typeahead").tag("source", "memory").counter().count()).isEqualTo(1);
+    }
+
+    private UserTypeaheadService service(boolean elasticsearchEnabled) {
+        return new UserTypeaheadService(new ApplicationProperties(), jestClient, elasticsearchOperations, null, null,
+            elasticsearchEnabled, meterRegistry, clock);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.jawnz.app.service;
+
+import com.jawnz.app.config.ApplicationProperties;
+import com.jawnz.app.domain.User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link UserWriteBehindService}.
+ */
+public class UserWriteBehindServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UserCacheService userCacheService;
+
+    private List<Runnable> scheduledFlushes;
+
+    private List<List<String>> writes;
+
+    private RuntimeException failure;
+
+    private String failingLogin;
+
+    private UserWriteBehindService service;
+
+    @BeforeEach
+    public void init() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getUserWriteBehind().setEnabled(true);
+        applicationProperties.getUserWriteBehind().setBatchSize(4);
+        applicationProperties.getUserWriteBehind().setCapacity(10);
+        applicationProperties.getUserWriteBehind().setMaxAttempts(3);
+        meterRegistry = new SimpleMeterRegistry();
+        userCacheService = mock(UserCacheService.class);
+        scheduledFlushes = new ArrayList<>();
+        writes = new ArrayList<>();
+        failure = null;
+        failingLogin = null;
+        UserBulkWriter userBulkWriter = mock(UserBulkWriter.class);
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<String> logins = ((List<User>) invocation.getArgument(0)).stream()
+                .map(User::getLogin).collect(Collectors.toList());
+            if (failure != null && (failingLogin == null || logins.contains(failingLogin))) {
+                throw failure;
+            }
+            writes.add(logins);
+            return null;
+        }).when(userBulkWriter).write(anyList());
+        service = new UserWriteBehindService(applicationProperties, userBulkWriter, userCacheService,
+            scheduledFlushes::add, meterRegistry);
+    }
+
+    @Test
+    public void writesTheLatestStateOfEachUserInQueueOrder() {
+        service.offer(user("john", "first"));
+        service.offer(user("jane", "first"));
+        User johnUpdated = user("john", "second");
+        service.offer(johnUpdated);
+
+        assertThat(service.getPending("john")).contains(johnUpdated);
+        service.flush();
+
+        assertThat(writes).containsExactly(listOf("john", "jane"));
+        assertThat(service.getPending("john")).isEmpty();
+        ArgumentCaptor<User> evicted = ArgumentCaptor.forClass(User.class);
+        verify(userCacheService, times(2)).evict(evicted.capture());
+        assertThat(evicted.getAllValues()).extracting(User::getLogin, User::getFirstName)
+            .containsExactly(tuple("john", "second"), tuple("jane", "first"));
+    }
+
+    @Test
+    public void flushesInTheBackgroundOnceABatchIsPending() {
+        for (String login : new String[] { "a", "b", "c", "d", "e" }) {
+            service.offer(user(login, "first"));
+        }
+
+        assertThat(scheduledFlushes).hasSize(1);
+        scheduledFlushes.get(0).run();
+
+        assertThat(writes).containsExactly(listOf("a", "b", "c", "d"), listOf("e"));
+    }
+
+    @Test
+    public void isolatesAndDropsAUserWhichCannotBeWritten() {
+        failure = new DuplicateKeyException("E11000 duplicate key");
+        failingLogin = "bad";
+        service.offer(user("a", "first"));
+        service.offer(user("bad", "first"));
+        service.offer(user("c", "first"));
+
+        service.flush();
+
+        assertThat(writes.stream().flatMap(List::stream)).containsExactlyInAnyOrder("a", "c");
+        assertThat(service.getPending("bad")).isPresent();
+        service.flush();
+        assertThat(service.getPending("bad")).isPresent();
+        service.flush();
+        assertThat(service.getPending("bad")).isEmpty();
+        assertThat(meterRegistry.get("user.write.behind.dead.letters").counter().count()).isEqualTo(1);
+
+        // the queue is not blocked
+        service.offer(user("d", "first"));
+        service.flush();
+        assertThat(writes.get(writes.size() - 1)).containsExactly("d");
+    }
+
+    @Test
+    public void retriesWhenMongoIsUnavailable() {
+        failure = new DataAccessResourceFailureException("Timed out");
+        service.offer(user("a", "first"));
+
+        for (int i = 0; i < 5; i++) {
+            service.flush();
+        }
+        assertThat(writes).isEmpty();
+        assertThat(service.getPending("a")).isPresent();
+        assertThat(meterRegistry.get("user.write.behind.dead.letters").counter().count()).isZero();
+
+        failure = null;
+        service.flush();
+        assertThat(writes).containsExactly(listOf("a"));
+    }
+
+    @Test
+    public void drainsTheQueueOnShutdown() {
+        service.offer(user("a", "first"));
+        service.offer(user("b", "first"));
+
+        service.destroy();
+
+        assertThat(writes).containsExactly(listOf("a", "b"));
+        assertThat(service.getPending("a")).isEmpty();
+    }
+
+    private static User user(String login, String firstName) {
+        User user = new User();
+        user.setId(login + "-id");
+        user.setLogin(login);
+        user.setFirstName(firstName);
+        return user;
+    }
+
+    private static List<String> listOf(String... logins) {
+        return Arrays.asList(logins);
+    }
+}
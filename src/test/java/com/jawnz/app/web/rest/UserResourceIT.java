@@ -9,25 +9,43 @@ import com.jawnz.app.repository.search.UserSearchRepository;
 import com.jawnz.app.security.AuthoritiesConstants;
 import com.jawnz.app.service.dto.UserDTO;
 import com.jawnz.app.service.mapper.UserMapper;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.net.URI;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasItem;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -74,6 +92,9 @@ public class UserResourceIT {
     @Autowired
     private MockMvc restUserMockMvc;
 
+    @MockBean
+    private JestClient jestClient;
+
     private User user;
 
     @BeforeEach
@@ -150,6 +171,153 @@ public class UserResourceIT {
         }
     }
 
+    @Test
+    public void getUsersInBatch() throws Exception {
+        userRepository.save(user);
+        User other = createEntity();
+        other.setLogin("janedoe");
+        other.setEmail("janedoe@localhost");
+        userRepository.save(other);
+
+        restUserMockMvc.perform(post("/api/users/_batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(Arrays.asList("janedoe", "unknown", DEFAULT_LOGIN, "janedoe")))
+            .with(csrf()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$[0].login").value("janedoe"))
+            .andExpect(jsonPath("$[1].login").value(DEFAULT_LOGIN));
+
+        if (!(cacheManager instanceof NoOpCacheManager)) {
+            assertThat(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).get("janedoe")).isNotNull();
+        }
+    }
+
+    @Test
+    public void getTooManyUsersInBatch() throws Exception {
+        List<String> logins = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            logins.add("user" + i);
+        }
+
+        restUserMockMvc.perform(post("/api/users/_batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(logins))
+            .with(csrf()))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getUsersWithInvalidLoginsInBatch() throws Exception {
+        StringBuilder tooLong = new StringBuilder();
+        for (int i = 0; i <= 50; i++) {
+            tooLong.append('a');
+        }
+        for (String login : Arrays.asList(null, "", " ", "john doe", tooLong.toString())) {
+            restUserMockMvc.perform(post("/api/users/_batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(TestUtil.convertObjectToJsonBytes(Arrays.asList(DEFAULT_LOGIN, login)))
+                .with(csrf()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("error.invalidlogin"));
+        }
+    }
+
+    @Test
+    public void searchUsersByPage() throws Exception {
+        Authority admin = new Authority();
+        admin.setName(AuthoritiesConstants.ADMIN);
+        user.setAuthorities(Collections.singleton(admin));
+        userRepository.save(user);
+        User other = createEntity();
+        other.setId("id2");
+        other.setLogin("janedoe");
+        other.setEmail("janedoe@localhost");
+        Authority userAuthority = new Authority();
+        userAuthority.setName(AuthoritiesConstants.USER);
+        other.setAuthorities(Collections.singleton(userAuthority));
+        userRepository.save(other);
+        when(jestClient.execute(any(Search.class)))
+            .thenReturn(searchResult(2, user, "1.0"))
+            .thenReturn(searchResult(2, other, "0.5"));
+
+        MvcResult first = restUserMockMvc.perform(get("/api/_search/users")
+            .param("query", "doe")
+            .param("size", "1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(header().doesNotExist("X-Search-Partial"))
+            .andExpect(jsonPath("$.[*].login").value(contains(DEFAULT_LOGIN)))
+            .andExpect(jsonPath("$.[0].authorities").value(contains(AuthoritiesConstants.ADMIN)))
+            .andReturn();
+        String link = first.getResponse().getHeader(HttpHeaders.LINK);
+        Matcher next = Pattern.compile("<(.+)>; rel=\"next\"").matcher(link);
+        assertThat(next.matches()).isTrue();
+        assertThat(next.group(1)).contains("query=doe").contains("size=1").contains("cursor=");
+
+        restUserMockMvc.perform(get(URI.create(next.group(1))))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(jsonPath("$.[*].login").value(contains("janedoe")))
+            .andExpect(jsonPath("$.[0].authorities").value(contains(AuthoritiesConstants.USER)));
+
+        ArgumentCaptor<Search> searches = ArgumentCaptor.forClass(Search.class);
+        verify(jestClient, times(2)).execute(searches.capture());
+        assertThat(searches.getAllValues().get(0).getData(null)).doesNotContain("search_after");
+        assertThat(searches.getAllValues().get(1).getData(null)).contains("search_after");
+    }
+
+    @Test
+    public void searchAllUsersWithinTheBudget() throws Exception {
+        userRepository.save(user);
+        when(jestClient.execute(any(Search.class))).thenReturn(searchResult(1, user, "1.0"));
+
+        restUserMockMvc.perform(get("/api/_search/users/{query}", "johndoe"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].login").value(contains(DEFAULT_LOGIN)));
+
+        ArgumentCaptor<Search> search = ArgumentCaptor.forClass(Search.class);
+        verify(jestClient).execute(search.capture());
+        assertThat(search.getValue().getData(null)).contains("\"timeout\"").contains("\"terminate_after\"");
+    }
+
+    @Test
+    public void searchUsersWithInvalidCursor() throws Exception {
+        restUserMockMvc.perform(get("/api/_search/users")
+            .param("query", "doe")
+            .param("cursor", "not a cursor"))
+            .andExpect(status().isBadRequest());
+    }
+
+    private static SearchResult searchResult(long total, User user, String score) {
+        JsonObject source = new JsonObject();
+        source.addProperty("id", user.getId());
+        source.addProperty("login", user.getLogin());
+        source.addProperty("email", user.getEmail());
+        source.addProperty("activated", user.getActivated());
+        JsonArray sort = new JsonArray();
+        sort.add(score);
+        sort.add(user.getId());
+        JsonObject hit = new JsonObject();
+        hit.addProperty("_id", user.getId());
+        hit.add("_source", source);
+        hit.add("sort", sort);
+        JsonArray hitList = new JsonArray();
+        hitList.add(hit);
+        JsonObject hits = new JsonObject();
+        hits.addProperty("total", total);
+        hits.add("hits", hitList);
+        JsonObject json = new JsonObject();
+        json.addProperty("timed_out", false);
+        json.add("hits", hits);
+        SearchResult result = new SearchResult(new Gson());
+        result.setJsonObject(json);
+        result.setJsonString(json.toString());
+        result.setPathToResult("hits/hits/_source");
+        result.setSucceeded(true);
+        return result;
+    }
+
     @Test
     public void getNonExistingUser() throws Exception {
         restUserMockMvc.perform(get("/api/users/unknown"))